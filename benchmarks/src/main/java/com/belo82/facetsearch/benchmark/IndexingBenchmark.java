@@ -0,0 +1,59 @@
+package com.belo82.facetsearch.benchmark;
+
+import com.belo82.facetsearch.Indexer;
+import com.belo82.facetsearch.IndexerConfig;
+import com.belo82.facetsearch.ingest.IngestStats;
+import com.belo82.facetsearch.ingest.ShopGenerator;
+import org.codehaus.jackson.JsonNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a fresh in-memory index of {@link #shops} generated shops per operation, so one op/s equals
+ * <code>shops</code> documents per second. {@link #generate()} measures the generator alone, its cost is part of
+ * every {@link #createIndex()} operation.
+ *
+ * @author Peter Belko
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IndexingBenchmark {
+
+    @Param({"10000", "100000"})
+    public int shops;
+
+    @Param({"1"})
+    public int threads;
+
+    @Benchmark
+    public IngestStats createIndex() throws IOException {
+        try (Indexer indexer = new Indexer(new IndexerConfig().setIndexingThreads(threads))) {
+            return indexer.createIndex(new ShopGenerator(shops));
+        }
+    }
+
+    @Benchmark
+    public int generate() {
+        int fields = 0;
+        for (ShopGenerator generator = new ShopGenerator(shops); generator.hasNext();) {
+            JsonNode shop = generator.next();
+            fields += shop.size();
+        }
+        return fields;
+    }
+}
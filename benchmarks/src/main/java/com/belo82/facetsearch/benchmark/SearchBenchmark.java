@@ -0,0 +1,134 @@
+package com.belo82.facetsearch.benchmark;
+
+import com.belo82.facetsearch.Indexer;
+import com.belo82.facetsearch.IndexerConfig;
+import com.belo82.facetsearch.ingest.ShopGenerator;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.codehaus.jackson.JsonNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query throughput of the {@link Indexer} search methods on an index of {@link #shops} generated shops, which is
+ * built once per fork.<br/>
+ * <br/>
+ * Every invocation takes the next query from a pool of {@link #QUERIES} sampled from the generated data, so the
+ * benchmark is not a single hot term. The facet cache is disabled by default, so the faceted search measures the
+ * collect pass; set <code>-p facetCacheSize=1000</code> to measure the cached path,
+ * <code>-p queryCacheSize=0,1000</code> to compare parsing every query with the query cache and
+ * <code>-p instrumentation=false,true</code> to compare the overhead of the per-phase instrumentation.
+ *
+ * @author Peter Belko
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SearchBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"10000", "100000"})
+    public int shops;
+
+    @Param({"0"})
+    public int facetCacheSize;
+
+    @Param({"1000"})
+    public int queryCacheSize;
+
+    @Param({"false"})
+    public boolean instrumentation;
+
+    @Param({"0"})
+    public int searchThreads;
+
+    private Indexer indexer;
+    private final String[] addresses = new String[QUERIES];
+    private final String[] prefixes = new String[QUERIES];
+    private final String[][] ranges = new String[QUERIES][];
+    private final String[] queries = new String[QUERIES];
+
+    /**
+     * Position in the query pool, one per benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next() {
+            return next++ & (QUERIES - 1);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        indexer = new Indexer(new IndexerConfig().setFacetCacheSize(facetCacheSize)
+                .setQueryCacheSize(queryCacheSize)
+                .setInstrumentation(instrumentation).setSearchThreads(searchThreads));
+        indexer.createIndex(new ShopGenerator(shops));
+
+        Random random = new Random(ShopGenerator.DEFAULT_SEED);
+        List<String> areas = ShopGenerator.getAreas();
+        ShopGenerator generator = null;
+        for (int i = 0; i < QUERIES; i++) {
+            if (generator == null || !generator.hasNext())
+                generator = new ShopGenerator(Math.min(shops, QUERIES));
+            JsonNode shop = generator.next();
+
+            addresses[i] = shop.get(Indexer.ADDRESS).getTextValue();
+            String code = shop.get(Indexer.CODE).getTextValue();
+            prefixes[i] = code.substring(0, Math.min(code.length(), 1 + random.nextInt(3)));
+
+            int from = 1950 + random.nextInt(60);
+            ranges[i] = new String[]{"01-01-" + from, "31-12-" + (from + random.nextInt(5))};
+
+            String area = areas.get(random.nextInt(areas.size())).split(" ")[0].toLowerCase();
+            queries[i] = "area: " + area;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        indexer.close();
+    }
+
+    @Benchmark
+    public List<Document> facetLabelSearch(Cursor cursor) throws IOException, ParseException {
+        return indexer.doFacetLabelSearch(addresses[cursor.next()]);
+    }
+
+    @Benchmark
+    public List<Document> prefixSearch(Cursor cursor) throws IOException, ParseException {
+        return indexer.doPrefixSearch(prefixes[cursor.next()]);
+    }
+
+    @Benchmark
+    public List<Document> rangeSearch(Cursor cursor) throws IOException {
+        String[] range = ranges[cursor.next()];
+        return indexer.doRangeSearch(range[0], range[1]);
+    }
+
+    @Benchmark
+    public List<Document> facetedSearch(Cursor cursor) throws IOException, ParseException {
+        return indexer.doSearch(queries[cursor.next()]);
+    }
+}
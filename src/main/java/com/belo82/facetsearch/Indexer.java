@@ -1,7 +1,46 @@
 package com.belo82.facetsearch;
 
 import com.belo82.facetsearch.analyzer.CustomAnalyzer;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import com.belo82.facetsearch.analyzer.LowerCaseKeywordAnalyzer;
+import com.belo82.facetsearch.ingest.ChangeSet;
+import com.belo82.facetsearch.ingest.IngestStats;
+import com.belo82.facetsearch.ingest.ShopReadException;
+import com.belo82.facetsearch.ingest.ShopStreamReader;
+import com.belo82.facetsearch.metrics.IndexerMetrics;
+import com.belo82.facetsearch.metrics.Phase;
+import com.belo82.facetsearch.metrics.QueryTimer;
+import com.belo82.facetsearch.search.BatchQuery;
+import com.belo82.facetsearch.search.BatchResult;
+import com.belo82.facetsearch.search.ConcurrentSearcher;
+import com.belo82.facetsearch.search.ConcurrentSearcherFactory;
+import com.belo82.facetsearch.search.CursorExpiredException;
+import com.belo82.facetsearch.search.DeadlineCollector;
+import com.belo82.facetsearch.search.FacetCache;
+import com.belo82.facetsearch.search.FacetMerger;
+import com.belo82.facetsearch.search.FacetSelection;
+import com.belo82.facetsearch.search.FacetedQuery;
+import com.belo82.facetsearch.search.JsonResultWriter;
+import com.belo82.facetsearch.search.PageCursors;
+import com.belo82.facetsearch.search.QueryCache;
+import com.belo82.facetsearch.search.Projection;
+import com.belo82.facetsearch.search.RangeFacetRequest;
+import com.belo82.facetsearch.search.RangeFacetResult;
+import com.belo82.facetsearch.search.RangeFacetsCollector;
+import com.belo82.facetsearch.search.RefreshStats;
+import com.belo82.facetsearch.search.ResultLoader;
+import com.belo82.facetsearch.search.ResultPage;
+import com.belo82.facetsearch.search.ResultRow;
+import com.belo82.facetsearch.search.SearchDeadline;
+import com.belo82.facetsearch.search.SearchFuture;
+import com.belo82.facetsearch.search.SearchResult;
+import com.belo82.facetsearch.search.SearchTimeoutException;
+import com.belo82.facetsearch.search.SortedSegmentSearch;
+import com.belo82.facetsearch.suggest.ShopSuggester;
+import com.belo82.facetsearch.search.SearcherTaxonomyManager;
+import com.belo82.facetsearch.search.SearcherTaxonomyManager.SearcherAndTaxonomy;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.document.*;
 import org.apache.lucene.facet.index.FacetFields;
 import org.apache.lucene.facet.params.CategoryListParams;
@@ -10,18 +49,21 @@ import org.apache.lucene.facet.params.FacetSearchParams;
 import org.apache.lucene.facet.search.*;
 import org.apache.lucene.facet.taxonomy.CategoryPath;
 import org.apache.lucene.facet.taxonomy.TaxonomyReader;
-import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
-import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyReader;
 import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.*;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
 import org.apache.lucene.util.Version;
 import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.node.ArrayNode;
@@ -29,14 +71,23 @@ import org.codehaus.jackson.node.ObjectNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author Peter Belko
  */
-public class Indexer {
+public class Indexer implements Closeable {
     private static final Logger logger = LoggerFactory.getLogger(Indexer.class);
     public static final String ID = "id";
     public static final String NAME = "name";
@@ -48,27 +99,290 @@ public class Indexer {
     public static final String CODE = "code";
     public static final String FOUNDED = "founded";
 
-    private static final SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy");
-    private static final SimpleDateFormat indexFormat = new SimpleDateFormat("yyyyMMdd");
+    static final CategoryPath DEFAULT_DRILL_DOWN = new CategoryPath(FACET_SHOP_CATEGORY + "/cafe", '/');
+
+    /** facet dimensions of {@link #doDrillSidewaysSearch(String, Projection, FacetSelection)}, in result order */
+    public static final List<String> NAVIGATION_DIMENSIONS =
+            Collections.unmodifiableList(Arrays.asList(FACET_SHOP_CATEGORY, AREA));
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    // SimpleDateFormat is not thread safe, every indexing thread gets its own copy
+    private static final ThreadLocal<SimpleDateFormat> sdf = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("dd-MM-yyyy");
+        }
+    };
+    private static final ThreadLocal<SimpleDateFormat> indexFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyyMMdd");
+        }
+    };
+
+    private final IndexerConfig indexerConfig;
 
     private IndexWriter iWriter;
+    private Directory dir_index;
     private Directory dir_taxo;
+    private DirectoryTaxonomyWriter taxoWriter;
+    private SearcherTaxonomyManager searcherManager;
+    private RefreshStats refreshStats;
+    private ScheduledExecutorService refresher;
+    private final ResultLoader resultLoader = new ResultLoader(new HashSet<>(Arrays.asList(ID, FOUNDED)));
+    private final JsonResultWriter jsonWriter = new JsonResultWriter(new HashSet<>(Arrays.asList(ID, FOUNDED)),
+            Collections.singleton(OWNERS));
+    private PageCursors pageCursors;
+    private FacetCache facetCache;
+    private QueryCache queryCache;
+    private SortedSegmentSearch sortedSearch;
+    private ShopSuggester suggester;
+    private IndexerMetrics metrics;
+    private ConcurrentSearcherFactory searcherFactory;
+    private Executor asyncExecutor;
+    private ExecutorService asyncPool;
+    /** incremental changes applied since the last commit, see {@link IndexerConfig#getCommitAfterChanges()} */
+    private final AtomicInteger uncommittedChanges = new AtomicInteger();
 
     public Indexer() {
+        this(new IndexerConfig());
+    }
+
+    public Indexer(IndexerConfig indexerConfig) {
+        this.indexerConfig = indexerConfig;
         init();
     }
 
     private void init() {
-        Directory index = new RAMDirectory();
-        dir_taxo = new RAMDirectory();
+        String metricsName = indexerConfig.getMetricsName() != null
+                ? indexerConfig.getMetricsName() : "indexer-" + instances.incrementAndGet();
+        metrics = new IndexerMetrics(indexerConfig.isInstrumentation(), indexerConfig.getSlowQueryMillis(), metricsName);
 
-        IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_42, new CustomAnalyzer(Version.LUCENE_42));
+        StorageMode storageMode = indexerConfig.getStorageMode();
+        File indexPath = indexerConfig.getIndexPath();
+        try {
+            dir_index = storageMode.open(indexPath == null ? null : new File(indexPath, "index"));
+            dir_taxo = storageMode.open(indexPath == null ? null : new File(indexPath, "taxonomy"));
+        } catch (IOException e) {
+            throw new RuntimeException("cannot open " + storageMode + " directory at " + indexPath, e);
+        }
+
+        Analyzer analyzer = createAnalyzer();
+        IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_42, analyzer);
         config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        config.setRAMBufferSizeMB(indexerConfig.getRamBufferSizeMB());
+        config.setMaxThreadStates(Math.max(IndexWriterConfig.DEFAULT_MAX_THREAD_STATES, indexerConfig.getIndexingThreads()));
+        if (indexerConfig.getMergeThreads() > 0) {
+            ConcurrentMergeScheduler mergeScheduler = new ConcurrentMergeScheduler();
+            // max merge count must never be lower than max thread count
+            mergeScheduler.setMaxMergeCount(Math.max(mergeScheduler.getMaxMergeCount(), indexerConfig.getMergeThreads() + 2));
+            mergeScheduler.setMaxThreadCount(indexerConfig.getMergeThreads());
+            config.setMergeScheduler(mergeScheduler);
+        }
+        if (indexerConfig.isSortedByFounded()) {
+            // merges only adjacent segments, so segments of shops added in order stay sorted when they are merged
+            LogByteSizeMergePolicy mergePolicy = new LogByteSizeMergePolicy();
+            if (indexerConfig.getMaxMergedSegmentMB() > 0)
+                mergePolicy.setMaxMergeMB(indexerConfig.getMaxMergedSegmentMB());
+            config.setMergePolicy(mergePolicy);
+            sortedSearch = new SortedSegmentSearch(FOUNDED);
+        } else if (indexerConfig.getMaxMergedSegmentMB() > 0) {
+            TieredMergePolicy mergePolicy = new TieredMergePolicy();
+            mergePolicy.setMaxMergedSegmentMB(indexerConfig.getMaxMergedSegmentMB());
+            config.setMergePolicy(mergePolicy);
+        }
         try {
-            iWriter = new IndexWriter(index, config);
+            iWriter = new IndexWriter(dir_index, config);
         } catch (IOException e) {
             throw new RuntimeException("cannot create an index writer.", e);
         }
+
+        try {
+            // append, so a persistent taxonomy keeps its ordinals which are referenced from the main index
+            taxoWriter = new DirectoryTaxonomyWriter(dir_taxo, IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+            if (indexerConfig.getSearchThreads() > 0)
+                searcherFactory = new ConcurrentSearcherFactory(indexerConfig.getSearchThreads(),
+                        indexerConfig.getMaxParallelQueries());
+            searcherManager = new SearcherTaxonomyManager(iWriter, true, searcherFactory, taxoWriter);
+        } catch (IOException e) {
+            throw new RuntimeException("cannot create a searcher manager.", e);
+        }
+
+        pageCursors = new PageCursors(searcherManager, indexerConfig.getCursorTtlMillis());
+        searcherManager.addListener(pageCursors);
+        refreshStats = new RefreshStats(searcherManager);
+        searcherManager.addListener(refreshStats);
+
+        queryCache = new QueryCache(indexerConfig.getQueryCacheSize(), NAME, analyzer);
+        facetCache = new FacetCache(indexerConfig.getFacetCacheSize());
+        if (indexerConfig.getFacetCacheSize() > 0) {
+            searcherManager.addListener(new ReferenceManager.RefreshListener() {
+                @Override
+                public void beforeRefresh() {
+                }
+
+                @Override
+                public void afterRefresh(boolean didRefresh) throws IOException {
+                    if (didRefresh) {
+                        facetCache.clear();
+                        warmFacetCache();
+                    }
+                }
+            });
+        }
+
+        if (indexerConfig.isAutocomplete()) {
+            suggester = new ShopSuggester(searcherManager, CODE, NAME, FOUNDED);
+            suggester.scheduleRebuild();
+            searcherManager.addListener(new ReferenceManager.RefreshListener() {
+                @Override
+                public void beforeRefresh() {
+                }
+
+                @Override
+                public void afterRefresh(boolean didRefresh) {
+                    if (didRefresh)
+                        suggester.scheduleRebuild();
+                }
+            });
+        }
+
+        if (indexerConfig.getAsyncExecutor() != null) {
+            asyncExecutor = indexerConfig.getAsyncExecutor();
+        } else {
+            // threads are started lazily, an indexer which never searches asynchronously costs nothing
+            asyncPool = Executors.newFixedThreadPool(indexerConfig.getAsyncThreads(), namedThreadFactory("indexer-async"));
+            asyncExecutor = asyncPool;
+        }
+
+        if (indexerConfig.getRefreshIntervalMillis() > 0)
+            startRefresher(indexerConfig.getRefreshIntervalMillis());
+    }
+
+    /**
+     * @return factory of daemon threads named <code>name-1</code>, <code>name-2</code>, ...
+     */
+    public static ThreadFactory namedThreadFactory(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private void startRefresher(long intervalMillis) {
+        refresher = Executors.newSingleThreadScheduledExecutor(namedThreadFactory("indexer-refresher"));
+
+        refresher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    searcherManager.maybeRefresh();
+                } catch (Exception e) {
+                    // must not propagate, otherwise no further refresh is scheduled
+                    logger.error("cannot refresh searcher snapshot.", e);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Makes all the changes done so far visible to searches, blocks until the new snapshot is opened.
+     */
+    public void refresh() throws IOException {
+        searcherManager.maybeRefreshBlocking();
+    }
+
+    private void afterWrite() throws IOException {
+        if (indexerConfig.isRefreshAfterWrite())
+            refresh();
+    }
+
+    public RefreshStats getRefreshStats() {
+        return refreshStats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (refresher != null) {
+            // no interrupts, an interrupted read would close the file channel of an NIOFS index; a running refresh
+            // finishes, later ones are cancelled
+            refresher.shutdown();
+            try {
+                refresher.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (asyncPool != null) {
+            // no interrupts, running searches stop at their deadlines
+            asyncPool.shutdown();
+            try {
+                asyncPool.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (suggester != null)
+            suggester.close();
+        pageCursors.close();
+        searcherManager.close();
+        if (searcherFactory != null)
+            searcherFactory.close();
+        // taxonomy first, committed index must never refer to categories missing in the committed taxonomy
+        taxoWriter.close();
+        iWriter.close();
+        dir_taxo.close();
+        dir_index.close();
+        metrics.close();
+    }
+
+    /**
+     * @return operation counters and latencies, collected only if {@link IndexerConfig#isInstrumentation()} is on
+     */
+    public IndexerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the factory of the parallel searchers with their admission counters
+     * @throws IllegalStateException if {@link IndexerConfig#getSearchThreads()} is <code>0</code>
+     */
+    public ConcurrentSearcherFactory getSearcherFactory() {
+        if (searcherFactory == null)
+            throw new IllegalStateException("parallel search is disabled, see IndexerConfig.setSearchThreads");
+
+        return searcherFactory;
+    }
+
+    /**
+     * Durably commits the taxonomy and the main index, in this order, so that both can be reopened together by
+     * a new {@link Indexer} on the same {@link IndexerConfig#getIndexPath()}.
+     */
+    public void commit() throws IOException {
+        uncommittedChanges.set(0);
+        taxoWriter.commit();
+        iWriter.commit();
+    }
+
+    /**
+     * @return number of documents visible in the current searcher snapshot, e.g. to check whether a reopened
+     *         persistent index has to be populated at all
+     */
+    public int numDocs() throws IOException {
+        SearcherAndTaxonomy snapshot = acquire();
+        try {
+            return snapshot.searcher.getIndexReader().numDocs();
+        } finally {
+            release(snapshot);
+        }
     }
 
     /*
@@ -81,41 +395,340 @@ public class Indexer {
             "address": "57-59, Parsons Green Lane, Fulham, London, SW6 4JA",
             "code":"asdfa"
         }
+     *
+     * In sorted mode, see {@link IndexerConfig#setSortedByFounded(boolean)}, the shops are sorted in memory and
+     * indexed on a single thread.
+     */
+    public IngestStats createIndex(ArrayNode data) throws IOException, ParseException {
+        return indexShops(data.getElements());
+    }
+
+    /**
+     * Streams shops from the given JSON array into the index. Only one shop and one batch of documents
+     * ({@link IndexerConfig#getIngestBatchSize()}) are held in memory at a time, so the heap needed does not depend
+     * on the size of the input.
+     *
+     * @param in JSON array of shops, the stream is not closed
+     * @throws IOException also if the input is malformed or truncated
+     * @throws IllegalStateException in sorted mode, see {@link IndexerConfig#setSortedByFounded(boolean)}, which
+     *                               needs the whole input in memory
      */
-    public void createIndex(ArrayNode data) throws IOException, ParseException {
-        TaxonomyWriter taxo = new DirectoryTaxonomyWriter(dir_taxo, IndexWriterConfig.OpenMode.CREATE);
-        FacetFields facetFields = new FacetFields(taxo);
+    public IngestStats createIndex(InputStream in) throws IOException {
+        checkStreamingInput();
+        try (ShopStreamReader reader = new ShopStreamReader(in)) {
+            return indexShops(reader);
+        } catch (ShopReadException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @throws IllegalStateException in sorted mode, like {@link #createIndex(InputStream)}
+     */
+    public IngestStats createIndex(File file) throws IOException {
+        checkStreamingInput();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return createIndex(in);
+        }
+    }
+
+    /**
+     * Indexes shops as they are returned by the iterator, e.g. from
+     * {@link com.belo82.facetsearch.ingest.ShopGenerator}, with the same memory bound as
+     * {@link #createIndex(InputStream)}.<br/>
+     * Except in sorted mode, see {@link IndexerConfig#setSortedByFounded(boolean)}: all the shops are then read into
+     * memory and sorted first, and they are indexed on a single thread, whatever
+     * {@link IndexerConfig#getIndexingThreads()}.
+     */
+    public IngestStats createIndex(Iterator<? extends JsonNode> shops) throws IOException {
+        return indexShops(shops);
+    }
+
+    private void checkStreamingInput() {
+        if (sortedSearch != null)
+            throw new IllegalStateException("sorted index needs all shops in memory, " +
+                    "use createIndex(ArrayNode) or createIndex(Iterator) instead of a stream");
+    }
+
+    private IngestStats indexShops(Iterator<? extends JsonNode> shops) throws IOException {
+        try (QueryTimer timer = metrics.start("createIndex", null)) {
+            IngestStats stats;
+            if (sortedSearch != null)
+                stats = indexShopsSorted(shops, timer);
+            else if (indexerConfig.getIndexingThreads() > 1)
+                stats = indexShopsParallel(shops, timer);
+            else
+                stats = indexShopsSerial(shops, timer);
+
+            commit();
+            timer.split(Phase.COMMIT);
+            afterWrite();
+            timer.split(Phase.REFRESH);
+
+            stats.finish();
+            timer.succeeded(stats.getDocuments());
+            logger.debug("indexed: {}", stats);
+            return stats;
+        }
+    }
 
-        List<CategoryPath> categories;
+    /**
+     * Reads all the shops into memory and indexes them sorted by {@link #FOUNDED}, newest first. Indexed in this
+     * order on one thread, every flushed segment is sorted and so is every merge of adjacent segments.
+     */
+    private IngestStats indexShopsSorted(Iterator<? extends JsonNode> shops, QueryTimer timer) throws IOException {
+        List<DatedShop> sorted = new ArrayList<>();
+        while (shops.hasNext()) {
+            ObjectNode shop = (ObjectNode) shops.next();
+            sorted.add(new DatedShop(shop, parseDate(shop.get(FOUNDED).getTextValue())));
+        }
 
-        for (Iterator<JsonNode> it = data.getElements(); it.hasNext();) {
-            ObjectNode item = (ObjectNode) it.next();
-            Document doc = new Document();
+        Collections.sort(sorted);
+        timer.split(Phase.BUILD);
 
-            doc.add(new IntField(ID, item.get(ID).getIntValue(), Field.Store.YES));
-            doc.add(new TextField(NAME, item.get(NAME).getTextValue(), Field.Store.YES));
-            doc.add(new TextField(SHOP_CATEGORIES, item.get(FACET_SHOP_CATEGORY).getTextValue(), Field.Store.YES));
-            doc.add(new TextField(AREA, item.get(AREA).getTextValue(), Field.Store.YES));
-            doc.add(new StringField(ADDRESS, item.get(ADDRESS).getTextValue(), Field.Store.YES));
-            doc.add(new StringField(CODE, item.get(CODE).getTextValue().toLowerCase(), Field.Store.YES));
-            doc.add(new LongField(FOUNDED, parseDate(item.get(FOUNDED).getTextValue()), Field.Store.YES));
+        IngestStats stats = new IngestStats();
+        FacetFields facetFields = new FacetFields(taxoWriter);
+        int batchSize = indexerConfig.getIngestBatchSize();
+        List<Document> batch = new ArrayList<>(batchSize);
+        for (DatedShop shop : sorted) {
+            batch.add(createDocument(shop.shop, shop.founded, facetFields));
 
-            for (Iterator<JsonNode> it2 = item.get(OWNERS).getElements(); it2.hasNext();) {
-                JsonNode ownerNode = it2.next();
-                doc.add(new TextField(OWNERS, ownerNode.getTextValue(), Field.Store.YES));
+            if (batch.size() >= batchSize) {
+                timer.split(Phase.BUILD);
+                iWriter.addDocuments(batch);
+                stats.batchIndexed(batch.size());
+                batch.clear();
+                timer.split(Phase.WRITE);
             }
+        }
+
+        timer.split(Phase.BUILD);
+        if (!batch.isEmpty()) {
+            iWriter.addDocuments(batch);
+            stats.batchIndexed(batch.size());
+            timer.split(Phase.WRITE);
+        }
 
-            categories = new ArrayList<>();
-            CategoryPath categoryPath = new CategoryPath(FACET_SHOP_CATEGORY,
-                    item.get(FACET_SHOP_CATEGORY).getTextValue(), item.get(AREA).getTextValue());
-            categories.add(categoryPath);
-            taxo.addCategory(categoryPath);
-            facetFields.addFields(doc, categories);
+        return stats;
+    }
+
+    /**
+     * Shop with its parsed {@link #FOUNDED} date, ordered newest first.
+     */
+    private static class DatedShop implements Comparable<DatedShop> {
+        final ObjectNode shop;
+        final Long founded;
 
-            iWriter.addDocument(doc);
+        DatedShop(ObjectNode shop, Long founded) {
+            this.shop = shop;
+            this.founded = founded;
         }
 
-        taxo.commit();
+        @Override
+        public int compareTo(DatedShop o) {
+            return o.founded.compareTo(founded);
+        }
+    }
+
+    /**
+     * Builds and adds the documents on the caller thread, the JSON parsing of a streamed input is charged to
+     * {@link Phase#BUILD}.
+     */
+    private IngestStats indexShopsSerial(Iterator<? extends JsonNode> shops, QueryTimer timer) throws IOException {
+        IngestStats stats = new IngestStats();
+        FacetFields facetFields = new FacetFields(taxoWriter);
+        int batchSize = indexerConfig.getIngestBatchSize();
+        List<Document> batch = new ArrayList<>(batchSize);
+
+        while (shops.hasNext()) {
+            batch.add(createDocument((ObjectNode) shops.next(), facetFields));
+
+            if (batch.size() >= batchSize) {
+                timer.split(Phase.BUILD);
+                iWriter.addDocuments(batch);
+                stats.batchIndexed(batch.size());
+                batch.clear();
+                timer.split(Phase.WRITE);
+            }
+        }
+
+        timer.split(Phase.BUILD);
+        if (!batch.isEmpty()) {
+            iWriter.addDocuments(batch);
+            stats.batchIndexed(batch.size());
+            timer.split(Phase.WRITE);
+        }
+
+        return stats;
+    }
+
+    /**
+     * Reads shops on the caller thread and hands them in batches over a bounded queue to the indexing workers,
+     * which build the documents and add them to the shared {@link IndexWriter}. The reader blocks when the queue is
+     * full, so at most <code>(queue size + threads) * batch size</code> shops are in memory. Building and adding
+     * overlap, so all of it is charged to {@link Phase#WRITE}.
+     */
+    private IngestStats indexShopsParallel(Iterator<? extends JsonNode> shops, QueryTimer timer) throws IOException {
+        final IngestStats stats = new IngestStats();
+        final int threads = indexerConfig.getIndexingThreads();
+        final int batchSize = indexerConfig.getIngestBatchSize();
+        final BlockingQueue<List<JsonNode>> queue = new ArrayBlockingQueue<>(indexerConfig.getIndexingQueueSize());
+        final List<JsonNode> endOfInput = Collections.emptyList();
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads, namedThreadFactory("indexer-worker"));
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            futures.add(workers.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    FacetFields facetFields = new FacetFields(taxoWriter);
+                    List<Document> docs = new ArrayList<>(batchSize);
+
+                    for (List<JsonNode> batch = queue.take(); batch != endOfInput; batch = queue.take()) {
+                        for (JsonNode item : batch)
+                            docs.add(createDocument((ObjectNode) item, facetFields));
+
+                        iWriter.addDocuments(docs);
+                        stats.batchIndexed(docs.size());
+                        docs.clear();
+                    }
+                    return null;
+                }
+            }));
+        }
+        workers.shutdown();
+
+        try {
+            List<JsonNode> batch = new ArrayList<>(batchSize);
+            while (shops.hasNext()) {
+                batch.add(shops.next());
+
+                if (batch.size() >= batchSize) {
+                    putOrFail(queue, batch, futures);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty())
+                putOrFail(queue, batch, futures);
+
+            for (int i = 0; i < threads; i++)
+                putOrFail(queue, endOfInput, futures);
+
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("indexing has been interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("indexing worker failed.", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+
+        timer.split(Phase.WRITE);
+        return stats;
+    }
+
+    /**
+     * Puts the batch to the queue, but does not wait forever if some worker failed and the queue is not drained.
+     */
+    static void putOrFail(BlockingQueue<List<JsonNode>> queue, List<JsonNode> batch, List<Future<?>> workers)
+            throws InterruptedException, ExecutionException {
+        while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            for (Future<?> worker : workers) {
+                if (worker.isDone())
+                    worker.get();
+            }
+        }
+    }
+
+    /**
+     * Applies incremental changes keyed on the {@link #ID} field: upserts replace the existing document of the shop
+     * (or add a new one), deletes remove it. The whole change set is made visible at once by a searcher refresh,
+     * without a durable commit; commits are batched over change sets, see
+     * {@link IndexerConfig#setCommitAfterChanges(int)}.
+     */
+    public IngestStats apply(ChangeSet changeSet) throws IOException {
+        try (QueryTimer timer = metrics.start("apply", changeSet)) {
+            IngestStats stats = new IngestStats();
+            FacetFields facetFields = new FacetFields(taxoWriter);
+
+            for (ChangeSet.Change change : changeSet.getChanges()) {
+                if (change.isDelete()) {
+                    iWriter.deleteDocuments(idTerm(change.id));
+                } else {
+                    Document document = createDocument(change.shop, facetFields);
+                    timer.split(Phase.BUILD);
+                    iWriter.updateDocument(idTerm(change.id), document);
+                }
+                timer.split(Phase.WRITE);
+            }
+            stats.batchIndexed(changeSet.size());
+
+            int commitAfterChanges = indexerConfig.getCommitAfterChanges();
+            if (commitAfterChanges > 0 && uncommittedChanges.addAndGet(changeSet.size()) >= commitAfterChanges) {
+                commit();
+                timer.split(Phase.COMMIT);
+            }
+            afterWrite();
+            timer.split(Phase.REFRESH);
+
+            stats.finish();
+            timer.succeeded(changeSet.size());
+            logger.debug("applied changes: {}", stats);
+            return stats;
+        }
+    }
+
+    public IngestStats upsert(ObjectNode shop) throws IOException {
+        return apply(new ChangeSet().upsert(shop));
+    }
+
+    public IngestStats delete(int id) throws IOException {
+        return apply(new ChangeSet().delete(id));
+    }
+
+    /**
+     * @return exact term of the {@link IntField} {@link #ID}, as it is indexed with the full precision
+     */
+    private static Term idTerm(int id) {
+        BytesRef bytes = new BytesRef(NumericUtils.BUF_SIZE_INT);
+        NumericUtils.intToPrefixCoded(id, 0, bytes);
+        return new Term(ID, bytes);
+    }
+
+    private Document createDocument(ObjectNode item, FacetFields facetFields) throws IOException {
+        return createDocument(item, parseDate(item.get(FOUNDED).getTextValue()), facetFields);
+    }
+
+    private Document createDocument(ObjectNode item, Long founded, FacetFields facetFields) throws IOException {
+        Document doc = new Document();
+
+        doc.add(new IntField(ID, item.get(ID).getIntValue(), Field.Store.YES));
+        doc.add(new NumericDocValuesField(ID, item.get(ID).getIntValue()));
+        doc.add(new TextField(NAME, item.get(NAME).getTextValue(), Field.Store.YES));
+        doc.add(new TextField(SHOP_CATEGORIES, item.get(FACET_SHOP_CATEGORY).getTextValue(), Field.Store.YES));
+        doc.add(new TextField(AREA, item.get(AREA).getTextValue(), Field.Store.YES));
+        doc.add(new StringField(ADDRESS, item.get(ADDRESS).getTextValue(), Field.Store.YES));
+        doc.add(new StringField(CODE, item.get(CODE).getTextValue().toLowerCase(), Field.Store.YES));
+        doc.add(new LongField(FOUNDED, founded, Field.Store.YES));
+        doc.add(new NumericDocValuesField(FOUNDED, founded));
+
+        for (Iterator<JsonNode> it2 = item.get(OWNERS).getElements(); it2.hasNext();) {
+            JsonNode ownerNode = it2.next();
+            doc.add(new TextField(OWNERS, ownerNode.getTextValue(), Field.Store.YES));
+        }
+
+        List<CategoryPath> categories = new ArrayList<>();
+        CategoryPath categoryPath = new CategoryPath(FACET_SHOP_CATEGORY,
+                item.get(FACET_SHOP_CATEGORY).getTextValue(), item.get(AREA).getTextValue());
+        categories.add(categoryPath);
+        // flat dimension of its own, so that areas can be selected and counted independently of the category
+        categories.add(new CategoryPath(AREA, item.get(AREA).getTextValue()));
+        taxoWriter.addCategory(categoryPath);
+        facetFields.addFields(doc, categories);
+
+        return doc;
     }
 
     private Long parseDate(String s) {
@@ -123,7 +736,7 @@ public class Indexer {
             return null;
 
         try {
-            Long result = Long.valueOf(indexFormat.format(sdf.parse(s)));
+            Long result = Long.valueOf(indexFormat.get().format(sdf.get().parse(s)));
             logger.debug("parsed date: {}", result);
             return result;
         } catch (java.text.ParseException e) {
@@ -132,9 +745,18 @@ public class Indexer {
         }
     }
 
-    private IndexSearcher openSearcher() throws IOException {
-        DirectoryReader iReader = DirectoryReader.open(iWriter, true);
-        return new IndexSearcher(iReader);
+    SearcherAndTaxonomy acquire() {
+        return searcherManager.acquire();
+    }
+
+    private SearcherAndTaxonomy acquire(QueryTimer timer) {
+        SearcherAndTaxonomy snapshot = acquire();
+        timer.split(Phase.ACQUIRE);
+        return snapshot;
+    }
+
+    void release(SearcherAndTaxonomy snapshot) throws IOException {
+        searcherManager.release(snapshot);
     }
 
     /**
@@ -143,92 +765,1051 @@ public class Indexer {
      * @param value facet label, e.g. "43 Parson's Green, SW14 3EC"
      */
     public List<Document> doFacetLabelSearch(String value) throws IOException, ParseException {
-        IndexSearcher iSearcher = openSearcher();
+        try (QueryTimer timer = metrics.start("doFacetLabelSearch", value)) {
+            SearcherAndTaxonomy snapshot = acquire(timer);
+            try {
+                return fetchDocuments(snapshot, facetLabelSearch(snapshot, value), timer);
+            } finally {
+                release(snapshot);
+            }
+        }
+    }
 
-        TermQuery query = new TermQuery(new Term(ADDRESS, value));
-        TopDocs topDocs = iSearcher.search(query, 100);
+    public List<ResultRow> doFacetLabelSearch(String value, Projection projection) throws IOException, ParseException {
+        try (QueryTimer timer = metrics.start("doFacetLabelSearch", value)) {
+            SearcherAndTaxonomy snapshot = acquire(timer);
+            try {
+                return fetchRows(snapshot, facetLabelSearch(snapshot, value), projection, timer);
+            } finally {
+                release(snapshot);
+            }
+        }
+    }
 
-        List<Document> result = new ArrayList<>(topDocs.totalHits);
-        for (ScoreDoc scoreDoc : topDocs.scoreDocs)
-            result.add(iSearcher.doc(scoreDoc.doc));
+    public ResultPage pageFacetLabelSearch(String value, int pageSize, Projection projection) throws IOException {
+        try (QueryTimer timer = metrics.start("pageFacetLabelSearch", value)) {
+            return firstPage(facetLabelQuery(value), pageSize, projection, timer);
+        }
+    }
 
-        return result;
+    TopDocs facetLabelSearch(SearcherAndTaxonomy snapshot, String value) throws IOException {
+        return snapshot.searcher.search(facetLabelQuery(value), 100);
+    }
+
+    private Query facetLabelQuery(String value) {
+        return new TermQuery(new Term(ADDRESS, value));
     }
 
     public List<Document> doPrefixSearch(String value) throws IOException, ParseException {
-        IndexSearcher iSearcher = openSearcher();
+        try (QueryTimer timer = metrics.start("doPrefixSearch", value)) {
+            SearcherAndTaxonomy snapshot = acquire(timer);
+            try {
+                return fetchDocuments(snapshot, prefixSearch(snapshot, value), timer);
+            } finally {
+                release(snapshot);
+            }
+        }
+    }
 
-        PrefixQuery query = new PrefixQuery(new Term(CODE, value.toLowerCase()));
-        TopDocs topDocs = iSearcher.search(query, 100);
+    public List<ResultRow> doPrefixSearch(String value, Projection projection) throws IOException, ParseException {
+        try (QueryTimer timer = metrics.start("doPrefixSearch", value)) {
+            SearcherAndTaxonomy snapshot = acquire(timer);
+            try {
+                return fetchRows(snapshot, prefixSearch(snapshot, value), projection, timer);
+            } finally {
+                release(snapshot);
+            }
+        }
+    }
 
-        List<Document> result = new ArrayList<>(topDocs.totalHits);
-        for (ScoreDoc scoreDoc : topDocs.scoreDocs)
-            result.add(iSearcher.doc(scoreDoc.doc));
+    /**
+     * Runs {@link #doPrefixSearch(String, Projection)} on the asynchronous executor, with the same deadline and
+     * cancellation as {@link #doFacetedSearchAsync(FacetedQuery, long)}. The result has no facets.
+     */
+    public SearchFuture<SearchResult> doPrefixSearchAsync(final String value, final Projection projection,
+                                                          long timeoutMillis) {
+        final SearchDeadline deadline = new SearchDeadline(timeoutMillis);
+        return submit(new Callable<SearchResult>() {
+            @Override
+            public SearchResult call() throws IOException {
+                try (QueryTimer timer = metrics.start("doPrefixSearchAsync", value)) {
+                    SearcherAndTaxonomy snapshot = acquire(timer);
+                    try {
+                        FacetedTopDocs result = topDocs(snapshot, prefixQuery(value), null, deadline);
+                        List<ResultRow> rows = fetchRows(snapshot, result.topDocs, projection, timer);
+                        return result.toSearchResult(rows);
+                    } finally {
+                        release(snapshot);
+                    }
+                }
+            }
+        }, deadline);
+    }
 
-        return result;
+    /**
+     * Type-ahead suggestions of shop codes, served from an in-memory FST, newest shops first.
+     *
+     * @throws IllegalStateException if {@link IndexerConfig#isAutocomplete()} is not enabled
+     */
+    public List<ShopSuggester.Suggestion> suggestCodes(String prefix, int num) {
+        try (QueryTimer timer = metrics.start("suggestCodes", prefix)) {
+            List<ShopSuggester.Suggestion> result = getSuggester().suggestCodes(prefix, num);
+            timer.succeeded(result.size());
+            return result;
+        }
+    }
+
+    /**
+     * Type-ahead suggestions of shop names, served from an in-memory FST, newest shops first.
+     *
+     * @throws IllegalStateException if {@link IndexerConfig#isAutocomplete()} is not enabled
+     */
+    public List<ShopSuggester.Suggestion> suggestNames(String prefix, int num) {
+        try (QueryTimer timer = metrics.start("suggestNames", prefix)) {
+            List<ShopSuggester.Suggestion> result = getSuggester().suggestNames(prefix, num);
+            timer.succeeded(result.size());
+            return result;
+        }
+    }
+
+    public ShopSuggester getSuggester() {
+        if (suggester == null)
+            throw new IllegalStateException("autocomplete is not enabled, see IndexerConfig.setAutocomplete");
+
+        return suggester;
+    }
+
+    public ResultPage pagePrefixSearch(String value, int pageSize, Projection projection) throws IOException {
+        try (QueryTimer timer = metrics.start("pagePrefixSearch", value)) {
+            return firstPage(prefixQuery(value), pageSize, projection, timer);
+        }
+    }
+
+    TopDocs prefixSearch(SearcherAndTaxonomy snapshot, String value) throws IOException {
+        return snapshot.searcher.search(prefixQuery(value), 100);
+    }
+
+    private Query prefixQuery(String value) {
+        return new PrefixQuery(new Term(CODE, value.toLowerCase()));
     }
 
     public List<Document> doRangeSearch(String min, String max) throws IOException {
-        IndexSearcher iSearcher = openSearcher();
+        try (QueryTimer timer = metrics.start("doRangeSearch", new RangeArgs(min, max))) {
+            SearcherAndTaxonomy snapshot = acquire(timer);
+            try {
+                return fetchDocuments(snapshot, rangeSearch(snapshot, min, max), timer);
+            } finally {
+                release(snapshot);
+            }
+        }
+    }
 
-        NumericRangeQuery query = NumericRangeQuery.newLongRange(FOUNDED, parseDate(min), parseDate(max), true, true);
-        TopDocs topDocs = iSearcher.search(query, 100);
+    public List<ResultRow> doRangeSearch(String min, String max, Projection projection) throws IOException {
+        try (QueryTimer timer = metrics.start("doRangeSearch", new RangeArgs(min, max))) {
+            SearcherAndTaxonomy snapshot = acquire(timer);
+            try {
+                return fetchRows(snapshot, rangeSearch(snapshot, min, max), projection, timer);
+            } finally {
+                release(snapshot);
+            }
+        }
+    }
 
-        List<Document> result = new ArrayList<>(topDocs.totalHits);
-        for (ScoreDoc scoreDoc : topDocs.scoreDocs)
-            result.add(iSearcher.doc(scoreDoc.doc));
+    /**
+     * Like {@link #doRangeSearch(String, String, Projection)}, but hits are sorted.
+     *
+     * @param sort e.g. {@link #sortByFounded(boolean)}
+     */
+    public List<ResultRow> doRangeSearch(String min, String max, Projection projection, Sort sort) throws IOException {
+        try (QueryTimer timer = metrics.start("doRangeSearch", new RangeArgs(min, max))) {
+            SearcherAndTaxonomy snapshot = acquire(timer);
+            try {
+                TopDocs topDocs = sortedSearch(snapshot, rangeQuery(min, max), 100, sort);
+                return fetchRows(snapshot, topDocs, projection, timer);
+            } finally {
+                release(snapshot);
+            }
+        }
+    }
 
-        return result;
+    /**
+     * Top hits in the sort order. A search sorted by {@link #sortByFounded(boolean) newest first} stops early in the
+     * segments which are sorted, see {@link IndexerConfig#setSortedByFounded(boolean)}; its total hits are then only
+     * a lower bound, see {@link SortedSegmentSearch.SortedTopDocs#isTotalHitsExact()}.
+     */
+    TopDocs sortedSearch(SearcherAndTaxonomy snapshot, Query query, int numHits, Sort sort) throws IOException {
+        if (sortedSearch != null && sortedSearch.getSort().equals(sort))
+            return sortedSearch.search(snapshot.searcher, query, numHits);
+
+        return snapshot.searcher.search(query, numHits, sort);
     }
 
-    public List<Document> doSearch(String query) throws IOException, ParseException {
-        DirectoryReader iReader = DirectoryReader.open(iWriter, true);
-        IndexSearcher iSearcher = new IndexSearcher(iReader);
-        TaxonomyReader taxo = new DirectoryTaxonomyReader(dir_taxo);
+    /**
+     * @return early terminating search of the sorted segments, <code>null</code> unless
+     *         {@link IndexerConfig#isSortedByFounded()}
+     */
+    public SortedSegmentSearch getSortedSegmentSearch() {
+        return sortedSearch;
+    }
 
+    /**
+     * Sorts by {@link #FOUNDED}, the values are read from its numeric DocValues (Lucene 4.2 FieldCache serves
+     * numeric DocValues directly, without un-inverting the field), ties are broken by index order.
+     */
+    public static Sort sortByFounded(boolean newestFirst) {
+        return new Sort(new SortField(FOUNDED, SortField.Type.LONG, newestFirst), SortField.FIELD_DOC);
+    }
 
-        QueryParser queryParser = new QueryParser(Version.LUCENE_42, NAME, new StandardAnalyzer(Version.LUCENE_42));
-//        Query luceneQuery = new MatchAllDocsQuery();
-        Query luceneQuery = queryParser.parse(query);
+    public ResultPage pageRangeSearch(String min, String max, int pageSize, Projection projection) throws IOException {
+        try (QueryTimer timer = metrics.start("pageRangeSearch", new RangeArgs(min, max))) {
+            return firstPage(rangeQuery(min, max), pageSize, projection, timer);
+        }
+    }
 
+    TopDocs rangeSearch(SearcherAndTaxonomy snapshot, String min, String max) throws IOException {
+        return snapshot.searcher.search(rangeQuery(min, max), 100);
+    }
 
+    Query rangeQuery(String min, String max) {
+        return NumericRangeQuery.newLongRange(FOUNDED, parseDate(min), parseDate(max), true, true);
+    }
 
-        // TODO: how to narrow down search only to some categories?
-        CategoryListParams catListParams = new CategoryListParams();
-        DrillDownQuery drillDownQuery = new DrillDownQuery(new FacetIndexingParams(catListParams), luceneQuery);
-        drillDownQuery.add(new CategoryPath(FACET_SHOP_CATEGORY + "/cafe", '/'));
-//        drillDownQuery.add(new CategoryPath(FACET_SHOP_CATEGORY + "/bookshop", '/'));
+    /**
+     * Bounds of a range search for the slow query log, formatted only if the search was slow.
+     */
+    private static class RangeArgs {
+        final String min;
+        final String max;
+
+        RangeArgs(String min, String max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public String toString() {
+            return FOUNDED + ":[" + min + " TO " + max + "]";
+        }
+    }
 
-        // Collectors to get top results and facets
-        TopScoreDocCollector topScoreDocCollector = TopScoreDocCollector.create(100, true);
+    public List<Document> doSearch(String query) throws IOException, ParseException {
+        try (QueryTimer timer = metrics.start("doSearch", query)) {
+            SearcherAndTaxonomy snapshot = acquire(timer);
+            try {
+                IndexSearcher iSearcher = snapshot.searcher;
+                TopDocs topDocs = search(snapshot, query, timer);
+                logger.debug("Found:");
+
+                List<Document> result = new ArrayList<>(topDocs.scoreDocs.length);
+                for(ScoreDoc scoreDoc: topDocs.scoreDocs) {
+                    Document document = iSearcher.doc(scoreDoc.doc);
+                    result.add(document);
 
-        FacetSearchParams facetSearchParams = new FacetSearchParams(
-                new CountFacetRequest(new CategoryPath(FACET_SHOP_CATEGORY),100),
-                new CountFacetRequest(new CategoryPath(FACET_SHOP_CATEGORY + "/cafe", '/'),100));
+                    logger.debug("- shop: id: {}, name: {}, shop_category={}, area: {}, owners={}, score={}",
+                            document.get(ID),
+                            document.get(NAME),
+                            document.get(SHOP_CATEGORIES),
+                            document.get(AREA),
+                            document.get(OWNERS),
+                            scoreDoc.score);
+                }
+                timer.split(Phase.FETCH);
 
-        FacetsCollector facetsCollector = FacetsCollector.create(facetSearchParams, iReader, taxo);
-        iSearcher.search(drillDownQuery, MultiCollector.wrap(topScoreDocCollector, facetsCollector));
-        logger.debug("Found:");
+                timer.succeeded(topDocs.totalHits);
+                return result;
+            } finally {
+                release(snapshot);
+            }
+        }
+    }
 
-        List<Document> result = new ArrayList<>(topScoreDocCollector.topDocs().totalHits);
-        for(ScoreDoc scoreDoc: topScoreDocCollector.topDocs().scoreDocs) {
-            Document document = iSearcher.doc(scoreDoc.doc);
-            result.add(document);
+    public List<ResultRow> doSearch(String query, Projection projection) throws IOException, ParseException {
+        try (QueryTimer timer = metrics.start("doSearch", query)) {
+            SearcherAndTaxonomy snapshot = acquire(timer);
+            try {
+                TopDocs topDocs = search(snapshot, query, timer);
+                List<ResultRow> result = resultLoader.load(snapshot.searcher, topDocs.scoreDocs, projection);
+                timer.split(Phase.FETCH);
 
-            logger.debug("- shop: id: {}, name: {}, shop_category={}, area: {}, owners={}, score={}",
-                    document.get(ID),
-                    document.get(NAME),
-                    document.get(SHOP_CATEGORIES),
-                    document.get(AREA),
-                    document.get(OWNERS),
-                    scoreDoc.score);
+                timer.succeeded(topDocs.totalHits);
+                return result;
+            } finally {
+                release(snapshot);
+            }
         }
+    }
+
+    /**
+     * Like {@link #doSearch(String, Projection)}, but the hits are sorted and facets are not computed, e.g. the newest
+     * cafes matching the query with {@link #sortByFounded(boolean)}.
+     */
+    public List<ResultRow> doSearch(String query, Projection projection, Sort sort)
+            throws IOException, ParseException {
+        try (QueryTimer timer = metrics.start("doSearch", query)) {
+            SearcherAndTaxonomy snapshot = acquire(timer);
+            try {
+                DrillDownQuery luceneQuery = searchQuery(query);
+                timer.split(Phase.PARSE);
+                return fetchRows(snapshot, sortedSearch(snapshot, luceneQuery, 100, sort), projection, timer);
+            } finally {
+                release(snapshot);
+            }
+        }
+    }
+
+    /**
+     * Pages through the hits of {@link #doSearch(String)}, facets are not computed.
+     */
+    public ResultPage pageSearch(String query, int pageSize, Projection projection) throws IOException, ParseException {
+        try (QueryTimer timer = metrics.start("pageSearch", query)) {
+            DrillDownQuery luceneQuery = searchQuery(query);
+            timer.split(Phase.PARSE);
+            return firstPage(luceneQuery, pageSize, projection, timer);
+        }
+    }
+
+    private TopDocs search(SearcherAndTaxonomy snapshot, String query, QueryTimer timer)
+            throws IOException, ParseException {
+        Query luceneQuery = parseQuery(query);
+        timer.split(Phase.PARSE);
+
+        // cafes only, see doDrillSidewaysSearch for searches narrowed to categories and areas selected by the user
+        FacetedTopDocs result = facetedSearch(snapshot, luceneQuery, Collections.singletonList(DEFAULT_DRILL_DOWN),
+                Collections.<RangeFacetRequest>emptyList(), null, timer);
 
         logger.debug("Facets:");
-        for(FacetResult facetResult : facetsCollector.getFacetResults()) {
+        for(FacetResult facetResult : result.facets) {
             printFacets(facetResult.getFacetResultNode(), 0);
         }
 
+        return result.topDocs;
+    }
+
+    /**
+     * Searches shops in the given categories and counts {@link #FACET_SHOP_CATEGORY} facets of all matching shops plus
+     * the sub-categories of every drill-down path. Facet counts are served from {@link FacetCache} when the same
+     * query and drill-down has already been counted on the current snapshot.
+     *
+     * @param drillDown categories to narrow the search to, e.g. <code>new CategoryPath("shop_category", "cafe")</code>
+     */
+    public SearchResult doFacetedSearch(String query, Projection projection, CategoryPath... drillDown)
+            throws IOException, ParseException {
+        return doFacetedSearch(new FacetedQuery(query, projection).drillDown(drillDown));
+    }
+
+    /**
+     * Like {@link #doFacetedSearch(String, Projection, CategoryPath...)}, but can also count range facets and sort
+     * the hits. Range facet results are returned by {@link SearchResult#getRangeFacets()}.
+     */
+    public SearchResult doFacetedSearch(FacetedQuery facetedQuery) throws IOException, ParseException {
+        return facetedSearch(facetedQuery, null, "doFacetedSearch");
+    }
+
+    /**
+     * Like {@link #doFacetedSearch(FacetedQuery)}, but streams the result as JSON to the output, see
+     * {@link JsonResultWriter}. Field values of the hits go straight from the index to the output without any
+     * per-hit objects. The stream is flushed, but not closed.
+     */
+    public void writeFacetedSearch(FacetedQuery facetedQuery, OutputStream out) throws IOException, ParseException {
+        try (QueryTimer timer = metrics.start("writeFacetedSearch", facetedQuery.getQuery())) {
+            SearcherAndTaxonomy snapshot = acquire(timer);
+            try {
+                Query luceneQuery = parseQuery(facetedQuery.getQuery());
+                timer.split(Phase.PARSE);
+
+                FacetedTopDocs result = facetedSearch(snapshot, luceneQuery, facetedQuery.getDrillDown(),
+                        facetedQuery.getRangeFacets(), facetedQuery.getSort(), timer);
+                jsonWriter.write(snapshot.searcher, result.topDocs, facetedQuery.getProjection(), result.facets,
+                        result.rangeFacets, out);
+                timer.split(Phase.FETCH);
+
+                timer.succeeded(result.topDocs.totalHits);
+            } finally {
+                release(snapshot);
+            }
+        }
+    }
+
+    /**
+     * Runs {@link #doFacetedSearch(FacetedQuery)} on the asynchronous executor, see
+     * {@link IndexerConfig#setAsyncExecutor(Executor)}.
+     *
+     * @param timeoutMillis deadline from now; a search still collecting at the deadline stops and returns the hits
+     *                      and counts collected so far, see {@link SearchResult#isPartial()}
+     * @return the result, {@link SearchFuture#cancel(boolean)} stops the search if it is already running
+     */
+    public SearchFuture<SearchResult> doFacetedSearchAsync(final FacetedQuery facetedQuery, long timeoutMillis) {
+        final SearchDeadline deadline = new SearchDeadline(timeoutMillis);
+        return submit(new Callable<SearchResult>() {
+            @Override
+            public SearchResult call() throws IOException, ParseException {
+                return facetedSearch(facetedQuery, deadline, "doFacetedSearchAsync");
+            }
+        }, deadline);
+    }
+
+    private SearchResult facetedSearch(FacetedQuery facetedQuery, SearchDeadline deadline, String operation)
+            throws IOException, ParseException {
+        try (QueryTimer timer = metrics.start(operation, facetedQuery.getQuery())) {
+            SearcherAndTaxonomy snapshot = acquire(timer);
+            try {
+                Query luceneQuery = parseQuery(facetedQuery.getQuery());
+                timer.split(Phase.PARSE);
+
+                FacetedTopDocs result = facetedSearch(snapshot, luceneQuery, facetedQuery.getDrillDown(),
+                        facetedQuery.getRangeFacets(), facetedQuery.getSort(), deadline, timer);
+                List<ResultRow> rows = resultLoader.load(snapshot.searcher, result.topDocs.scoreDocs,
+                        facetedQuery.getProjection());
+                timer.split(Phase.FETCH);
+
+                timer.succeeded(result.topDocs.totalHits);
+                return result.toSearchResult(rows);
+            } finally {
+                release(snapshot);
+            }
+        }
+    }
+
+    private <V> SearchFuture<V> submit(Callable<V> search, SearchDeadline deadline) {
+        SearchFuture<V> future = new SearchFuture<>(search, deadline);
+        asyncExecutor.execute(future);
+        return future;
+    }
+
+    /**
+     * Runs a batch of searches on one searcher snapshot, so all the results see the same index state, and returns
+     * them together. Every query returns the same hits as the single-search method of its type.
+     * <p>
+     * All queries are parsed first, a query which cannot be parsed fails alone, see {@link BatchResult#getError(int)}.
+     * The remaining queries are searched by the caller thread and up to {@link IndexerConfig#getBatchParallelism()}
+     * <code>- 1</code> threads of the asynchronous executor, which pick the next query as soon as they are done with
+     * one. A busy executor never blocks the batch, the caller thread then searches the queries itself. The hits of
+     * all queries are loaded together at the end, every document only once, see
+     * {@link ResultLoader#loadAll(IndexSearcher, List, List)}.
+     * </p>
+     * The total hits of a query sorted newest first may be only a lower bound, see
+     * {@link SearchResult#isTotalHitsExact()}.
+     */
+    public BatchResult doBatchSearch(final List<BatchQuery> queries) throws IOException {
+        try (QueryTimer timer = metrics.start("doBatchSearch", queries)) {
+            final SearcherAndTaxonomy snapshot = acquire(timer);
+            try {
+                final Query[] luceneQueries = new Query[queries.size()];
+                ParseException[] errors = new ParseException[queries.size()];
+                for (int i = 0; i < luceneQueries.length; i++) {
+                    try {
+                        luceneQueries[i] = batchQuery(queries.get(i));
+                    } catch (ParseException e) {
+                        errors[i] = e;
+                    }
+                }
+                timer.split(Phase.PARSE);
+
+                final FacetedTopDocs[] hits = new FacetedTopDocs[queries.size()];
+                runBatch(queries.size(), new BatchTask() {
+                    @Override
+                    public void run(int index) throws IOException {
+                        if (luceneQueries[index] != null)
+                            hits[index] = batchSearch(snapshot, queries.get(index), luceneQueries[index]);
+                    }
+                });
+                timer.split(Phase.COLLECT);
+
+                List<ScoreDoc[]> scoreDocs = new ArrayList<>(hits.length);
+                List<Projection> projections = new ArrayList<>(hits.length);
+                for (int i = 0; i < hits.length; i++) {
+                    scoreDocs.add(hits[i] == null ? new ScoreDoc[0] : hits[i].topDocs.scoreDocs);
+                    projections.add(queries.get(i).getProjection());
+                }
+                List<List<ResultRow>> rows = resultLoader.loadAll(snapshot.searcher, scoreDocs, projections);
+                timer.split(Phase.FETCH);
+
+                SearchResult[] results = new SearchResult[hits.length];
+                int totalHits = 0;
+                for (int i = 0; i < hits.length; i++) {
+                    if (hits[i] == null)
+                        continue;
+
+                    results[i] = hits[i].toSearchResult(rows.get(i));
+                    totalHits += hits[i].topDocs.totalHits;
+                }
+                timer.succeeded(totalHits);
+                return new BatchResult(results, errors);
+            } finally {
+                release(snapshot);
+            }
+        }
+    }
+
+    Query batchQuery(BatchQuery query) throws ParseException {
+        switch (query.getType()) {
+            case LABEL:
+                return facetLabelQuery(query.getValue());
+            case PREFIX:
+                return prefixQuery(query.getValue());
+            case RANGE:
+                return rangeQuery(query.getValue(), query.getMax());
+            case FACETED:
+                return parseQuery(query.getValue());
+            default:
+                throw new IllegalArgumentException("unsupported query type: " + query.getType());
+        }
+    }
+
+    /**
+     * Searches one query of a batch, hits of all types but {@link BatchQuery.Type#FACETED} come without facets.
+     */
+    FacetedTopDocs batchSearch(SearcherAndTaxonomy snapshot, BatchQuery query, Query luceneQuery) throws IOException {
+        if (query.getType() == BatchQuery.Type.FACETED) {
+            FacetedQuery facetedQuery = query.getFacetedQuery();
+            return facetedSearch(snapshot, luceneQuery, facetedQuery.getDrillDown(), facetedQuery.getRangeFacets(),
+                    facetedQuery.getSort(), QueryTimer.NOOP);
+        }
+
+        TopDocs topDocs = query.getSort() == null
+                ? snapshot.searcher.search(luceneQuery, 100) : sortedSearch(snapshot, luceneQuery, 100, query.getSort());
+        return new FacetedTopDocs(topDocs, Collections.<FacetResult>emptyList());
+    }
+
+    /**
+     * Search of one query of a batch by {@link #runBatch(int, BatchTask)}.
+     */
+    private interface BatchTask {
+        void run(int index) throws IOException;
+    }
+
+    /**
+     * Runs the task for every index from <code>0</code> to <code>size - 1</code> on the caller thread and on helper
+     * threads of the asynchronous executor, and returns when all of them are done. Each thread claims the next index
+     * until none is left, so a helper which starts late finds nothing to do and the caller never waits for a helper
+     * which has not claimed anything.
+     */
+    private void runBatch(final int size, final BatchTask task) throws IOException {
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(size);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                for (int index = next.getAndIncrement(); index < size; index = next.getAndIncrement()) {
+                    try {
+                        // the other queries are not searched once one of them failed
+                        if (failure.get() == null)
+                            task.run(index);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+
+        int helpers = Math.min(indexerConfig.getBatchParallelism(), size) - 1;
+        for (int i = 0; i < helpers; i++) {
+            try {
+                asyncExecutor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                // the caller searches the queries of the rejected helper
+                break;
+            }
+        }
+        worker.run();
+
+        // helpers may still be searching the snapshot, which must not be released before they finish
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        Throwable e = failure.get();
+        if (e instanceof IOException)
+            throw (IOException) e;
+        if (e instanceof RuntimeException)
+            throw (RuntimeException) e;
+        if (e instanceof Error)
+            throw (Error) e;
+    }
+
+    /**
+     * Multi-select facet navigation over {@link #NAVIGATION_DIMENSIONS}. Hits match the query and the selection,
+     * i.e. any selected value of every selected dimension. The facets hold one result per navigation dimension:
+     * a dimension with a selection is counted as if its own selection was not applied (drill sideways), so the user
+     * sees how many shops every other value would add, the other dimensions are counted on the hits.
+     * <p>
+     * The hits and the counts of all dimensions are collected in a single pass by Lucene's {@link DrillSideways},
+     * so the cost does not grow with the number of selected dimensions. Results are not cached in
+     * {@link FacetCache}.
+     * </p>
+     *
+     * @throws IllegalArgumentException if a dimension other than {@link #NAVIGATION_DIMENSIONS} is selected
+     */
+    public SearchResult doDrillSidewaysSearch(String query, Projection projection, FacetSelection selection)
+            throws IOException, ParseException {
+        try (QueryTimer timer = metrics.start("doDrillSidewaysSearch", query)) {
+            SearcherAndTaxonomy snapshot = acquire(timer);
+            try {
+                Query luceneQuery = parseQuery(query);
+                timer.split(Phase.PARSE);
+
+                FacetedTopDocs result = drillSideways(snapshot, luceneQuery, selection);
+                timer.split(Phase.COLLECT);
+                List<ResultRow> rows = resultLoader.load(snapshot.searcher, result.topDocs.scoreDocs, projection);
+                timer.split(Phase.FETCH);
+
+                timer.succeeded(result.topDocs.totalHits);
+                return result.toSearchResult(rows);
+            } finally {
+                release(snapshot);
+            }
+        }
+    }
+
+    FacetedTopDocs drillSideways(SearcherAndTaxonomy snapshot, Query luceneQuery, FacetSelection selection)
+            throws IOException {
+        DrillDownQuery query = drillDownQuery(luceneQuery, Collections.<CategoryPath>emptyList());
+        for (String dimension : selection.getDimensions()) {
+            if (!NAVIGATION_DIMENSIONS.contains(dimension))
+                throw new IllegalArgumentException("cannot drill sideways in " + dimension
+                        + ", navigation dimensions are " + NAVIGATION_DIMENSIONS);
+            query.add(selection.getPaths(dimension));
+        }
+
+        List<FacetRequest> facetRequests = new ArrayList<>(NAVIGATION_DIMENSIONS.size());
+        for (String dimension : NAVIGATION_DIMENSIONS)
+            facetRequests.add(new CountFacetRequest(new CategoryPath(dimension), 100));
+        FacetSearchParams facetParams = new FacetSearchParams(facetRequests);
+
+        // drill sideways may score documents out of order
+        TopScoreDocCollector hits = TopScoreDocCollector.create(100, false);
+        if (selection.isEmpty()) {
+            // nothing to drill sideways from, Lucene rejects a drill sideways search without a drill-down
+            FacetsCollector facets = FacetsCollector.create(facetParams, snapshot.getIndexReader(),
+                    snapshot.taxonomyReader);
+            snapshot.searcher.search(query, MultiCollector.wrap(hits, facets));
+            return new FacetedTopDocs(hits.topDocs(), facets.getFacetResults());
+        }
+
+        DrillSideways.DrillSidewaysResult result = new DrillSideways(snapshot.searcher, snapshot.taxonomyReader)
+                .search(query, hits, facetParams);
+        return new FacetedTopDocs(hits.topDocs(), result.facetResults);
+    }
+
+    static class FacetedTopDocs {
+        final TopDocs topDocs;
+        final List<FacetResult> facets;
+        final List<RangeFacetResult> rangeFacets;
+        /** the deadline passed during collection, see {@link SearchResult#isPartial()} */
+        final boolean partial;
+        /** see {@link SearchResult#isTotalHitsExact()} */
+        final boolean totalHitsExact;
+
+        FacetedTopDocs(TopDocs topDocs, List<FacetResult> facets) {
+            this(topDocs, facets, Collections.<RangeFacetResult>emptyList(), false);
+        }
+
+        FacetedTopDocs(TopDocs topDocs, List<FacetResult> facets, List<RangeFacetResult> rangeFacets,
+                       boolean partial) {
+            this.topDocs = topDocs;
+            this.facets = facets;
+            this.rangeFacets = rangeFacets;
+            this.partial = partial;
+            this.totalHitsExact = !(topDocs instanceof SortedSegmentSearch.SortedTopDocs)
+                    || ((SortedSegmentSearch.SortedTopDocs) topDocs).isTotalHitsExact();
+        }
+
+        SearchResult toSearchResult(List<ResultRow> rows) {
+            return new SearchResult(rows, topDocs.totalHits, facets, rangeFacets, partial, totalHitsExact);
+        }
+    }
+
+    FacetedTopDocs facetedSearch(SearcherAndTaxonomy snapshot, Query luceneQuery, List<CategoryPath> drillDown,
+                                 List<RangeFacetRequest> rangeFacets, Sort sort, QueryTimer timer)
+            throws IOException {
+        return facetedSearch(snapshot, luceneQuery, drillDown, rangeFacets, sort, null, timer);
+    }
+
+    /**
+     * @param deadline stops the collection when it passes, <code>null</code> for no time limit
+     */
+    FacetedTopDocs facetedSearch(SearcherAndTaxonomy snapshot, Query luceneQuery, List<CategoryPath> drillDown,
+                                 List<RangeFacetRequest> rangeFacets, Sort sort, SearchDeadline deadline,
+                                 QueryTimer timer) throws IOException {
+        DirectoryReader iReader = snapshot.getIndexReader();
+        TaxonomyReader taxo = snapshot.taxonomyReader;
+
+        Query query = drillDownQuery(luceneQuery, drillDown);
+        FacetCache.Key cacheKey = facetCacheKey(snapshot, luceneQuery, drillDown, rangeFacets);
+        FacetCache.Entry facets = facetCache.get(cacheKey);
+
+        FacetSearchParams facetParams = facets == null ? facetSearchParams(drillDown) : null;
+        FacetedCollectorFactory factory = new FacetedCollectorFactory(sort, facetParams,
+                facets == null ? rangeFacets : null, iReader, taxo, deadline);
+        boolean partial = collect(snapshot.searcher, query, factory);
+        List<FacetedCollector> collectors = factory.getCollectors();
+        timer.split(Phase.COLLECT);
+
+        if (facets == null) {
+            facets = accumulateFacets(collectors, facetParams, iReader, taxo, deadline);
+            partial |= deadline != null && deadline.isExpired();
+            // counts of a partial search must not be served to other searches
+            if (!partial)
+                facetCache.put(cacheKey, facets);
+            timer.split(Phase.FACETS);
+        }
+
+        TopDocs topDocs = mergeTopDocs(collectors, sort);
+        timer.split(Phase.COLLECT);
+        return new FacetedTopDocs(topDocs, facets.facets, facets.rangeFacets, partial);
+    }
+
+    /**
+     * Collects the top hits only, without facets.
+     */
+    FacetedTopDocs topDocs(SearcherAndTaxonomy snapshot, Query query, Sort sort, SearchDeadline deadline)
+            throws IOException {
+        FacetedCollectorFactory factory = new FacetedCollectorFactory(sort, null, null, snapshot.getIndexReader(),
+                snapshot.taxonomyReader, deadline);
+        boolean partial = collect(snapshot.searcher, query, factory);
+        return new FacetedTopDocs(mergeTopDocs(factory.getCollectors(), sort),
+                Collections.<FacetResult>emptyList(), Collections.<RangeFacetResult>emptyList(), partial);
+    }
+
+    /**
+     * @return <code>true</code> if the deadline passed, the collectors of the factory then hold what was collected
+     *         until then
+     */
+    private static boolean collect(IndexSearcher iSearcher, Query query, FacetedCollectorFactory factory)
+            throws IOException {
+        try {
+            if (iSearcher instanceof ConcurrentSearcher) {
+                ((ConcurrentSearcher) iSearcher).search(query, factory);
+            } else {
+                iSearcher.search(query, factory.newCollector());
+            }
+            return false;
+        } catch (SearchTimeoutException e) {
+            logger.debug("returning partial results of {}: {}", query, e.getMessage());
+            return true;
+        }
+    }
+
+    private static TopDocs mergeTopDocs(List<FacetedCollector> collectors, Sort sort) throws IOException {
+        // topDocs() pops the collector's priority queue, it can be called only once
+        if (collectors.size() == 1)
+            return collectors.get(0).topDocs.topDocs();
+
+        TopDocs[] sliceTopDocs = new TopDocs[collectors.size()];
+        for (int i = 0; i < sliceTopDocs.length; i++)
+            sliceTopDocs[i] = collectors.get(i).topDocs.topDocs();
+        return TopDocs.merge(sort, 100, sliceTopDocs);
+    }
+
+    /**
+     * Taxonomy facets of all slices are accumulated at once from their matching documents, so they are exactly the
+     * same as of a sequential search; range facet counts are summed.
+     * <p>
+     * With a deadline the taxonomy facets are accumulated segment by segment instead and the segment counts are
+     * merged like the counts of shards, see {@link FacetMerger}. Accumulation stops between two segments once the
+     * deadline has passed, so a late search returns the counts of the segments accumulated so far.
+     * </p>
+     */
+    private static FacetCache.Entry accumulateFacets(List<FacetedCollector> collectors, FacetSearchParams params,
+                                                     DirectoryReader iReader, TaxonomyReader taxo,
+                                                     SearchDeadline deadline) throws IOException {
+        List<FacetResult> facets;
+        List<List<RangeFacetResult>> rangeFacets = new ArrayList<>(collectors.size());
+        if (deadline != null) {
+            List<List<FacetResult>> segments = new ArrayList<>();
+            accumulate:
+            for (FacetedCollector collector : collectors) {
+                for (FacetsCollector.MatchingDocs docs : collector.facets.getMatchingDocs()) {
+                    if (deadline.isExpired())
+                        break accumulate;
+                    segments.add(FacetsAccumulator.create(params, iReader, taxo)
+                            .accumulate(Collections.singletonList(docs)));
+                }
+            }
+            facets = FacetMerger.merge(segments);
+        } else if (collectors.size() == 1) {
+            facets = collectors.get(0).facets.getFacetResults();
+        } else {
+            List<FacetsCollector.MatchingDocs> matchingDocs = new ArrayList<>();
+            for (FacetedCollector collector : collectors)
+                matchingDocs.addAll(collector.facets.getMatchingDocs());
+            facets = FacetsAccumulator.create(params, iReader, taxo).accumulate(matchingDocs);
+        }
+
+        for (FacetedCollector collector : collectors)
+            rangeFacets.add(collector.rangeFacets.getResults());
+        return new FacetCache.Entry(facets, FacetMerger.mergeRanges(rangeFacets));
+    }
+
+    /**
+     * Collects top hits and, unless they are cached, taxonomy and range facets of one slice of segments.
+     */
+    private static class FacetedCollector extends Collector {
+        final TopDocsCollector<?> topDocs;
+        final FacetsCollector facets;
+        final RangeFacetsCollector rangeFacets;
+        private final Collector collector;
+
+        FacetedCollector(TopDocsCollector<?> topDocs, FacetsCollector facets, RangeFacetsCollector rangeFacets,
+                         SearchDeadline deadline) {
+            this.topDocs = topDocs;
+            this.facets = facets;
+            this.rangeFacets = rangeFacets;
+            Collector collector = MultiCollector.wrap(topDocs, facets, rangeFacets);
+            this.collector = deadline == null ? collector : new DeadlineCollector(collector, deadline);
+        }
+
+        @Override
+        public void setScorer(Scorer scorer) throws IOException {
+            collector.setScorer(scorer);
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            collector.collect(doc);
+        }
+
+        @Override
+        public void setNextReader(AtomicReaderContext context) throws IOException {
+            collector.setNextReader(context);
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder() {
+            return collector.acceptsDocsOutOfOrder();
+        }
+    }
+
+    private static class FacetedCollectorFactory implements ConcurrentSearcher.CollectorFactory<FacetedCollector> {
+        private final Sort sort;
+        private final FacetSearchParams facetParams;
+        private final List<RangeFacetRequest> rangeFacets;
+        private final IndexReader iReader;
+        private final TaxonomyReader taxo;
+        private final SearchDeadline deadline;
+        private final List<FacetedCollector> collectors = new ArrayList<>();
+
+        /**
+         * @param facetParams taxonomy facets to count, <code>null</code> to collect top hits only
+         * @param rangeFacets range facets to count, <code>null</code> to collect top hits only
+         * @param deadline    <code>null</code> for no time limit
+         */
+        FacetedCollectorFactory(Sort sort, FacetSearchParams facetParams, List<RangeFacetRequest> rangeFacets,
+                                IndexReader iReader, TaxonomyReader taxo, SearchDeadline deadline) {
+            this.sort = sort;
+            this.facetParams = facetParams;
+            this.rangeFacets = rangeFacets;
+            this.iReader = iReader;
+            this.taxo = taxo;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return all collectors created so far, in the order of their slices; only the searching thread creates
+         *         collectors, before the slices are submitted
+         */
+        List<FacetedCollector> getCollectors() {
+            return collectors;
+        }
+
+        @Override
+        public FacetedCollector newCollector() throws IOException {
+            TopDocsCollector<?> topDocs = sort == null
+                    ? TopScoreDocCollector.create(100, true)
+                    : TopFieldCollector.create(sort, 100, true, false, false, true);
+            FacetedCollector collector = new FacetedCollector(topDocs,
+                    facetParams == null ? null : FacetsCollector.create(facetParams, iReader, taxo),
+                    rangeFacets == null ? null : new RangeFacetsCollector(rangeFacets), deadline);
+            collectors.add(collector);
+            return collector;
+        }
+    }
+
+    private static FacetSearchParams facetSearchParams(List<CategoryPath> drillDown) {
+        List<FacetRequest> facetRequests = new ArrayList<>(drillDown.size() + 1);
+        facetRequests.add(new CountFacetRequest(new CategoryPath(FACET_SHOP_CATEGORY), 100));
+        for (CategoryPath path : drillDown)
+            facetRequests.add(new CountFacetRequest(path, 100));
+
+        return new FacetSearchParams(facetRequests);
+    }
+
+    private static FacetCache.Key facetCacheKey(SearcherAndTaxonomy snapshot, Query luceneQuery,
+                                                List<CategoryPath> drillDown, List<RangeFacetRequest> rangeFacets) {
+        List<String> paths = new ArrayList<>(drillDown.size());
+        for (CategoryPath path : drillDown)
+            paths.add(path.toString('/'));
+        Collections.sort(paths);
+
+        return new FacetCache.Key(luceneQuery.toString(), paths, rangeFacets.toString(),
+                snapshot.getIndexReader().getVersion(), snapshot.taxonomyReader.getSize());
+    }
+
+    /**
+     * Counts facets of all documents, so that the most common request is served from the cache right away.
+     */
+    private void warmFacetCache() throws IOException {
+        SearcherAndTaxonomy snapshot = acquire();
+        try {
+            facetedSearch(snapshot, new MatchAllDocsQuery(), Collections.<CategoryPath>emptyList(),
+                    Collections.<RangeFacetRequest>emptyList(), null, QueryTimer.NOOP);
+        } finally {
+            release(snapshot);
+        }
+    }
+
+    public FacetCache getFacetCache() {
+        return facetCache;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    public PageCursors getPageCursors() {
+        return pageCursors;
+    }
+
+    /**
+     * @return parsed query, possibly shared with other searches through {@link QueryCache} so it must not be modified
+     */
+    Query parseQuery(String query) throws ParseException {
+        return queryCache.parse(query);
+    }
+
+    /**
+     * One analyzer for both indexing and query parsing, so query terms are analyzed the same way as the indexed
+     * terms of the field. Not analyzed fields get their value as a single term, lower-cased where the indexed value
+     * is lower-cased.
+     */
+    private static Analyzer createAnalyzer() {
+        Map<String, Analyzer> fieldAnalyzers = new HashMap<>();
+        fieldAnalyzers.put(ADDRESS, new KeywordAnalyzer());
+        fieldAnalyzers.put(CODE, new LowerCaseKeywordAnalyzer(Version.LUCENE_42));
+        return new PerFieldAnalyzerWrapper(new CustomAnalyzer(Version.LUCENE_42), fieldAnalyzers);
+    }
+
+    DrillDownQuery searchQuery(String query) throws ParseException {
+        return drillDownQuery(parseQuery(query), Collections.singletonList(DEFAULT_DRILL_DOWN));
+    }
+
+    private static DrillDownQuery drillDownQuery(Query luceneQuery, List<CategoryPath> drillDown) {
+        CategoryListParams catListParams = new CategoryListParams();
+        DrillDownQuery drillDownQuery = new DrillDownQuery(new FacetIndexingParams(catListParams), luceneQuery);
+        for (CategoryPath path : drillDown)
+            drillDownQuery.add(path);
+
+        return drillDownQuery;
+    }
+
+    /**
+     * Returns the next page of a search started by one of the <code>page*Search</code> methods. The page comes from
+     * the same searcher snapshot as the first page, so the pages are consistent even if the index changes meanwhile.
+     *
+     * @param cursor {@link ResultPage#getNextCursor()} of the previous page
+     * @throws CursorExpiredException if the cursor is unknown, exhausted or was not used for
+     *                                {@link IndexerConfig#getCursorTtlMillis()}
+     */
+    public ResultPage nextPage(String cursor) throws IOException {
+        try (QueryTimer timer = metrics.start("nextPage", cursor)) {
+            return page(pageCursors.take(cursor), timer);
+        }
+    }
+
+    /**
+     * Releases the cursor before it is exhausted or expired, unknown cursors are ignored.
+     */
+    public void closeCursor(String cursor) throws IOException {
+        try {
+            pageCursors.release(pageCursors.take(cursor));
+        } catch (CursorExpiredException e) {
+            logger.debug(e.getMessage());
+        }
+    }
+
+    private ResultPage firstPage(Query query, int pageSize, Projection projection, QueryTimer timer)
+            throws IOException {
+        if (pageSize < 1)
+            throw new IllegalArgumentException("pageSize must be > 0, got: " + pageSize);
+
+        return page(new PageCursors.Cursor(acquire(timer), query, projection, pageSize), timer);
+    }
+
+    /**
+     * Collects only one page of hits after the last hit of the previous page, so the cost of a page does not depend
+     * on how deep it is.
+     */
+    private ResultPage page(PageCursors.Cursor cursor, QueryTimer timer) throws IOException {
+        boolean registered = false;
+        try {
+            IndexSearcher iSearcher = cursor.snapshot.searcher;
+            TopDocs topDocs = iSearcher.searchAfter(cursor.after, cursor.query, cursor.pageSize);
+            timer.split(Phase.COLLECT);
+            List<ResultRow> rows = resultLoader.load(iSearcher, topDocs.scoreDocs, cursor.projection);
+            timer.split(Phase.FETCH);
+            cursor.returned += topDocs.scoreDocs.length;
+
+            String nextCursor = null;
+            if (topDocs.scoreDocs.length == cursor.pageSize && cursor.returned < topDocs.totalHits) {
+                cursor.after = topDocs.scoreDocs[topDocs.scoreDocs.length - 1];
+                nextCursor = pageCursors.put(cursor);
+                registered = true;
+            }
+
+            timer.succeeded(topDocs.totalHits);
+            return new ResultPage(rows, topDocs.totalHits, nextCursor);
+        } finally {
+            if (!registered)
+                pageCursors.release(cursor);
+        }
+    }
+
+    /**
+     * Loads the hits as whole documents, the time since the last split is charged to {@link Phase#COLLECT}.
+     */
+    private static List<Document> fetchDocuments(SearcherAndTaxonomy snapshot, TopDocs topDocs, QueryTimer timer)
+            throws IOException {
+        timer.split(Phase.COLLECT);
+        List<Document> result = loadDocuments(snapshot.searcher, topDocs);
+        timer.split(Phase.FETCH);
+
+        timer.succeeded(topDocs.totalHits);
+        return result;
+    }
+
+    /**
+     * Loads the projection of the hits, the time since the last split is charged to {@link Phase#COLLECT}.
+     */
+    private List<ResultRow> fetchRows(SearcherAndTaxonomy snapshot, TopDocs topDocs, Projection projection,
+                                      QueryTimer timer) throws IOException {
+        timer.split(Phase.COLLECT);
+        List<ResultRow> result = resultLoader.load(snapshot.searcher, topDocs.scoreDocs, projection);
+        timer.split(Phase.FETCH);
+
+        timer.succeeded(topDocs.totalHits);
+        return result;
+    }
+
+    List<ResultRow> loadRows(SearcherAndTaxonomy snapshot, ScoreDoc[] hits, Projection projection) throws IOException {
+        return resultLoader.load(snapshot.searcher, hits, projection);
+    }
+
+    private static List<Document> loadDocuments(IndexSearcher iSearcher, TopDocs topDocs) throws IOException {
+        List<Document> result = new ArrayList<>(topDocs.scoreDocs.length);
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs)
+            result.add(iSearcher.doc(scoreDoc.doc));
+
         return result;
     }
 
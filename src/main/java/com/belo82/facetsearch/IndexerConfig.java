@@ -0,0 +1,471 @@
+package com.belo82.facetsearch;
+
+import org.apache.lucene.index.IndexWriterConfig;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+
+/**
+ * Holds all the configuration used by {@link Indexer}. Setters return <code>this</code> so they can be chained, e.g.
+ * <pre>
+ *     new Indexer(new IndexerConfig().setRefreshIntervalMillis(1000));
+ * </pre>
+ *
+ * @author Peter Belko
+ */
+public class IndexerConfig {
+    /** by default searcher snapshot is refreshed only after writes */
+    public static final long DEFAULT_REFRESH_INTERVAL_MILLIS = 0;
+
+    public static final int DEFAULT_INGEST_BATCH_SIZE = 1000;
+    public static final long DEFAULT_CURSOR_TTL_MILLIS = 60 * 1000;
+    public static final int DEFAULT_FACET_CACHE_SIZE = 1000;
+    public static final int DEFAULT_QUERY_CACHE_SIZE = 1000;
+    public static final int DEFAULT_COMMIT_AFTER_CHANGES = 1000;
+
+    private long refreshIntervalMillis = DEFAULT_REFRESH_INTERVAL_MILLIS;
+    private boolean refreshAfterWrite = true;
+    private int commitAfterChanges = DEFAULT_COMMIT_AFTER_CHANGES;
+    private int ingestBatchSize = DEFAULT_INGEST_BATCH_SIZE;
+    private int indexingThreads = 1;
+    private int indexingQueueSize = 0;
+    private double ramBufferSizeMB = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
+    private int mergeThreads = 0;
+    private StorageMode storageMode = StorageMode.RAM;
+    private File indexPath;
+    private long cursorTtlMillis = DEFAULT_CURSOR_TTL_MILLIS;
+    private int facetCacheSize = DEFAULT_FACET_CACHE_SIZE;
+    private int queryCacheSize = DEFAULT_QUERY_CACHE_SIZE;
+    private boolean autocomplete = false;
+    private boolean instrumentation = false;
+    private long slowQueryMillis = 0;
+    private String metricsName;
+    private int shards = 1;
+    private int searchThreads = 0;
+    private int maxParallelQueries = 0;
+    private double maxMergedSegmentMB = 0;
+    private int asyncThreads = 0;
+    private Executor asyncExecutor;
+    private int batchParallelism = 0;
+    private boolean sortedByFounded = false;
+
+    public long getRefreshIntervalMillis() {
+        return refreshIntervalMillis;
+    }
+
+    /**
+     * @param refreshIntervalMillis how often the shared searcher snapshot is refreshed in the background,
+     *                              <code>0</code> disables the background refresh
+     */
+    public IndexerConfig setRefreshIntervalMillis(long refreshIntervalMillis) {
+        if (refreshIntervalMillis < 0)
+            throw new IllegalArgumentException("refreshIntervalMillis must be >= 0, got: " + refreshIntervalMillis);
+
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        return this;
+    }
+
+    public boolean isRefreshAfterWrite() {
+        return refreshAfterWrite;
+    }
+
+    /**
+     * @param refreshAfterWrite if <code>true</code> the shared searcher snapshot is refreshed (blocking) at the end
+     *                          of every write operation, so the changes are visible to the next search
+     */
+    public IndexerConfig setRefreshAfterWrite(boolean refreshAfterWrite) {
+        this.refreshAfterWrite = refreshAfterWrite;
+        return this;
+    }
+
+    public int getCommitAfterChanges() {
+        return commitAfterChanges;
+    }
+
+    /**
+     * Incremental changes are made visible by the searcher refresh alone, durable commits are batched: the index is
+     * committed by the change set which brings the number of changes applied since the last commit to at least
+     * <code>commitAfterChanges</code>. Uncommitted changes are committed by {@link Indexer#commit()} and
+     * {@link Indexer#close()}, but lost if the process dies before.
+     *
+     * @param commitAfterChanges <code>0</code> leaves all commits of incremental changes to {@link Indexer#commit()}
+     */
+    public IndexerConfig setCommitAfterChanges(int commitAfterChanges) {
+        if (commitAfterChanges < 0)
+            throw new IllegalArgumentException("commitAfterChanges must be >= 0, got: " + commitAfterChanges);
+
+        this.commitAfterChanges = commitAfterChanges;
+        return this;
+    }
+
+    public int getIngestBatchSize() {
+        return ingestBatchSize;
+    }
+
+    /**
+     * @param ingestBatchSize how many documents are built before they are handed to the index writer at once
+     */
+    public IndexerConfig setIngestBatchSize(int ingestBatchSize) {
+        if (ingestBatchSize < 1)
+            throw new IllegalArgumentException("ingestBatchSize must be > 0, got: " + ingestBatchSize);
+
+        this.ingestBatchSize = ingestBatchSize;
+        return this;
+    }
+
+    public int getIndexingThreads() {
+        return indexingThreads;
+    }
+
+    /**
+     * @param indexingThreads number of worker threads which build documents and add them to the index writer,
+     *                        <code>1</code> indexes on the caller thread
+     */
+    public IndexerConfig setIndexingThreads(int indexingThreads) {
+        if (indexingThreads < 1)
+            throw new IllegalArgumentException("indexingThreads must be > 0, got: " + indexingThreads);
+
+        this.indexingThreads = indexingThreads;
+        return this;
+    }
+
+    /**
+     * @return capacity (in batches) of the queue between the reader and the indexing workers
+     */
+    public int getIndexingQueueSize() {
+        return indexingQueueSize > 0 ? indexingQueueSize : 2 * indexingThreads;
+    }
+
+    /**
+     * @param indexingQueueSize capacity (in batches) of the queue between the reader and the indexing workers,
+     *                          <code>0</code> means twice the number of indexing threads
+     */
+    public IndexerConfig setIndexingQueueSize(int indexingQueueSize) {
+        if (indexingQueueSize < 0)
+            throw new IllegalArgumentException("indexingQueueSize must be >= 0, got: " + indexingQueueSize);
+
+        this.indexingQueueSize = indexingQueueSize;
+        return this;
+    }
+
+    public double getRamBufferSizeMB() {
+        return ramBufferSizeMB;
+    }
+
+    /**
+     * @see IndexWriterConfig#setRAMBufferSizeMB(double)
+     */
+    public IndexerConfig setRamBufferSizeMB(double ramBufferSizeMB) {
+        this.ramBufferSizeMB = ramBufferSizeMB;
+        return this;
+    }
+
+    public int getMergeThreads() {
+        return mergeThreads;
+    }
+
+    /**
+     * @param mergeThreads maximum number of concurrent merge threads, <code>0</code> keeps the Lucene default
+     * @see org.apache.lucene.index.ConcurrentMergeScheduler#setMaxThreadCount(int)
+     */
+    public IndexerConfig setMergeThreads(int mergeThreads) {
+        if (mergeThreads < 0)
+            throw new IllegalArgumentException("mergeThreads must be >= 0, got: " + mergeThreads);
+
+        this.mergeThreads = mergeThreads;
+        return this;
+    }
+
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    public File getIndexPath() {
+        return indexPath;
+    }
+
+    /**
+     * Sets where the index and the taxonomy are stored. Persistent modes keep them in <code>index</code> and
+     * <code>taxonomy</code> sub-directories of <code>indexPath</code> and reopen them on the next start.
+     *
+     * @param indexPath ignored for {@link StorageMode#RAM}
+     */
+    public IndexerConfig setStorage(StorageMode storageMode, File indexPath) {
+        if (storageMode.isPersistent() && indexPath == null)
+            throw new IllegalArgumentException("indexPath is required for storage mode " + storageMode);
+
+        this.storageMode = storageMode;
+        this.indexPath = indexPath;
+        return this;
+    }
+
+    public long getCursorTtlMillis() {
+        return cursorTtlMillis;
+    }
+
+    /**
+     * @param cursorTtlMillis how long an unused paging cursor keeps its searcher snapshot open; expired cursors are
+     *                        released on the next paging request or refresh, see {@link #setRefreshIntervalMillis(long)}
+     */
+    public IndexerConfig setCursorTtlMillis(long cursorTtlMillis) {
+        if (cursorTtlMillis < 1)
+            throw new IllegalArgumentException("cursorTtlMillis must be > 0, got: " + cursorTtlMillis);
+
+        this.cursorTtlMillis = cursorTtlMillis;
+        return this;
+    }
+
+    public int getFacetCacheSize() {
+        return facetCacheSize;
+    }
+
+    /**
+     * @param facetCacheSize maximum number of cached facet results, <code>0</code> disables the cache
+     */
+    public IndexerConfig setFacetCacheSize(int facetCacheSize) {
+        if (facetCacheSize < 0)
+            throw new IllegalArgumentException("facetCacheSize must be >= 0, got: " + facetCacheSize);
+
+        this.facetCacheSize = facetCacheSize;
+        return this;
+    }
+
+    public int getQueryCacheSize() {
+        return queryCacheSize;
+    }
+
+    /**
+     * @param queryCacheSize maximum number of cached parsed queries, <code>0</code> disables the cache
+     */
+    public IndexerConfig setQueryCacheSize(int queryCacheSize) {
+        if (queryCacheSize < 0)
+            throw new IllegalArgumentException("queryCacheSize must be >= 0, got: " + queryCacheSize);
+
+        this.queryCacheSize = queryCacheSize;
+        return this;
+    }
+
+    public boolean isAutocomplete() {
+        return autocomplete;
+    }
+
+    /**
+     * @param autocomplete if <code>true</code> the FST based code and name suggester is built and kept up to date
+     *                     with every new searcher snapshot
+     */
+    public IndexerConfig setAutocomplete(boolean autocomplete) {
+        this.autocomplete = autocomplete;
+        return this;
+    }
+
+    public boolean isInstrumentation() {
+        return instrumentation;
+    }
+
+    /**
+     * @param instrumentation if <code>true</code> counters and per-phase latency histograms of every operation are
+     *                        collected and exposed over JMX, see {@link com.belo82.facetsearch.metrics.IndexerMetrics}
+     */
+    public IndexerConfig setInstrumentation(boolean instrumentation) {
+        this.instrumentation = instrumentation;
+        return this;
+    }
+
+    public long getSlowQueryMillis() {
+        return slowQueryMillis;
+    }
+
+    /**
+     * @param slowQueryMillis operations taking at least this long are logged with their phase breakdown,
+     *                        <code>0</code> disables the slow query log
+     */
+    public IndexerConfig setSlowQueryMillis(long slowQueryMillis) {
+        if (slowQueryMillis < 0)
+            throw new IllegalArgumentException("slowQueryMillis must be >= 0, got: " + slowQueryMillis);
+
+        this.slowQueryMillis = slowQueryMillis;
+        return this;
+    }
+
+    public String getMetricsName() {
+        return metricsName;
+    }
+
+    /**
+     * @param metricsName name of the indexer in its JMX object names, <code>null</code> for a generated unique name
+     */
+    public IndexerConfig setMetricsName(String metricsName) {
+        this.metricsName = metricsName;
+        return this;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * @param shards number of shards of a {@link ShardedIndexer}, ignored by a plain {@link Indexer}
+     */
+    public IndexerConfig setShards(int shards) {
+        if (shards < 1)
+            throw new IllegalArgumentException("shards must be > 0, got: " + shards);
+
+        this.shards = shards;
+        return this;
+    }
+
+    public int getSearchThreads() {
+        return searchThreads;
+    }
+
+    /**
+     * @param searchThreads size of the pool which searches the segments of one query in parallel,
+     *                      <code>0</code> searches every query on its caller thread only
+     */
+    public IndexerConfig setSearchThreads(int searchThreads) {
+        if (searchThreads < 0)
+            throw new IllegalArgumentException("searchThreads must be >= 0, got: " + searchThreads);
+
+        this.searchThreads = searchThreads;
+        return this;
+    }
+
+    /**
+     * @return how many queries may be searched in parallel at the same time, further queries are searched on
+     *         their caller threads
+     */
+    public int getMaxParallelQueries() {
+        return maxParallelQueries > 0 ? maxParallelQueries : Math.max(1, searchThreads / 2);
+    }
+
+    /**
+     * @param maxParallelQueries admission limit of the parallel search, <code>0</code> means half the number of
+     *                           search threads
+     */
+    public IndexerConfig setMaxParallelQueries(int maxParallelQueries) {
+        if (maxParallelQueries < 0)
+            throw new IllegalArgumentException("maxParallelQueries must be >= 0, got: " + maxParallelQueries);
+
+        this.maxParallelQueries = maxParallelQueries;
+        return this;
+    }
+
+    public double getMaxMergedSegmentMB() {
+        return maxMergedSegmentMB;
+    }
+
+    /**
+     * Caps the size of merged segments, so that a large index keeps several segments of similar size which can be
+     * searched in parallel instead of being merged into a few huge ones.
+     *
+     * @param maxMergedSegmentMB <code>0</code> keeps the Lucene default
+     * @see org.apache.lucene.index.TieredMergePolicy#setMaxMergedSegmentMB(double)
+     */
+    public IndexerConfig setMaxMergedSegmentMB(double maxMergedSegmentMB) {
+        if (maxMergedSegmentMB < 0)
+            throw new IllegalArgumentException("maxMergedSegmentMB must be >= 0, got: " + maxMergedSegmentMB);
+
+        this.maxMergedSegmentMB = maxMergedSegmentMB;
+        return this;
+    }
+
+    /**
+     * @return size of the pool which runs the asynchronous searches of an {@link Indexer}
+     */
+    public int getAsyncThreads() {
+        return asyncThreads > 0 ? asyncThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @param asyncThreads size of the pool which runs the asynchronous searches, <code>0</code> means the number of
+     *                     processors; ignored if an executor is set with {@link #setAsyncExecutor(Executor)}
+     */
+    public IndexerConfig setAsyncThreads(int asyncThreads) {
+        if (asyncThreads < 0)
+            throw new IllegalArgumentException("asyncThreads must be >= 0, got: " + asyncThreads);
+
+        this.asyncThreads = asyncThreads;
+        return this;
+    }
+
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * @param asyncExecutor runs the asynchronous searches instead of the indexer's own pool, e.g. an executor
+     *                      starting a virtual thread per search on JVMs which have them; it is not shut down by
+     *                      {@link Indexer#close()}
+     */
+    public IndexerConfig setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+        return this;
+    }
+
+    public int getBatchParallelism() {
+        return batchParallelism > 0 ? batchParallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @param batchParallelism how many queries of one batch are searched at the same time, the caller thread plus
+     *                         up to <code>batchParallelism - 1</code> threads of the asynchronous executor;
+     *                         <code>0</code> means the number of processors
+     */
+    public IndexerConfig setBatchParallelism(int batchParallelism) {
+        if (batchParallelism < 0)
+            throw new IllegalArgumentException("batchParallelism must be >= 0, got: " + batchParallelism);
+
+        this.batchParallelism = batchParallelism;
+        return this;
+    }
+
+    public boolean isSortedByFounded() {
+        return sortedByFounded;
+    }
+
+    /**
+     * @param sortedByFounded whether segments are kept sorted by {@link Indexer#FOUNDED}, newest first, so that
+     *                        searches sorted newest first stop early in every segment; the whole input is
+     *                        then read into memory and sorted before it is indexed, on a single thread whatever
+     *                        {@link #getIndexingThreads()}, so streamed input
+     *                        ({@link Indexer#createIndex(java.io.InputStream)}) is rejected
+     */
+    public IndexerConfig setSortedByFounded(boolean sortedByFounded) {
+        this.sortedByFounded = sortedByFounded;
+        return this;
+    }
+
+    /**
+     * @return copy of this configuration for one shard of a {@link ShardedIndexer}, a persistent shard is stored
+     *         in the <code>shard-&lt;n&gt;</code> sub-directory of {@link #getIndexPath()}
+     */
+    IndexerConfig forShard(int shard) {
+        IndexerConfig copy = new IndexerConfig();
+        copy.refreshIntervalMillis = refreshIntervalMillis;
+        copy.refreshAfterWrite = refreshAfterWrite;
+        copy.commitAfterChanges = commitAfterChanges;
+        copy.ingestBatchSize = ingestBatchSize;
+        copy.indexingThreads = indexingThreads;
+        copy.indexingQueueSize = indexingQueueSize;
+        copy.ramBufferSizeMB = ramBufferSizeMB;
+        copy.mergeThreads = mergeThreads;
+        copy.storageMode = storageMode;
+        copy.indexPath = indexPath == null ? null : new File(indexPath, "shard-" + shard);
+        copy.cursorTtlMillis = cursorTtlMillis;
+        copy.facetCacheSize = facetCacheSize;
+        copy.queryCacheSize = queryCacheSize;
+        copy.autocomplete = autocomplete;
+        copy.instrumentation = instrumentation;
+        copy.slowQueryMillis = slowQueryMillis;
+        copy.metricsName = metricsName == null ? null : metricsName + "-shard-" + shard;
+        copy.shards = 1;
+        copy.searchThreads = searchThreads;
+        copy.maxParallelQueries = maxParallelQueries;
+        copy.maxMergedSegmentMB = maxMergedSegmentMB;
+        copy.asyncThreads = asyncThreads;
+        copy.asyncExecutor = asyncExecutor;
+        copy.batchParallelism = batchParallelism;
+        copy.sortedByFounded = sortedByFounded;
+        return copy;
+    }
+}
@@ -1,5 +1,8 @@
 package com.belo82.facetsearch;
 
+import ch.qos.logback.classic.Level;
+import com.belo82.facetsearch.load.LoadTest;
+import com.belo82.facetsearch.load.LoadTestConfig;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -7,8 +10,10 @@ import org.codehaus.jackson.node.ArrayNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 /**
  * Hello world!
@@ -17,11 +22,35 @@ public class Main {
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
 
 
-    public static void main(String[] args) throws IOException, ParseException {
+    /**
+     * @param args optional path to a JSON file with shops, it is streamed into the index instead of the bundled data,
+     *             or <code>load</code> followed by the options of {@link LoadTestConfig#parse(String[])} to run a
+     *             load test, e.g. <code>load --clients=8 --qps=500 --index-rate=200 --report=report.json</code>
+     */
+    public static void main(String[] args) throws IOException, ParseException, InterruptedException {
+        if (args.length > 0 && args[0].equals("load")) {
+            runLoadTest(LoadTestConfig.parse(Arrays.copyOfRange(args, 1, args.length)));
+            return;
+        }
+
         Indexer indexer = new Indexer();
-        indexer.createIndex(readData());
+        if (args.length > 0)
+            logger.info("ingestion: {}", indexer.createIndex(new File(args[0])));
+        else
+            indexer.createIndex(readData());
 
         indexer.doSearch("area: fulham");
+        indexer.close();
+    }
+
+    private static void runLoadTest(LoadTestConfig config) throws IOException, InterruptedException {
+        // the Indexer logs every hit at DEBUG, which would measure the console instead of the index
+        if (System.getProperty("logback.configurationFile") == null) {
+            ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+        }
+
+        LoadTest loadTest = new LoadTest(config);
+        loadTest.writeReport(loadTest.run());
     }
 
     public static ArrayNode readData() throws IOException {
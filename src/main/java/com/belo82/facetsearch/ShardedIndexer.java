@@ -0,0 +1,673 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.ingest.ChangeSet;
+import com.belo82.facetsearch.ingest.IngestStats;
+import com.belo82.facetsearch.ingest.ShopReadException;
+import com.belo82.facetsearch.ingest.ShopStreamReader;
+import com.belo82.facetsearch.metrics.QueryTimer;
+import com.belo82.facetsearch.search.BatchQuery;
+import com.belo82.facetsearch.search.BatchResult;
+import com.belo82.facetsearch.search.FacetMerger;
+import com.belo82.facetsearch.search.FacetSelection;
+import com.belo82.facetsearch.search.FacetedQuery;
+import com.belo82.facetsearch.search.Projection;
+import com.belo82.facetsearch.search.RangeFacetRequest;
+import com.belo82.facetsearch.search.RangeFacetResult;
+import com.belo82.facetsearch.search.ResultRow;
+import com.belo82.facetsearch.search.SearchResult;
+import com.belo82.facetsearch.search.SearcherTaxonomyManager.SearcherAndTaxonomy;
+import org.apache.lucene.facet.search.FacetResult;
+import org.apache.lucene.facet.taxonomy.CategoryPath;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index split into {@link IndexerConfig#getShards()} independent {@link Indexer}s, each with its own index and
+ * taxonomy. Shops are hash-partitioned by their {@link Indexer#ID}, so upserts and deletes of a shop always go to
+ * the same shard.<br/>
+ * <br/>
+ * A search runs on all shards concurrently, one shard on the caller thread and the others on a shared executor,
+ * each on its own searcher snapshot. The top hits of the shards are merged by score or by the sort order
+ * ({@link TopDocs#merge(Sort, int, TopDocs[])}) and only the merged top hits are loaded. Every shard counts facets in
+ * its own taxonomy, the results are merged by label, see {@link FacetMerger}. Scores are computed from the term
+ * statistics of each shard, with hash partitioning the shards are statistically alike so the scores are comparable.
+ * Ingestion routes the shops to one queue per shard and indexes all shards in parallel.<br/>
+ * <br/>
+ * Shard threads are never interrupted, not even when another shard failed or on {@link #close()}: an interrupt during
+ * a read closes the shared file channel of a {@link StorageMode#NIOFS} index, which fails every later search of the
+ * shard, and an interrupt during a commit can leave its index writer unusable.
+ *
+ * @author Peter Belko
+ */
+public class ShardedIndexer implements Closeable {
+    private static final int TOP_N = 100;
+
+    private final IndexerConfig indexerConfig;
+    private final Indexer[] shards;
+    private final ExecutorService executor;
+
+    public ShardedIndexer(IndexerConfig indexerConfig) {
+        this.indexerConfig = indexerConfig;
+        this.shards = new Indexer[indexerConfig.getShards()];
+        for (int i = 0; i < shards.length; i++)
+            shards[i] = new Indexer(indexerConfig.forShard(i));
+
+        // the caller thread searches one shard itself
+        executor = shards.length > 1
+                ? Executors.newFixedThreadPool(shards.length - 1, Indexer.namedThreadFactory("shard-search"))
+                : null;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public Indexer getShard(int shard) {
+        return shards[shard];
+    }
+
+    /**
+     * @return shard of the shop, spread by a hash of the id so that neighbouring ids do not cluster
+     */
+    public int shardOf(int id) {
+        int h = id * 0x9E3779B9;
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % shards.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (executor != null)
+            shutdownAndWait(executor);
+
+        IOException failure = null;
+        for (Indexer shard : shards) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                if (failure == null)
+                    failure = e;
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Lets running tasks finish, without interrupts, see the class comment.
+     */
+    private static void shutdownAndWait(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Task run once per shard by {@link #onAllShards(ShardTask)}.
+     */
+    interface ShardTask<T> {
+        T run(int shard) throws Exception;
+    }
+
+    /**
+     * Runs the task on all shards concurrently and waits for all of them, also when one of them fails, so no task
+     * runs on after the call has returned, e.g. on a snapshot released by the caller. Tasks which have not started
+     * yet when a task failed are cancelled, running tasks are not interrupted.
+     *
+     * @return results in shard order
+     * @throws IOException failure of the first failed shard, in shard order
+     */
+    <T> List<T> onAllShards(final ShardTask<T> task) throws IOException {
+        List<Future<T>> futures = new ArrayList<>(shards.length - 1);
+        for (int i = 1; i < shards.length; i++) {
+            final int shard = i;
+            futures.add(executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    return task.run(shard);
+                }
+            }));
+        }
+
+        List<T> results = new ArrayList<>(shards.length);
+        Throwable failure = null;
+        try {
+            results.add(task.run(0));
+        } catch (Throwable e) {
+            failure = e;
+        }
+
+        boolean interrupted = false;
+        for (Future<T> future : futures) {
+            if (failure != null)
+                future.cancel(false);
+            while (true) {
+                try {
+                    results.add(future.get());
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null)
+                        failure = e.getCause();
+                    break;
+                } catch (CancellationException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        if (failure != null)
+            throw rethrow(failure);
+        return results;
+    }
+
+    private static IOException rethrow(Throwable e) {
+        if (e instanceof IOException)
+            return (IOException) e;
+        if (e instanceof RuntimeException)
+            throw (RuntimeException) e;
+        if (e instanceof Error)
+            throw (Error) e;
+
+        return new IOException("shard task failed.", e);
+    }
+
+    public IngestStats createIndex(ArrayNode data) throws IOException {
+        return createIndex(data.getElements());
+    }
+
+    /**
+     * @throws IllegalStateException in sorted mode, see {@link Indexer#createIndex(InputStream)}
+     */
+    public IngestStats createIndex(InputStream in) throws IOException {
+        checkStreamingInput();
+        try (ShopStreamReader reader = new ShopStreamReader(in)) {
+            return createIndex(reader);
+        } catch (ShopReadException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @throws IllegalStateException in sorted mode, see {@link Indexer#createIndex(InputStream)}
+     */
+    public IngestStats createIndex(File file) throws IOException {
+        checkStreamingInput();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return createIndex(in);
+        }
+    }
+
+    private void checkStreamingInput() {
+        if (indexerConfig.isSortedByFounded())
+            throw new IllegalStateException("sorted index needs all shops in memory, " +
+                    "use createIndex(ArrayNode) or createIndex(Iterator) instead of a stream");
+    }
+
+    /**
+     * Routes the shops on the caller thread in batches to one bounded queue per shard, every shard indexes its queue
+     * on its own thread with {@link Indexer#createIndex(Iterator)}. In sorted mode every shard holds all its shops in
+     * memory until the input ends.
+     */
+    public IngestStats createIndex(Iterator<? extends JsonNode> shops) throws IOException {
+        IngestStats stats = new IngestStats();
+        int batchSize = indexerConfig.getIngestBatchSize();
+        final List<JsonNode> endOfInput = Collections.emptyList();
+        final List<JsonNode> abort = new ArrayList<>(0);
+
+        List<BlockingQueue<List<JsonNode>>> queues = new ArrayList<>(shards.length);
+        List<Future<?>> futures = new ArrayList<>(shards.length);
+        ExecutorService ingest = Executors.newFixedThreadPool(shards.length, Indexer.namedThreadFactory("shard-ingest"));
+        for (int i = 0; i < shards.length; i++) {
+            final Indexer shard = shards[i];
+            final BlockingQueue<List<JsonNode>> queue = new ArrayBlockingQueue<>(2);
+            queues.add(queue);
+            futures.add(ingest.submit(new Callable<IngestStats>() {
+                @Override
+                public IngestStats call() throws Exception {
+                    return shard.createIndex(new BatchQueueIterator(queue, endOfInput, abort));
+                }
+            }));
+        }
+        ingest.shutdown();
+
+        boolean ended = false;
+        try {
+            List<List<JsonNode>> batches = new ArrayList<>(shards.length);
+            for (int i = 0; i < shards.length; i++)
+                batches.add(new ArrayList<JsonNode>(batchSize));
+
+            while (shops.hasNext()) {
+                JsonNode shop = shops.next();
+                int shard = shardOf(shop.get(Indexer.ID).getIntValue());
+                List<JsonNode> batch = batches.get(shard);
+                batch.add(shop);
+
+                if (batch.size() >= batchSize) {
+                    Indexer.putOrFail(queues.get(shard), batch, futures);
+                    batches.set(shard, new ArrayList<JsonNode>(batchSize));
+                }
+            }
+            for (int i = 0; i < shards.length; i++) {
+                if (!batches.get(i).isEmpty())
+                    Indexer.putOrFail(queues.get(i), batches.get(i), futures);
+                Indexer.putOrFail(queues.get(i), endOfInput, futures);
+            }
+
+            for (Future<?> future : futures)
+                stats.add((IngestStats) future.get());
+            ended = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("indexing has been interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("shard indexing failed.", e.getCause());
+        } finally {
+            if (!ended)
+                abort(queues, futures, abort);
+            shutdownAndWait(ingest);
+        }
+
+        stats.finish();
+        return stats;
+    }
+
+    /**
+     * Tells the shards which are still indexing that the input failed, so they stop without a commit.
+     */
+    private static void abort(List<BlockingQueue<List<JsonNode>>> queues, List<Future<?>> futures,
+                              List<JsonNode> abort) {
+        try {
+            for (int i = 0; i < queues.size(); i++) {
+                // a shard which is still running drains its queue
+                while (!futures.get(i).isDone() && !queues.get(i).offer(abort, 100, TimeUnit.MILLISECONDS))
+                    ;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Iterates over batches taken from a queue until the end of input marker, fails at the abort marker.
+     */
+    private static class BatchQueueIterator implements Iterator<JsonNode> {
+        private final BlockingQueue<List<JsonNode>> queue;
+        private final List<JsonNode> endOfInput;
+        private final List<JsonNode> abort;
+        private Iterator<JsonNode> batch = Collections.emptyIterator();
+        private boolean ended;
+
+        BatchQueueIterator(BlockingQueue<List<JsonNode>> queue, List<JsonNode> endOfInput, List<JsonNode> abort) {
+            this.queue = queue;
+            this.endOfInput = endOfInput;
+            this.abort = abort;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!ended && !batch.hasNext()) {
+                try {
+                    List<JsonNode> next = queue.take();
+                    if (next == endOfInput)
+                        ended = true;
+                    else if (next == abort)
+                        throw new IllegalStateException("indexing has been aborted.");
+                    else
+                        batch = next.iterator();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("indexing has been interrupted.", e);
+                }
+            }
+
+            return !ended;
+        }
+
+        @Override
+        public JsonNode next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            return batch.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Splits the change set by shard and applies the parts concurrently, each part is made visible by its shard,
+     * which also commits it once enough changes have accumulated, see {@link IndexerConfig#setCommitAfterChanges(int)}.
+     */
+    public IngestStats apply(ChangeSet changeSet) throws IOException {
+        final List<ChangeSet> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++)
+            parts.add(new ChangeSet());
+        for (ChangeSet.Change change : changeSet.getChanges()) {
+            ChangeSet part = parts.get(shardOf(change.id));
+            if (change.isDelete())
+                part.delete(change.id);
+            else
+                part.upsert(change.shop);
+        }
+
+        IngestStats stats = new IngestStats();
+        for (IngestStats shardStats : onAllShards(new ShardTask<IngestStats>() {
+            @Override
+            public IngestStats run(int shard) throws IOException {
+                return parts.get(shard).isEmpty() ? new IngestStats() : shards[shard].apply(parts.get(shard));
+            }
+        }))
+            stats.add(shardStats);
+
+        stats.finish();
+        return stats;
+    }
+
+    public IngestStats upsert(ObjectNode shop) throws IOException {
+        return shards[shardOf(shop.get(Indexer.ID).getIntValue())].upsert(shop);
+    }
+
+    public IngestStats delete(int id) throws IOException {
+        return shards[shardOf(id)].delete(id);
+    }
+
+    public void commit() throws IOException {
+        onAllShards(new ShardTask<Void>() {
+            @Override
+            public Void run(int shard) throws IOException {
+                shards[shard].commit();
+                return null;
+            }
+        });
+    }
+
+    public void refresh() throws IOException {
+        onAllShards(new ShardTask<Void>() {
+            @Override
+            public Void run(int shard) throws IOException {
+                shards[shard].refresh();
+                return null;
+            }
+        });
+    }
+
+    public int numDocs() throws IOException {
+        int numDocs = 0;
+        for (Indexer shard : shards)
+            numDocs += shard.numDocs();
+
+        return numDocs;
+    }
+
+    /**
+     * Search of one shard, runs on the snapshot acquired for the shard.
+     */
+    private interface ShardSearch {
+        Indexer.FacetedTopDocs search(Indexer shard, SearcherAndTaxonomy snapshot) throws IOException;
+    }
+
+    public List<ResultRow> doFacetLabelSearch(final String value, Projection projection) throws IOException {
+        return fanOut(new ShardSearch() {
+            @Override
+            public Indexer.FacetedTopDocs search(Indexer shard, SearcherAndTaxonomy snapshot) throws IOException {
+                return hitsOnly(shard.facetLabelSearch(snapshot, value));
+            }
+        }, null, projection).getRows();
+    }
+
+    public List<ResultRow> doPrefixSearch(final String value, Projection projection) throws IOException {
+        return fanOut(new ShardSearch() {
+            @Override
+            public Indexer.FacetedTopDocs search(Indexer shard, SearcherAndTaxonomy snapshot) throws IOException {
+                return hitsOnly(shard.prefixSearch(snapshot, value));
+            }
+        }, null, projection).getRows();
+    }
+
+    public List<ResultRow> doRangeSearch(String min, String max, Projection projection) throws IOException {
+        return doRangeSearch(min, max, projection, null);
+    }
+
+    /**
+     * @param sort e.g. {@link Indexer#sortByFounded(boolean)}, <code>null</code> to merge the shards by score; all
+     *             hits of a range query score the same, ties are broken by shard and then by index order
+     */
+    public List<ResultRow> doRangeSearch(String min, String max, Projection projection, final Sort sort)
+            throws IOException {
+        final Query query = shards[0].rangeQuery(min, max);
+        return fanOut(new ShardSearch() {
+            @Override
+            public Indexer.FacetedTopDocs search(Indexer shard, SearcherAndTaxonomy snapshot) throws IOException {
+                return hitsOnly(sort == null
+                        ? snapshot.searcher.search(query, TOP_N) : shard.sortedSearch(snapshot, query, TOP_N, sort));
+            }
+        }, sort, projection).getRows();
+    }
+
+    /**
+     * Like {@link Indexer#doSearch(String, Projection)}, searches cafes only.
+     */
+    public List<ResultRow> doSearch(String query, Projection projection) throws IOException, ParseException {
+        return doFacetedSearch(new FacetedQuery(query, projection).drillDown(Indexer.DEFAULT_DRILL_DOWN)).getRows();
+    }
+
+    /**
+     * Like {@link Indexer#doSearch(String, Projection, Sort)}, searches cafes only and sorts the hits.
+     */
+    public List<ResultRow> doSearch(String query, Projection projection, final Sort sort)
+            throws IOException, ParseException {
+        final Query luceneQuery = shards[0].searchQuery(query);
+        return fanOut(new ShardSearch() {
+            @Override
+            public Indexer.FacetedTopDocs search(Indexer shard, SearcherAndTaxonomy snapshot) throws IOException {
+                return hitsOnly(shard.sortedSearch(snapshot, luceneQuery, TOP_N, sort));
+            }
+        }, sort, projection).getRows();
+    }
+
+    public SearchResult doFacetedSearch(String query, Projection projection, CategoryPath... drillDown)
+            throws IOException, ParseException {
+        return doFacetedSearch(new FacetedQuery(query, projection).drillDown(drillDown));
+    }
+
+    /**
+     * Runs the faceted search on every shard, merges the hits and sums the facet counts of all shards.
+     */
+    public SearchResult doFacetedSearch(final FacetedQuery facetedQuery) throws IOException, ParseException {
+        final Query luceneQuery = shards[0].parseQuery(facetedQuery.getQuery());
+        final List<CategoryPath> drillDown = facetedQuery.getDrillDown();
+        final List<RangeFacetRequest> rangeFacets = facetedQuery.getRangeFacets();
+
+        return fanOut(new ShardSearch() {
+            @Override
+            public Indexer.FacetedTopDocs search(Indexer shard, SearcherAndTaxonomy snapshot) throws IOException {
+                return shard.facetedSearch(snapshot, luceneQuery, drillDown, rangeFacets, facetedQuery.getSort(),
+                        QueryTimer.NOOP);
+            }
+        }, facetedQuery.getSort(), facetedQuery.getProjection());
+    }
+
+    /**
+     * Runs the drill sideways search on every shard, merges the hits and sums the counts of all shards, see
+     * {@link Indexer#doDrillSidewaysSearch(String, Projection, FacetSelection)}.
+     */
+    public SearchResult doDrillSidewaysSearch(String query, Projection projection, final FacetSelection selection)
+            throws IOException, ParseException {
+        final Query luceneQuery = shards[0].parseQuery(query);
+
+        return fanOut(new ShardSearch() {
+            @Override
+            public Indexer.FacetedTopDocs search(Indexer shard, SearcherAndTaxonomy snapshot) throws IOException {
+                return shard.drillSideways(snapshot, luceneQuery, selection);
+            }
+        }, null, projection);
+    }
+
+    /**
+     * Runs the batch on one snapshot of every shard, acquired once for all the queries, see
+     * {@link Indexer#doBatchSearch(List)}. The queries are searched one after another, each of them on all shards
+     * concurrently.
+     */
+    public BatchResult doBatchSearch(List<BatchQuery> queries) throws IOException {
+        SearcherAndTaxonomy[] snapshots = acquireAll();
+        try {
+            SearchResult[] results = new SearchResult[queries.size()];
+            ParseException[] errors = new ParseException[queries.size()];
+            for (int i = 0; i < results.length; i++) {
+                final BatchQuery query = queries.get(i);
+                final Query luceneQuery;
+                try {
+                    luceneQuery = shards[0].batchQuery(query);
+                } catch (ParseException e) {
+                    errors[i] = e;
+                    continue;
+                }
+
+                results[i] = fanOut(new ShardSearch() {
+                    @Override
+                    public Indexer.FacetedTopDocs search(Indexer shard, SearcherAndTaxonomy snapshot)
+                            throws IOException {
+                        return shard.batchSearch(snapshot, query, luceneQuery);
+                    }
+                }, query.getSort(), query.getProjection(), snapshots);
+            }
+
+            return new BatchResult(results, errors);
+        } finally {
+            releaseAll(snapshots);
+        }
+    }
+
+    private static Indexer.FacetedTopDocs hitsOnly(TopDocs topDocs) {
+        return new Indexer.FacetedTopDocs(topDocs, Collections.<FacetResult>emptyList());
+    }
+
+    /**
+     * Acquires a snapshot of every shard and searches them, see {@link #fanOut(ShardSearch, Sort, Projection,
+     * SearcherAndTaxonomy[])}.
+     */
+    private SearchResult fanOut(ShardSearch search, Sort sort, Projection projection) throws IOException {
+        SearcherAndTaxonomy[] snapshots = acquireAll();
+        try {
+            return fanOut(search, sort, projection, snapshots);
+        } finally {
+            releaseAll(snapshots);
+        }
+    }
+
+    /**
+     * Searches the snapshots of all shards concurrently, merges the top hits and loads only the merged ones, each
+     * from the snapshot of its shard.
+     */
+    private SearchResult fanOut(final ShardSearch search, Sort sort, Projection projection,
+                                final SearcherAndTaxonomy[] snapshots) throws IOException {
+        List<Indexer.FacetedTopDocs> shardHits = onAllShards(new ShardTask<Indexer.FacetedTopDocs>() {
+            @Override
+            public Indexer.FacetedTopDocs run(int shard) throws IOException {
+                return search.search(shards[shard], snapshots[shard]);
+            }
+        });
+
+        TopDocs[] topDocs = new TopDocs[shards.length];
+        List<List<FacetResult>> facets = new ArrayList<>(shards.length);
+        List<List<RangeFacetResult>> rangeFacets = new ArrayList<>(shards.length);
+        boolean partial = false;
+        boolean totalHitsExact = true;
+        for (int i = 0; i < shards.length; i++) {
+            Indexer.FacetedTopDocs hits = shardHits.get(i);
+            topDocs[i] = hits.topDocs;
+            facets.add(hits.facets);
+            rangeFacets.add(hits.rangeFacets);
+            partial |= hits.partial;
+            totalHitsExact &= hits.totalHitsExact;
+        }
+        TopDocs merged = TopDocs.merge(sort, TOP_N, topDocs);
+
+        return new SearchResult(loadRows(merged.scoreDocs, snapshots, projection), merged.totalHits,
+                FacetMerger.merge(facets), FacetMerger.mergeRanges(rangeFacets), partial, totalHitsExact);
+    }
+
+    private SearcherAndTaxonomy[] acquireAll() throws IOException {
+        SearcherAndTaxonomy[] snapshots = new SearcherAndTaxonomy[shards.length];
+        try {
+            for (int i = 0; i < shards.length; i++)
+                snapshots[i] = shards[i].acquire();
+            return snapshots;
+        } catch (RuntimeException e) {
+            releaseAll(snapshots);
+            throw e;
+        }
+    }
+
+    private void releaseAll(SearcherAndTaxonomy[] snapshots) throws IOException {
+        for (int i = 0; i < shards.length; i++) {
+            if (snapshots[i] != null)
+                shards[i].release(snapshots[i]);
+        }
+    }
+
+    /**
+     * Loads the hits shard by shard and puts the rows back to the merged order.
+     */
+    private List<ResultRow> loadRows(ScoreDoc[] hits, SearcherAndTaxonomy[] snapshots, Projection projection)
+            throws IOException {
+        ResultRow[] rows = new ResultRow[hits.length];
+        for (int shard = 0; shard < shards.length; shard++) {
+            List<Integer> positions = new ArrayList<>();
+            for (int i = 0; i < hits.length; i++) {
+                if (hits[i].shardIndex == shard)
+                    positions.add(i);
+            }
+            if (positions.isEmpty())
+                continue;
+
+            ScoreDoc[] shardHits = new ScoreDoc[positions.size()];
+            for (int i = 0; i < shardHits.length; i++)
+                shardHits[i] = hits[positions.get(i)];
+
+            List<ResultRow> shardRows = shards[shard].loadRows(snapshots[shard], shardHits, projection);
+            for (int i = 0; i < shardHits.length; i++)
+                rows[positions.get(i)] = shardRows.get(i);
+        }
+
+        return Arrays.asList(rows);
+    }
+}
@@ -0,0 +1,54 @@
+package com.belo82.facetsearch;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Where {@link Indexer} keeps the main index and the taxonomy.
+ *
+ * @author Peter Belko
+ */
+public enum StorageMode {
+    /**
+     * Both indexes live on the Java heap and are lost when the process exits.
+     */
+    RAM {
+        @Override
+        public Directory open(File path) {
+            return new RAMDirectory();
+        }
+    },
+    /**
+     * Index files are memory mapped, they live in the OS page cache outside of the Java heap.
+     */
+    MMAP {
+        @Override
+        public Directory open(File path) throws IOException {
+            return new MMapDirectory(path);
+        }
+    },
+    /**
+     * Index files are read with positional reads through {@link java.nio.channels.FileChannel}, useful where
+     * virtual address space for memory mapping is limited.
+     */
+    NIOFS {
+        @Override
+        public Directory open(File path) throws IOException {
+            return new NIOFSDirectory(path);
+        }
+    };
+
+    /**
+     * @param path directory on a local file system, ignored by {@link #RAM}
+     */
+    public abstract Directory open(File path) throws IOException;
+
+    public boolean isPersistent() {
+        return this != RAM;
+    }
+}
@@ -0,0 +1,29 @@
+package com.belo82.facetsearch.analyzer;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.KeywordTokenizer;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.util.Version;
+
+import java.io.Reader;
+
+/**
+ * Keeps the whole value as a single lower-cased token, matching fields which are lower-cased before they are indexed
+ * as not analyzed {@link org.apache.lucene.document.StringField}s.
+ *
+ * @author Peter Belko
+ */
+public final class LowerCaseKeywordAnalyzer extends Analyzer {
+    private final Version matchVersion;
+
+    public LowerCaseKeywordAnalyzer(Version matchVersion) {
+        this.matchVersion = matchVersion;
+    }
+
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+        Tokenizer source = new KeywordTokenizer(reader);
+        return new TokenStreamComponents(source, new LowerCaseFilter(matchVersion, source));
+    }
+}
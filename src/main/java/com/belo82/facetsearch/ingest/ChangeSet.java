@@ -0,0 +1,72 @@
+package com.belo82.facetsearch.ingest;
+
+import com.belo82.facetsearch.Indexer;
+import org.codehaus.jackson.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ordered batch of incremental changes keyed on the shop <code>id</code>, applied by
+ * {@link com.belo82.facetsearch.Indexer#apply(ChangeSet)} with a single searcher refresh and at most one commit.<br/>
+ * <br/>
+ * Changes are applied in the order they were added, so an upsert followed by a delete of the same shop removes it.
+ *
+ * @author Peter Belko
+ */
+public class ChangeSet {
+
+    public static class Change {
+        public final int id;
+        /** new version of the shop, <code>null</code> for a delete */
+        public final ObjectNode shop;
+
+        private Change(int id, ObjectNode shop) {
+            this.id = id;
+            this.shop = shop;
+        }
+
+        public boolean isDelete() {
+            return shop == null;
+        }
+    }
+
+    private final List<Change> changes = new ArrayList<>();
+
+    /**
+     * Adds the shop or replaces the existing shop with the same {@link Indexer#ID}.
+     */
+    public ChangeSet upsert(ObjectNode shop) {
+        changes.add(new Change(shop.get(Indexer.ID).getIntValue(), shop));
+        return this;
+    }
+
+    public ChangeSet delete(int id) {
+        changes.add(new Change(id, null));
+        return this;
+    }
+
+    public List<Change> getChanges() {
+        return Collections.unmodifiableList(changes);
+    }
+
+    public int size() {
+        return changes.size();
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        int deletes = 0;
+        for (Change change : changes) {
+            if (change.isDelete())
+                deletes++;
+        }
+
+        return "upserts=" + (changes.size() - deletes) + ", deletes=" + deletes;
+    }
+}
@@ -0,0 +1,88 @@
+package com.belo82.facetsearch.ingest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and memory statistics of a single ingestion run.<br/>
+ * <br/>
+ * Peak heap is sampled after every batch, so it is an approximation of the real peak. Batches may be reported
+ * from several indexing threads at once.
+ *
+ * @author Peter Belko
+ */
+public class IngestStats {
+    private final long startNanos = System.nanoTime();
+    private long endNanos;
+    private long documents;
+    private long batches;
+    private long peakHeapBytes;
+
+    public IngestStats() {
+        sampleHeap();
+    }
+
+    public synchronized void batchIndexed(int size) {
+        documents += size;
+        batches++;
+        sampleHeap();
+    }
+
+    /**
+     * Adds the documents and batches of another run, e.g. of one shard, to this one.
+     */
+    public void add(IngestStats other) {
+        long otherDocuments;
+        long otherBatches;
+        long otherPeakHeapBytes;
+        synchronized (other) {
+            otherDocuments = other.documents;
+            otherBatches = other.batches;
+            otherPeakHeapBytes = other.peakHeapBytes;
+        }
+
+        synchronized (this) {
+            documents += otherDocuments;
+            batches += otherBatches;
+            peakHeapBytes = Math.max(peakHeapBytes, otherPeakHeapBytes);
+        }
+    }
+
+    public synchronized void finish() {
+        endNanos = System.nanoTime();
+        sampleHeap();
+    }
+
+    private void sampleHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        peakHeapBytes = Math.max(peakHeapBytes, runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    public synchronized long getDocuments() {
+        return documents;
+    }
+
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    public synchronized long getElapsedMillis() {
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+    }
+
+    public double getDocumentsPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? documents : documents * 1000.0 / elapsed;
+    }
+
+    public synchronized long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "documents=" + documents + ", batches=" + batches + ", elapsedMs=" + getElapsedMillis()
+                + ", docsPerSec=" + Math.round(getDocumentsPerSecond())
+                + ", peakHeapMb=" + peakHeapBytes / (1024 * 1024);
+    }
+}
@@ -0,0 +1,244 @@
+package com.belo82.facetsearch.ingest;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.ObjectNode;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Deterministic generator of synthetic shops in the same JSON shape as the bundled <code>data.json</code>, used to
+ * build indexes of 10k - 10M shops for benchmarks and load tests.<br/>
+ * <br/>
+ * The same seed and count always produce the same shops. Categories, areas and owners follow a Zipf-like
+ * distribution (a few very common values and a long tail), founding dates lean towards recent years and codes use
+ * the formats of the real data, so facet counts, prefix expansions and range sizes behave like in production
+ * rather than like uniform noise. Shops are produced one by one, the generator holds no state per shop.
+ *
+ * @author Peter Belko
+ */
+public class ShopGenerator implements Iterator<JsonNode> {
+    public static final long DEFAULT_SEED = 82L;
+
+    private static final List<String> CATEGORIES = Collections.unmodifiableList(Arrays.asList(
+            "cafe", "supermarket", "restaurant", "pub", "bookshop", "bakery", "pharmacy", "newsagent", "butcher",
+            "florist", "hairdresser", "off licence", "hardware", "dry cleaner", "greengrocer", "deli", "charity shop",
+            "launderette", "optician", "toy shop"));
+
+    private static final List<String> AREAS = Collections.unmodifiableList(Arrays.asList(
+            "Fulham", "Chelsea", "Putney", "Battersea", "Clapham", "Brixton", "Camden", "Islington", "Hackney",
+            "Shoreditch", "Canada Water", "Surrey Quays", "Greenwich", "Wimbledon", "Richmond", "Hammersmith",
+            "Kensington", "Notting Hill", "Peckham", "Stratford", "Walthamstow", "Ealing", "Mortlake", "Balham",
+            "Tooting", "Southwark", "Bermondsey", "Whitechapel", "Kilburn", "Hampstead"));
+
+    private static final String[] FIRST_NAMES = {
+            "Olivia", "Oliver", "Amelia", "Jack", "Isla", "Harry", "Ava", "Jacob", "Emily", "Charlie", "Sophie",
+            "Thomas", "Grace", "George", "Lily", "Oscar", "Mia", "James", "Ella", "William", "Renata", "Peter",
+            "Camila", "Aiden", "Victoria", "Dylan", "Kristin", "Owen", "Joe", "Ruby"};
+
+    private static final String[] LAST_NAMES = {
+            "Smith", "Jones", "Taylor", "Brown", "Williams", "Wilson", "Johnson", "Davies", "Robinson", "Wright",
+            "Thompson", "Evans", "Walker", "White", "Roberts", "Green", "Hall", "Wood", "Jackson", "Clarke",
+            "Edwards", "Griffin", "Scott", "Sullivan", "Black", "Thomas", "James", "Hughes", "Lewis", "Harris"};
+
+    private static final String[] NAME_WORDS = {
+            "Crimson", "Golden", "Corner", "Village", "Royal", "Little", "Green", "Old", "New", "Blue", "Red", "Silver",
+            "Oak", "Rose", "King's", "Queen's", "Market", "River", "Park", "Station", "Bridge", "Garden", "Mill",
+            "Welcome", "Lucky", "Happy", "Urban", "Local", "Family", "Friendly"};
+
+    private static final String[] NAME_SUFFIXES = {
+            "House", "Store", "Shop", "Bar", "Kitchen", "Corner", "Place", "Stop", "Express", "& Co", "Emporium",
+            "Market", "Room", "Den", "Works"};
+
+    private static final String[] STREETS = {
+            "High Street", "Kings Road", "Fulham Road", "Upper Richmond Road", "Green Lane", "Station Road",
+            "Church Street", "Park Road", "London Road", "Victoria Road", "Mill Lane", "Queens Road", "New Road",
+            "Burnley Road", "Strutton Ground", "Market Street", "Bridge Street", "Albert Road", "York Road",
+            "Chapel Street"};
+
+    private static final int MIN_YEAR = 1950;
+    private static final int MAX_YEAR = 2013;
+
+    private final Random random;
+    private final int count;
+    private final double[] categoryWeights = zipfWeights(CATEGORIES.size());
+    private final double[] areaWeights = zipfWeights(AREAS.size());
+    private final double[] ownerWeights = zipfWeights(FIRST_NAMES.length);
+    private int generated;
+
+    public ShopGenerator(int count) {
+        this(count, DEFAULT_SEED);
+    }
+
+    public ShopGenerator(int count, long seed) {
+        if (count < 0)
+            throw new IllegalArgumentException("count must not be negative: " + count);
+
+        this.count = count;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @return shop categories in descending order of frequency
+     */
+    public static List<String> getCategories() {
+        return CATEGORIES;
+    }
+
+    /**
+     * @return areas in descending order of frequency
+     */
+    public static List<String> getAreas() {
+        return AREAS;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return generated < count;
+    }
+
+    @Override
+    public ObjectNode next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        generated++;
+        return createShop(generated);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private ObjectNode createShop(int id) {
+        ObjectNode shop = JsonNodeFactory.instance.objectNode();
+        String area = AREAS.get(pick(areaWeights));
+
+        shop.put("id", id);
+        shop.put("name", NAME_WORDS[random.nextInt(NAME_WORDS.length)] + " "
+                + NAME_SUFFIXES[random.nextInt(NAME_SUFFIXES.length)]);
+
+        ArrayNode owners = shop.putArray("owners");
+        int ownerCount = random.nextInt(10) < 7 ? 1 : 2 + random.nextInt(2);
+        for (int i = 0; i < ownerCount; i++)
+            owners.add(FIRST_NAMES[pick(ownerWeights)] + " " + LAST_NAMES[pick(ownerWeights)]);
+
+        shop.put("shop_category", CATEGORIES.get(pick(categoryWeights)));
+        shop.put("area", area);
+        shop.put("address", (1 + random.nextInt(600)) + ", " + STREETS[random.nextInt(STREETS.length)] + ", " + area
+                + ", London, " + postcode());
+        shop.put("code", code());
+        shop.put("founded", founded());
+
+        return shop;
+    }
+
+    /**
+     * Codes look like the real ones: plain numbers ("1230934821") or slash separated references
+     * ("6Wab5/8c/2013"), about a third of them starting with "6".
+     */
+    private String code() {
+        if (random.nextInt(4) == 0)
+            return String.valueOf(1000000 + random.nextInt(2000000000));
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(random.nextInt(3) == 0 ? 6 : 1 + random.nextInt(9));
+        appendAlphanumeric(sb, 1 + random.nextInt(4));
+        sb.append('/');
+        appendAlphanumeric(sb, 1 + random.nextInt(3));
+        sb.append('/').append(MIN_YEAR + random.nextInt(MAX_YEAR - MIN_YEAR + 1));
+        return sb.toString();
+    }
+
+    private void appendAlphanumeric(StringBuilder sb, int length) {
+        for (int i = 0; i < length; i++) {
+            int c = random.nextInt(36);
+            if (c < 10)
+                sb.append((char) ('0' + c));
+            else
+                sb.append((char) ((random.nextBoolean() ? 'a' : 'A') + c - 10));
+        }
+    }
+
+    private String postcode() {
+        return "SW" + (1 + random.nextInt(20)) + " " + random.nextInt(10) + (char) ('A' + random.nextInt(26))
+                + (char) ('A' + random.nextInt(26));
+    }
+
+    /**
+     * Founding years are exponentially distributed back from {@link #MAX_YEAR} with a mean age of 15 years, so
+     * recent decades are much more populated than the fifties.
+     */
+    private String founded() {
+        int age = (int) (-15 * Math.log(1 - random.nextDouble()));
+        int year = Math.max(MIN_YEAR, MAX_YEAR - age);
+        return String.format("%02d-%02d-%d", 1 + random.nextInt(28), 1 + random.nextInt(12), year);
+    }
+
+    private int pick(double[] cumulativeWeights) {
+        int i = Arrays.binarySearch(cumulativeWeights, random.nextDouble());
+        return i >= 0 ? i : Math.min(-i - 1, cumulativeWeights.length - 1);
+    }
+
+    /**
+     * @return cumulative distribution of Zipf weights 1/k, normalized to 1
+     */
+    private static double[] zipfWeights(int size) {
+        double[] weights = new double[size];
+        double sum = 0;
+        for (int k = 0; k < size; k++) {
+            sum += 1.0 / (k + 1);
+            weights[k] = sum;
+        }
+        for (int k = 0; k < size; k++)
+            weights[k] /= sum;
+
+        return weights;
+    }
+
+    /**
+     * Writes the remaining shops as a JSON array, readable by {@link ShopStreamReader}. The stream is not closed.
+     */
+    public void writeJson(OutputStream out) throws IOException {
+        JsonGenerator generator = new ObjectMapper().getJsonFactory().createJsonGenerator(out, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.writeStartArray();
+        while (hasNext())
+            generator.writeTree(next());
+        generator.writeEndArray();
+        generator.close();
+    }
+
+    /**
+     * Writes a JSON file of synthetic shops.
+     *
+     * @param args number of shops, output file and an optional seed
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: ShopGenerator <count> <file> [seed]");
+            System.exit(1);
+        }
+
+        int count = Integer.parseInt(args[0]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(args[1])))) {
+            new ShopGenerator(count, seed).writeJson(out);
+        }
+    }
+}
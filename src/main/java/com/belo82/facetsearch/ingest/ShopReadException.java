@@ -0,0 +1,23 @@
+package com.belo82.facetsearch.ingest;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link ShopStreamReader#next()} when the next shop cannot be read, e.g. from malformed or truncated
+ * input. {@link java.util.Iterator#next()} cannot throw the {@link IOException} itself, callers which read the stream
+ * should unwrap it, see {@link #getCause()}.
+ *
+ * @author Peter Belko
+ */
+public class ShopReadException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ShopReadException(IOException cause) {
+        super("cannot read next shop.", cause);
+    }
+
+    @Override
+    public IOException getCause() {
+        return (IOException) super.getCause();
+    }
+}
@@ -0,0 +1,80 @@
+package com.belo82.facetsearch.ingest;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a JSON array of shops with the Jackson streaming {@link JsonParser} and returns them one by one.<br/>
+ * <br/>
+ * Only the shop currently returned by {@link #next()} is held in memory, the rest of the input is not read yet.
+ * The underlying stream is not closed by {@link #close()}, it is owned by the caller. Input which cannot be read is
+ * reported by {@link #next()} as {@link ShopReadException}.
+ *
+ * @author Peter Belko
+ */
+public class ShopStreamReader implements Iterator<JsonNode>, Closeable {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final JsonParser parser;
+    private JsonNode next;
+
+    public ShopStreamReader(InputStream in) throws IOException {
+        parser = mapper.getJsonFactory().createJsonParser(in);
+        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+        if (parser.nextToken() != JsonToken.START_ARRAY)
+            throw new IOException("expected JSON array of shops, got: " + parser.getCurrentToken());
+
+        advance();
+    }
+
+    private void advance() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_OBJECT)
+            next = mapper.readTree(parser);
+        else if (token == JsonToken.END_ARRAY || token == null)
+            next = null;
+        else
+            throw new IOException("expected JSON object of a shop, got: " + token + " at " + parser.getCurrentLocation());
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    /**
+     * @throws ShopReadException if the shop after the returned one cannot be read
+     */
+    @Override
+    public JsonNode next() {
+        if (next == null)
+            throw new NoSuchElementException();
+
+        JsonNode result = next;
+        try {
+            advance();
+        } catch (IOException e) {
+            throw new ShopReadException(e);
+        }
+        return result;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
@@ -0,0 +1,403 @@
+package com.belo82.facetsearch.load;
+
+import com.belo82.facetsearch.Indexer;
+import com.belo82.facetsearch.IndexerConfig;
+import com.belo82.facetsearch.ingest.ChangeSet;
+import com.belo82.facetsearch.ingest.IngestStats;
+import com.belo82.facetsearch.ingest.ShopGenerator;
+import com.belo82.facetsearch.ingest.ShopStreamReader;
+import com.belo82.facetsearch.metrics.LatencyHistogram;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop load test of an {@link Indexer}: a number of client threads send a weighted mix of queries while an
+ * optional background thread upserts shops at a fixed rate, then a JSON report with latency percentiles,
+ * throughput and GC activity is produced.<br/>
+ * <br/>
+ * Every client waits for its query to return before it sends the next one. With a target QPS each client follows a
+ * fixed schedule and latency is measured from the time the query was due, not from the time it was actually sent,
+ * so a stall which delays the following queries shows up in the percentiles instead of being hidden (coordinated
+ * omission). The pure time spent in the {@link Indexer} is reported separately as service time. Only queries which
+ * start after the warm-up are recorded.
+ *
+ * @author Peter Belko
+ */
+public class LoadTest {
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+    private static final long INDEXING_TICK_MILLIS = 100;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final LoadTestConfig config;
+    private final Map<QueryType, LatencyHistogram> latencies = new EnumMap<>(QueryType.class);
+    private final Map<QueryType, AtomicLong> errors = new EnumMap<>(QueryType.class);
+    private final LatencyHistogram serviceTimes = new LatencyHistogram();
+    private final LatencyHistogram indexingLatencies = new LatencyHistogram();
+    private final LatencyHistogram gcPauses = new LatencyHistogram();
+    private final AtomicLong indexedShops = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    private volatile long measureStartNanos;
+    private volatile long endNanos;
+
+    public LoadTest(LoadTestConfig config) {
+        this.config = config;
+        for (QueryType type : QueryType.values()) {
+            latencies.put(type, new LatencyHistogram());
+            errors.put(type, new AtomicLong());
+        }
+    }
+
+    /**
+     * Indexes the data, runs the clients for the warm-up and the configured duration and closes the index.
+     *
+     * @return the report, see {@link #writeReport(ObjectNode)}
+     */
+    public ObjectNode run() throws IOException, InterruptedException {
+        try (Indexer indexer = new Indexer(new IndexerConfig().setSearchThreads(config.getSearchThreads())
+                .setMaxParallelQueries(config.getMaxParallelQueries()))) {
+            IngestStats ingest = index(indexer);
+            logger.info("indexed: {}", ingest);
+            QuerySamples samples = new QuerySamples(sampleShops(), ShopGenerator.DEFAULT_SEED);
+
+            Map<String, long[]> gcBefore = gcCounters();
+            NotificationListener gcListener = registerGcListener();
+
+            long startNanos = System.nanoTime();
+            measureStartNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(config.getWarmupMillis());
+            endNanos = measureStartNanos + TimeUnit.MILLISECONDS.toNanos(config.getDurationMillis());
+
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < config.getClients(); i++)
+                threads.add(start("load-client-" + i, client(indexer, samples, i)));
+            if (config.getIndexingRate() > 0)
+                threads.add(start("load-indexer", backgroundIndexer(indexer, indexer.numDocs())));
+
+            for (Thread thread : threads)
+                thread.join();
+
+            long measuredNanos = Math.min(System.nanoTime(), endNanos) - measureStartNanos;
+            unregisterGcListener(gcListener);
+
+            return report(ingest, measuredNanos, gcBefore, gcCounters(), indexer.numDocs());
+        }
+    }
+
+    private IngestStats index(Indexer indexer) throws IOException {
+        if (config.getData() == null)
+            return indexer.createIndex(new ShopGenerator(config.getShops()));
+
+        return indexer.createIndex(config.getData());
+    }
+
+    private List<JsonNode> sampleShops() throws IOException {
+        List<JsonNode> shops = new ArrayList<>(QuerySamples.SIZE);
+        if (config.getData() == null) {
+            for (ShopGenerator generator = new ShopGenerator(Math.min(config.getShops(), QuerySamples.SIZE));
+                 generator.hasNext();)
+                shops.add(generator.next());
+        } else {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(config.getData()));
+                 ShopStreamReader reader = new ShopStreamReader(in)) {
+                while (reader.hasNext() && shops.size() < QuerySamples.SIZE)
+                    shops.add(reader.next());
+            }
+        }
+
+        if (shops.isEmpty())
+            throw new IllegalStateException("no shops to sample queries from");
+
+        return shops;
+    }
+
+    private static Thread start(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private Runnable client(final Indexer indexer, final QuerySamples samples, final int client) {
+        final QueryType[] types = weightedTypes();
+
+        return new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(ShopGenerator.DEFAULT_SEED + client);
+                long intervalNanos = config.getTargetQps() > 0
+                        ? TimeUnit.SECONDS.toNanos(1) * config.getClients() / config.getTargetQps() : 0;
+                // spread the clients over the first interval, so they do not fire in lock-step
+                long dueNanos = System.nanoTime() + intervalNanos * client / config.getClients();
+                int query = random.nextInt(QuerySamples.SIZE);
+
+                while (true) {
+                    if (intervalNanos > 0) {
+                        sleepUntil(dueNanos);
+                    } else {
+                        dueNanos = System.nanoTime();
+                    }
+                    // an overloaded client is behind its schedule, the backlog is not sent after the end
+                    if (dueNanos >= endNanos || System.nanoTime() >= endNanos)
+                        return;
+
+                    QueryType type = types[random.nextInt(types.length)];
+                    long sentNanos = System.nanoTime();
+                    try {
+                        hits.addAndGet(type.execute(indexer, samples, query++));
+                    } catch (Exception e) {
+                        errors.get(type).incrementAndGet();
+                        logger.debug("query failed: " + type, e);
+                    }
+                    long doneNanos = System.nanoTime();
+
+                    if (dueNanos >= measureStartNanos && doneNanos <= endNanos) {
+                        latencies.get(type).recordNanos(doneNanos - dueNanos);
+                        serviceTimes.recordNanos(doneNanos - sentNanos);
+                    }
+                    dueNanos += intervalNanos;
+                }
+            }
+        };
+    }
+
+    /**
+     * @return query types repeated by their weight, so a uniform pick follows the mix
+     */
+    private QueryType[] weightedTypes() {
+        List<QueryType> types = new ArrayList<>();
+        for (Map.Entry<QueryType, Integer> entry : config.getMix().entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++)
+                types.add(entry.getKey());
+        }
+
+        return types.toArray(new QueryType[types.size()]);
+    }
+
+    /**
+     * Upserts generated shops over the existing ids every {@link #INDEXING_TICK_MILLIS} as one {@link ChangeSet},
+     * as many as are due by the configured rate, so each tick costs one refresh.
+     */
+    private Runnable backgroundIndexer(final Indexer indexer, final int existingShops) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(ShopGenerator.DEFAULT_SEED - 1);
+                ShopGenerator generator = new ShopGenerator(Integer.MAX_VALUE, ShopGenerator.DEFAULT_SEED + 1);
+                long startNanos = System.nanoTime();
+                long tickNanos = TimeUnit.MILLISECONDS.toNanos(INDEXING_TICK_MILLIS);
+                long upserted = 0;
+
+                for (long dueNanos = startNanos + tickNanos; dueNanos < endNanos; dueNanos += tickNanos) {
+                    sleepUntil(dueNanos);
+                    if (System.nanoTime() >= endNanos)
+                        return;
+
+                    long due = (dueNanos - startNanos) * config.getIndexingRate() / TimeUnit.SECONDS.toNanos(1);
+                    ChangeSet changes = new ChangeSet();
+                    for (; upserted < due; upserted++) {
+                        ObjectNode shop = generator.next();
+                        shop.put(Indexer.ID, 1 + random.nextInt(Math.max(1, existingShops)));
+                        changes.upsert(shop);
+                    }
+                    if (changes.size() == 0)
+                        continue;
+
+                    long sentNanos = System.nanoTime();
+                    try {
+                        indexer.apply(changes);
+                    } catch (Exception e) {
+                        logger.error("background indexing failed", e);
+                        return;
+                    }
+                    if (sentNanos >= measureStartNanos) {
+                        indexingLatencies.recordNanos(System.nanoTime() - sentNanos);
+                        indexedShops.addAndGet(changes.size());
+                    }
+                }
+            }
+        };
+    }
+
+    private static void sleepUntil(long nanos) {
+        long remaining;
+        while ((remaining = nanos - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static Map<String, long[]> gcCounters() {
+        Map<String, long[]> counters = new HashMap<>();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            counters.put(gc.getName(), new long[]{gc.getCollectionCount(), gc.getCollectionTime()});
+
+        return counters;
+    }
+
+    /**
+     * Records the duration of every stop-the-world collection during the measured window. Concurrent cycles are
+     * skipped, their duration is not a pause.
+     */
+    private NotificationListener registerGcListener() {
+        NotificationListener listener = new NotificationListener() {
+            @Override
+            public void handleNotification(Notification notification, Object handback) {
+                if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType()))
+                    return;
+
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                if (!info.getGcName().contains("Concurrent") && System.nanoTime() >= measureStartNanos)
+                    gcPauses.record(TimeUnit.MILLISECONDS.toMicros(info.getGcInfo().getDuration()));
+            }
+        };
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter)
+                ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+        }
+
+        return listener;
+    }
+
+    private static void unregisterGcListener(NotificationListener listener) {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            try {
+                if (gc instanceof NotificationEmitter)
+                    ((NotificationEmitter) gc).removeNotificationListener(listener);
+            } catch (javax.management.ListenerNotFoundException e) {
+                logger.debug("GC listener was not registered on " + gc.getName(), e);
+            }
+        }
+    }
+
+    private ObjectNode report(IngestStats ingest, long measuredNanos, Map<String, long[]> gcBefore,
+                              Map<String, long[]> gcAfter, int numDocs) {
+        double seconds = measuredNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        ObjectNode report = JsonNodeFactory.instance.objectNode();
+
+        ObjectNode settings = report.putObject("config");
+        settings.put("clients", config.getClients());
+        settings.put("targetQps", config.getTargetQps());
+        settings.put("durationMillis", config.getDurationMillis());
+        settings.put("warmupMillis", config.getWarmupMillis());
+        if (config.getData() == null)
+            settings.put("shops", config.getShops());
+        else
+            settings.put("data", config.getData().getPath());
+        settings.put("indexingRate", config.getIndexingRate());
+        settings.put("searchThreads", config.getSearchThreads());
+        settings.put("maxParallelQueries", config.getMaxParallelQueries());
+        ObjectNode mix = settings.putObject("mix");
+        for (Map.Entry<QueryType, Integer> entry : config.getMix().entrySet())
+            mix.put(entry.getKey().name().toLowerCase(), entry.getValue());
+
+        ObjectNode index = report.putObject("index");
+        index.put("documents", numDocs);
+        index.put("ingestMillis", ingest.getElapsedMillis());
+        index.put("ingestDocumentsPerSecond", ingest.getDocumentsPerSecond());
+
+        LatencyHistogram all = new LatencyHistogram();
+        long allErrors = 0;
+        ObjectNode queryTypes = report.putObject("queryTypes");
+        for (QueryType type : config.getMix().keySet()) {
+            LatencyHistogram latency = latencies.get(type);
+            all.add(latency);
+            allErrors += errors.get(type).get();
+
+            ObjectNode node = queryTypes.putObject(type.name().toLowerCase());
+            node.put("queries", latency.getCount());
+            node.put("errors", errors.get(type).get());
+            node.put("throughput", latency.getCount() / seconds);
+            node.put("latencyMicros", toJson(latency));
+        }
+
+        report.put("measuredMillis", TimeUnit.NANOSECONDS.toMillis(measuredNanos));
+        report.put("queries", all.getCount());
+        report.put("errors", allErrors);
+        report.put("hits", hits.get());
+        report.put("throughput", all.getCount() / seconds);
+        report.put("latencyMicros", toJson(all));
+        report.put("serviceTimeMicros", toJson(serviceTimes));
+
+        ObjectNode indexing = report.putObject("backgroundIndexing");
+        indexing.put("shops", indexedShops.get());
+        indexing.put("shopsPerSecond", indexedShops.get() / seconds);
+        indexing.put("batchLatencyMicros", toJson(indexingLatencies));
+
+        ObjectNode gc = report.putObject("gc");
+        long collections = 0;
+        long timeMillis = 0;
+        ObjectNode collectors = gc.putObject("collectors");
+        for (Map.Entry<String, long[]> entry : gcAfter.entrySet()) {
+            long[] before = gcBefore.containsKey(entry.getKey()) ? gcBefore.get(entry.getKey()) : new long[2];
+            ObjectNode collector = collectors.putObject(entry.getKey());
+            collector.put("collections", entry.getValue()[0] - before[0]);
+            collector.put("timeMillis", entry.getValue()[1] - before[1]);
+            collections += entry.getValue()[0] - before[0];
+            timeMillis += entry.getValue()[1] - before[1];
+        }
+        gc.put("collections", collections);
+        gc.put("timeMillis", timeMillis);
+        gc.put("pauseMicros", toJson(gcPauses));
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        gc.put("heapUsedBytes", heap.getUsed());
+        gc.put("heapMaxBytes", heap.getMax());
+
+        return report;
+    }
+
+    private static ObjectNode toJson(LatencyHistogram histogram) {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("count", histogram.getCount());
+        node.put("mean", histogram.getMean());
+        for (double percentile : PERCENTILES)
+            node.put("p" + String.valueOf(percentile).replace(".0", "").replace(".", ""),
+                    histogram.getValueAtPercentile(percentile));
+        node.put("max", histogram.getMax());
+        return node;
+    }
+
+    /**
+     * Writes the report as pretty printed JSON to {@link LoadTestConfig#getReport()} or to standard output.
+     */
+    public void writeReport(ObjectNode report) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        if (config.getReport() == null) {
+            System.out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        } else {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(config.getReport(), report);
+            logger.info("report written to {}", config.getReport());
+        }
+    }
+}
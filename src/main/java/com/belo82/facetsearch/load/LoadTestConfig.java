@@ -0,0 +1,264 @@
+package com.belo82.facetsearch.load;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Settings of a {@link LoadTest} run.<br/>
+ * <br/>
+ * Can be built with the fluent setters or parsed from command line options, see {@link #parse(String[])}.
+ *
+ * @author Peter Belko
+ */
+public class LoadTestConfig {
+    private int clients = 4;
+    private int targetQps = 0;
+    private long durationMillis = 30000;
+    private long warmupMillis = 5000;
+    private int shops = 100000;
+    private File data;
+    private int indexingRate = 0;
+    private int searchThreads = 0;
+    private int maxParallelQueries = 0;
+    private File report;
+    private final Map<QueryType, Integer> mix = new EnumMap<>(QueryType.class);
+
+    public LoadTestConfig() {
+        for (QueryType type : QueryType.values())
+            mix.put(type, 1);
+    }
+
+    /**
+     * Parses options of the form <code>--name=value</code>:
+     * <ul>
+     * <li><code>--clients=4</code> number of concurrent client threads</li>
+     * <li><code>--qps=0</code> target queries per second of all clients together, 0 for as fast as possible</li>
+     * <li><code>--duration=30</code> and <code>--warmup=5</code> in seconds</li>
+     * <li><code>--shops=100000</code> number of generated shops to index, ignored if <code>--data</code> is set</li>
+     * <li><code>--data=shops.json</code> JSON file of shops to index instead of generated ones</li>
+     * <li><code>--index-rate=0</code> shops upserted per second in the background while the clients query</li>
+     * <li><code>--search-threads=0</code> threads searching the segments of one query in parallel, 0 to disable</li>
+     * <li><code>--max-parallel=0</code> queries searched in parallel at a time, 0 for half the search threads</li>
+     * <li><code>--mix=prefix:4,range:2,facet_label:1,search:3</code> relative weights of the query types</li>
+     * <li><code>--report=report.json</code> where the JSON report is written, standard output if not set</li>
+     * </ul>
+     *
+     * @throws IllegalArgumentException for an unknown option or invalid value
+     */
+    public static LoadTestConfig parse(String[] args) {
+        LoadTestConfig config = new LoadTestConfig();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0)
+                throw new IllegalArgumentException("expected --name=value, got: " + arg);
+
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (name) {
+                case "clients":
+                    config.setClients(Integer.parseInt(value));
+                    break;
+                case "qps":
+                    config.setTargetQps(Integer.parseInt(value));
+                    break;
+                case "duration":
+                    config.setDurationMillis(Long.parseLong(value) * 1000);
+                    break;
+                case "warmup":
+                    config.setWarmupMillis(Long.parseLong(value) * 1000);
+                    break;
+                case "shops":
+                    config.setShops(Integer.parseInt(value));
+                    break;
+                case "data":
+                    config.setData(new File(value));
+                    break;
+                case "index-rate":
+                    config.setIndexingRate(Integer.parseInt(value));
+                    break;
+                case "search-threads":
+                    config.setSearchThreads(Integer.parseInt(value));
+                    break;
+                case "max-parallel":
+                    config.setMaxParallelQueries(Integer.parseInt(value));
+                    break;
+                case "mix":
+                    config.setMix(value);
+                    break;
+                case "report":
+                    config.setReport(new File(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option: " + arg);
+            }
+        }
+
+        return config;
+    }
+
+    public int getClients() {
+        return clients;
+    }
+
+    public LoadTestConfig setClients(int clients) {
+        if (clients < 1)
+            throw new IllegalArgumentException("clients must be >= 1, got: " + clients);
+
+        this.clients = clients;
+        return this;
+    }
+
+    public int getTargetQps() {
+        return targetQps;
+    }
+
+    /**
+     * @param targetQps queries per second of all clients together, 0 means every client sends its next query as
+     *                  soon as the previous one returned
+     */
+    public LoadTestConfig setTargetQps(int targetQps) {
+        if (targetQps < 0)
+            throw new IllegalArgumentException("targetQps must be >= 0, got: " + targetQps);
+
+        this.targetQps = targetQps;
+        return this;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public LoadTestConfig setDurationMillis(long durationMillis) {
+        if (durationMillis <= 0)
+            throw new IllegalArgumentException("durationMillis must be > 0, got: " + durationMillis);
+
+        this.durationMillis = durationMillis;
+        return this;
+    }
+
+    public long getWarmupMillis() {
+        return warmupMillis;
+    }
+
+    /**
+     * @param warmupMillis how long the clients run before latencies are recorded
+     */
+    public LoadTestConfig setWarmupMillis(long warmupMillis) {
+        if (warmupMillis < 0)
+            throw new IllegalArgumentException("warmupMillis must be >= 0, got: " + warmupMillis);
+
+        this.warmupMillis = warmupMillis;
+        return this;
+    }
+
+    public int getShops() {
+        return shops;
+    }
+
+    public LoadTestConfig setShops(int shops) {
+        if (shops < 1)
+            throw new IllegalArgumentException("shops must be >= 1, got: " + shops);
+
+        this.shops = shops;
+        return this;
+    }
+
+    public File getData() {
+        return data;
+    }
+
+    public LoadTestConfig setData(File data) {
+        this.data = data;
+        return this;
+    }
+
+    public int getIndexingRate() {
+        return indexingRate;
+    }
+
+    /**
+     * @param indexingRate shops per second upserted in the background during the run, 0 to disable
+     */
+    public LoadTestConfig setIndexingRate(int indexingRate) {
+        if (indexingRate < 0)
+            throw new IllegalArgumentException("indexingRate must be >= 0, got: " + indexingRate);
+
+        this.indexingRate = indexingRate;
+        return this;
+    }
+
+    public int getSearchThreads() {
+        return searchThreads;
+    }
+
+    /**
+     * @see com.belo82.facetsearch.IndexerConfig#setSearchThreads(int)
+     */
+    public LoadTestConfig setSearchThreads(int searchThreads) {
+        if (searchThreads < 0)
+            throw new IllegalArgumentException("searchThreads must be >= 0, got: " + searchThreads);
+
+        this.searchThreads = searchThreads;
+        return this;
+    }
+
+    public int getMaxParallelQueries() {
+        return maxParallelQueries;
+    }
+
+    /**
+     * @see com.belo82.facetsearch.IndexerConfig#setMaxParallelQueries(int)
+     */
+    public LoadTestConfig setMaxParallelQueries(int maxParallelQueries) {
+        if (maxParallelQueries < 0)
+            throw new IllegalArgumentException("maxParallelQueries must be >= 0, got: " + maxParallelQueries);
+
+        this.maxParallelQueries = maxParallelQueries;
+        return this;
+    }
+
+    public Map<QueryType, Integer> getMix() {
+        return Collections.unmodifiableMap(mix);
+    }
+
+    /**
+     * @param mix comma separated <code>type:weight</code> pairs, e.g. <code>prefix:4,search:1</code>, types which
+     *            are not listed are not sent
+     */
+    public LoadTestConfig setMix(String mix) {
+        Map<QueryType, Integer> parsed = new EnumMap<>(QueryType.class);
+        for (String entry : mix.split(",")) {
+            String[] pair = entry.trim().split(":");
+            int weight = pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1;
+            if (weight < 0)
+                throw new IllegalArgumentException("weight must be >= 0, got: " + entry);
+
+            parsed.put(QueryType.valueOf(pair[0].trim().toUpperCase()), weight);
+        }
+
+        return setMix(parsed);
+    }
+
+    public LoadTestConfig setMix(Map<QueryType, Integer> mix) {
+        int total = 0;
+        for (int weight : mix.values())
+            total += weight;
+        if (total <= 0)
+            throw new IllegalArgumentException("mix must contain at least one query type with a positive weight");
+
+        this.mix.clear();
+        this.mix.putAll(mix);
+        return this;
+    }
+
+    public File getReport() {
+        return report;
+    }
+
+    public LoadTestConfig setReport(File report) {
+        this.report = report;
+        return this;
+    }
+}
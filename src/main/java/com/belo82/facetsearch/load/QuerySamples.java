@@ -0,0 +1,63 @@
+package com.belo82.facetsearch.load;
+
+import com.belo82.facetsearch.Indexer;
+import org.codehaus.jackson.JsonNode;
+
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Fixed pool of query arguments sampled from the indexed shops, so the load is spread over many terms instead of
+ * a single hot one. Immutable after construction and shared by all clients.
+ *
+ * @author Peter Belko
+ */
+class QuerySamples {
+    static final int SIZE = 1024;
+
+    private final String[] addresses = new String[SIZE];
+    private final String[] codePrefixes = new String[SIZE];
+    private final String[][] ranges = new String[SIZE][];
+    private final String[] queries = new String[SIZE];
+
+    /**
+     * @param shops the first shops of the index, at least one, repeated if there are fewer than {@link #SIZE}
+     */
+    QuerySamples(Iterable<? extends JsonNode> shops, long seed) {
+        Random random = new Random(seed);
+        Iterator<? extends JsonNode> it = shops.iterator();
+        for (int i = 0; i < SIZE; i++) {
+            if (!it.hasNext())
+                it = shops.iterator();
+            JsonNode shop = it.next();
+
+            addresses[i] = shop.get(Indexer.ADDRESS).getTextValue();
+            String code = shop.get(Indexer.CODE).getTextValue();
+            codePrefixes[i] = code.substring(0, Math.min(code.length(), 1 + random.nextInt(3)));
+
+            int from = 1950 + random.nextInt(60);
+            ranges[i] = new String[]{"01-01-" + from, "31-12-" + (from + random.nextInt(5))};
+
+            String field = random.nextBoolean() ? Indexer.AREA : Indexer.NAME;
+            String[] words = shop.get(field).getTextValue().split(" ");
+            String word = words[random.nextInt(words.length)].toLowerCase().replaceAll("[^\\p{L}\\p{N}]", "");
+            queries[i] = word.isEmpty() ? Indexer.AREA + ": fulham" : field + ": " + word;
+        }
+    }
+
+    String address(int i) {
+        return addresses[i & (SIZE - 1)];
+    }
+
+    String codePrefix(int i) {
+        return codePrefixes[i & (SIZE - 1)];
+    }
+
+    String[] range(int i) {
+        return ranges[i & (SIZE - 1)];
+    }
+
+    String query(int i) {
+        return queries[i & (SIZE - 1)];
+    }
+}
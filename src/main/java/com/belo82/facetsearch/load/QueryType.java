@@ -0,0 +1,45 @@
+package com.belo82.facetsearch.load;
+
+import com.belo82.facetsearch.Indexer;
+import org.apache.lucene.queryparser.classic.ParseException;
+
+import java.io.IOException;
+
+/**
+ * Kinds of queries a {@link LoadTest} client sends, each one calls a single {@link Indexer} search method with the
+ * next query from {@link QuerySamples}.
+ *
+ * @author Peter Belko
+ */
+public enum QueryType {
+    FACET_LABEL {
+        @Override
+        int execute(Indexer indexer, QuerySamples samples, int i) throws IOException, ParseException {
+            return indexer.doFacetLabelSearch(samples.address(i)).size();
+        }
+    },
+    PREFIX {
+        @Override
+        int execute(Indexer indexer, QuerySamples samples, int i) throws IOException, ParseException {
+            return indexer.doPrefixSearch(samples.codePrefix(i)).size();
+        }
+    },
+    RANGE {
+        @Override
+        int execute(Indexer indexer, QuerySamples samples, int i) throws IOException {
+            String[] range = samples.range(i);
+            return indexer.doRangeSearch(range[0], range[1]).size();
+        }
+    },
+    SEARCH {
+        @Override
+        int execute(Indexer indexer, QuerySamples samples, int i) throws IOException, ParseException {
+            return indexer.doSearch(samples.query(i)).size();
+        }
+    };
+
+    /**
+     * @return number of returned hits
+     */
+    abstract int execute(Indexer indexer, QuerySamples samples, int i) throws IOException, ParseException;
+}
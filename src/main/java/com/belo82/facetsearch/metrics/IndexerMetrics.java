@@ -0,0 +1,133 @@
+package com.belo82.facetsearch.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-operation counters and latency histograms of an {@link com.belo82.facetsearch.Indexer}, exposed over JMX,
+ * plus the slow query log.<br/>
+ * <br/>
+ * When instrumentation is on, every operation gets an {@link OperationStats} which is registered as an MXBean the
+ * first time the operation is called. Calls slower than the slow query threshold are logged at WARN level to the
+ * <code>com.belo82.facetsearch.slowlog</code> logger with the query, the number of hits and the phase breakdown.
+ * When both are off {@link #start(String, Object)} returns {@link QueryTimer#NOOP} and no clock is read at all.
+ *
+ * @author Peter Belko
+ */
+public class IndexerMetrics implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(IndexerMetrics.class);
+    private static final Logger slowLog = LoggerFactory.getLogger("com.belo82.facetsearch.slowlog");
+
+    private final boolean instrumentation;
+    private final long slowQueryNanos;
+    private final String name;
+    private final ConcurrentMap<String, OperationStats> operations = new ConcurrentHashMap<>();
+    private final Map<String, ObjectName> registered = new ConcurrentHashMap<>();
+
+    /**
+     * @param instrumentation whether operation stats are collected and registered over JMX
+     * @param slowQueryMillis calls taking at least this long are logged, 0 to disable the slow query log
+     * @param name            distinguishes the MBeans of several indexers in one JVM
+     */
+    public IndexerMetrics(boolean instrumentation, long slowQueryMillis, String name) {
+        this.instrumentation = instrumentation;
+        this.slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryMillis);
+        this.name = name;
+    }
+
+    /**
+     * @param operation name of the called method, e.g. <code>doSearch</code>
+     * @param query     logged by the slow query log, its <code>toString()</code> is called only for slow calls
+     */
+    public QueryTimer start(String operation, Object query) {
+        if (!instrumentation && slowQueryNanos == 0)
+            return QueryTimer.NOOP;
+
+        return new QueryTimer(this, operation, query);
+    }
+
+    void record(QueryTimer timer, long tookNanos) {
+        boolean slow = slowQueryNanos > 0 && tookNanos >= slowQueryNanos;
+        if (instrumentation)
+            stats(timer.getOperation()).record(timer, tookNanos, slow);
+
+        if (slow) {
+            slowLog.warn("{} took {} ms, hits={}, failed={}, query=[{}], phases: {}", timer.getOperation(),
+                    TimeUnit.NANOSECONDS.toMillis(tookNanos), timer.getHits(), timer.isFailed(), timer.getQuery(),
+                    timer.phasesToString());
+        }
+    }
+
+    private OperationStats stats(String operation) {
+        OperationStats stats = operations.get(operation);
+        if (stats != null)
+            return stats;
+
+        OperationStats created = new OperationStats(operation);
+        stats = operations.putIfAbsent(operation, created);
+        if (stats != null)
+            return stats;
+
+        register(created);
+        return created;
+    }
+
+    private void register(OperationStats stats) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName("com.belo82.facetsearch:type=Indexer,name=" + name
+                    + ",operation=" + stats.getOperation());
+            server.registerMBean(stats, objectName);
+            registered.put(stats.getOperation(), objectName);
+        } catch (JMException e) {
+            // stats are still collected, they are just not visible over JMX
+            logger.warn("cannot register MBean of " + stats.getOperation() + " for " + name, e);
+        }
+    }
+
+    /**
+     * @return stats of the operation, <code>null</code> if it has not been called yet or instrumentation is off
+     */
+    public OperationStats getStats(String operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * @return stats of all operations called so far, sorted by operation name
+     */
+    public Map<String, OperationStats> getOperations() {
+        return Collections.unmodifiableMap(new TreeMap<>(operations));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Unregisters all MBeans.
+     */
+    @Override
+    public void close() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : registered.values()) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException e) {
+                logger.debug("cannot unregister MBean " + objectName, e);
+            }
+        }
+        registered.clear();
+    }
+}
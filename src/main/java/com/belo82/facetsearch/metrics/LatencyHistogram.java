@@ -0,0 +1,147 @@
+package com.belo82.facetsearch.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets.<br/>
+ * <br/>
+ * Values are recorded in microseconds. Values below {@value #SUB_BUCKETS} are counted exactly, larger values fall
+ * into buckets of 64 linear steps per power of two, so every percentile is reported with a relative error below
+ * 1.6%, from 1us up to hours, in a fixed array of about 3.5k counters. Recording is a single atomic increment and
+ * may be called from any number of threads, percentiles read a consistent-enough view while recording goes on.
+ *
+ * @author Peter Belko
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 128;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int MAX_SHIFT = 52;
+    private static final long MAX_VALUE = (1L << (MAX_SHIFT + SUB_BUCKET_BITS + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS + MAX_SHIFT * HALF);
+
+    public void recordNanos(long nanos) {
+        record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * @param micros latency in microseconds, negative values are recorded as 0
+     */
+    public void record(long micros) {
+        counts.incrementAndGet(index(Math.min(Math.max(0, micros), MAX_VALUE)));
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >> shift) - HALF;
+    }
+
+    /**
+     * @return the highest value which falls into the bucket
+     */
+    private static long highestValue(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long mantissa = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++)
+            count += counts.get(i);
+
+        return count;
+    }
+
+    /**
+     * @param percentile e.g. 99.9
+     * @return the value in microseconds which <code>percentile</code> percent of the recorded values do not exceed,
+     * 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("percentile must be between 0 and 100, got: " + percentile);
+
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (long count : snapshot)
+            total += count;
+        if (total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return highestValue(i);
+        }
+
+        return getMax();
+    }
+
+    public long getMax() {
+        for (int i = counts.length() - 1; i >= 0; i--) {
+            if (counts.get(i) > 0)
+                return highestValue(i);
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return mean of the recorded values in microseconds, computed from the bucket midpoints
+     */
+    public double getMean() {
+        long total = 0;
+        double sum = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long count = counts.get(i);
+            if (count > 0) {
+                long low = i == 0 ? 0 : highestValue(i - 1) + 1;
+                total += count;
+                sum += count * (low + highestValue(i)) / 2.0;
+            }
+        }
+
+        return total == 0 ? 0 : sum / total;
+    }
+
+    /**
+     * Adds all values recorded by <code>other</code> to this histogram.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length(); i++) {
+            long count = other.counts.get(i);
+            if (count > 0)
+                counts.addAndGet(i, count);
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++)
+            counts.set(i, 0);
+    }
+
+    private long[] snapshot() {
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++)
+            snapshot[i] = counts.get(i);
+
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", p50=" + getValueAtPercentile(50) + "us, p99=" + getValueAtPercentile(99)
+                + "us, max=" + getMax() + "us";
+    }
+}
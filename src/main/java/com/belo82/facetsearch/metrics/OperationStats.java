@@ -0,0 +1,131 @@
+package com.belo82.facetsearch.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Call counters and latency histograms, in total and per {@link Phase}, of one
+ * {@link com.belo82.facetsearch.Indexer} method. Updated concurrently by all callers.
+ *
+ * @author Peter Belko
+ */
+public class OperationStats implements OperationStatsMXBean {
+    private final String operation;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong slowCount = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+
+    public OperationStats(String operation) {
+        this.operation = operation;
+        for (int i = 0; i < phases.length; i++)
+            phases[i] = new LatencyHistogram();
+    }
+
+    void record(QueryTimer timer, long tookNanos, boolean slow) {
+        count.incrementAndGet();
+        if (timer.isFailed())
+            errors.incrementAndGet();
+        if (slow)
+            slowCount.incrementAndGet();
+
+        latency.recordNanos(tookNanos);
+        for (Phase phase : Phase.values()) {
+            if (timer.isTimed(phase))
+                phases[phase.ordinal()].recordNanos(timer.getNanos(phase));
+        }
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public long getSlowCount() {
+        return slowCount.get();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latency.getMean();
+    }
+
+    @Override
+    public long getP50Micros() {
+        return latency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getP99Micros() {
+        return latency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getP999Micros() {
+        return latency.getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return latency.getMax();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public LatencyHistogram getLatency(Phase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    @Override
+    public Map<String, Double> getPhaseMeanMicros() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = phases[phase.ordinal()];
+            if (histogram.getCount() > 0)
+                result.put(phase.name().toLowerCase(), histogram.getMean());
+        }
+
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseP99Micros() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = phases[phase.ordinal()];
+            if (histogram.getCount() > 0)
+                result.put(phase.name().toLowerCase(), histogram.getValueAtPercentile(99));
+        }
+
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        count.set(0);
+        errors.set(0);
+        slowCount.set(0);
+        latency.reset();
+        for (LatencyHistogram phase : phases)
+            phase.reset();
+    }
+
+    @Override
+    public String toString() {
+        return operation + ": count=" + getCount() + ", errors=" + getErrors() + ", " + latency;
+    }
+}
@@ -0,0 +1,40 @@
+package com.belo82.facetsearch.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link OperationStats} of one {@link com.belo82.facetsearch.Indexer} method, registered as
+ * <code>com.belo82.facetsearch:type=Indexer,name=&lt;metrics name&gt;,operation=&lt;method&gt;</code>.
+ *
+ * @author Peter Belko
+ */
+public interface OperationStatsMXBean {
+
+    long getCount();
+
+    long getErrors();
+
+    long getSlowCount();
+
+    double getMeanMicros();
+
+    long getP50Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    long getMaxMicros();
+
+    /**
+     * @return mean time per call spent in each {@link Phase} the operation went through
+     */
+    Map<String, Double> getPhaseMeanMicros();
+
+    /**
+     * @return 99th percentile of each {@link Phase} the operation went through
+     */
+    Map<String, Long> getPhaseP99Micros();
+
+    void reset();
+}
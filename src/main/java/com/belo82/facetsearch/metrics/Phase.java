@@ -0,0 +1,27 @@
+package com.belo82.facetsearch.metrics;
+
+/**
+ * Phases an {@link com.belo82.facetsearch.Indexer} call is broken down into by a {@link QueryTimer}.
+ *
+ * @author Peter Belko
+ */
+public enum Phase {
+    /** query string parsed into a Lucene query */
+    PARSE,
+    /** searcher snapshot acquired from the manager */
+    ACQUIRE,
+    /** matching documents scored and collected, facet ordinals counted along the way */
+    COLLECT,
+    /** facet counts aggregated into facet results */
+    FACETS,
+    /** stored fields or DocValues of the hits loaded, or written to the output */
+    FETCH,
+    /** documents built from JSON */
+    BUILD,
+    /** documents added, updated or deleted in the index writer */
+    WRITE,
+    /** taxonomy and index committed */
+    COMMIT,
+    /** new searcher snapshot opened */
+    REFRESH
+}
@@ -0,0 +1,126 @@
+package com.belo82.facetsearch.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single {@link com.belo82.facetsearch.Indexer} call and the time spent in each of its {@link Phase}s.
+ * Obtained from {@link IndexerMetrics#start(String, Object)} and used by one thread only:
+ * <pre>
+ * try (QueryTimer timer = metrics.start("doSearch", query)) {
+ *     Query luceneQuery = parseQuery(query);
+ *     timer.split(Phase.PARSE);
+ *     ...
+ *     timer.succeeded(hits);
+ * }
+ * </pre>
+ * {@link #split(Phase)} charges the time since the previous split to the phase, a phase may be charged several
+ * times, e.g. once per batch. A call which never reached {@link #succeeded(long)} is recorded as an error.
+ * {@link #NOOP} is returned when instrumentation is off, all its methods return immediately.
+ *
+ * @author Peter Belko
+ */
+public class QueryTimer implements AutoCloseable {
+    public static final QueryTimer NOOP = new QueryTimer(null, null, null);
+
+    private final IndexerMetrics metrics;
+    private final String operation;
+    private final Object query;
+    private final long startNanos;
+    private final long[] phaseNanos;
+    private long lastNanos;
+    private long hits = -1;
+    private boolean succeeded;
+
+    QueryTimer(IndexerMetrics metrics, String operation, Object query) {
+        this.metrics = metrics;
+        this.operation = operation;
+        this.query = query;
+        if (metrics == null) {
+            startNanos = 0;
+            phaseNanos = null;
+        } else {
+            startNanos = System.nanoTime();
+            lastNanos = startNanos;
+            phaseNanos = new long[Phase.values().length];
+            for (int i = 0; i < phaseNanos.length; i++)
+                phaseNanos[i] = -1;
+        }
+    }
+
+    /**
+     * Charges the time since the start or the previous split to the phase.
+     */
+    public void split(Phase phase) {
+        if (metrics == null)
+            return;
+
+        long now = System.nanoTime();
+        int i = phase.ordinal();
+        phaseNanos[i] = Math.max(0, phaseNanos[i]) + now - lastNanos;
+        lastNanos = now;
+    }
+
+    /**
+     * Marks the call as successful, must be the last call before {@link #close()}.
+     *
+     * @param hits number of hits or indexed documents, reported in the slow query log
+     */
+    public void succeeded(long hits) {
+        this.hits = hits;
+        this.succeeded = true;
+    }
+
+    /**
+     * Records the call in the {@link IndexerMetrics} it was started by.
+     */
+    @Override
+    public void close() {
+        if (metrics != null)
+            metrics.record(this, System.nanoTime() - startNanos);
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public Object getQuery() {
+        return query;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    boolean isFailed() {
+        return !succeeded;
+    }
+
+    boolean isTimed(Phase phase) {
+        return phaseNanos[phase.ordinal()] >= 0;
+    }
+
+    long getNanos(Phase phase) {
+        return Math.max(0, phaseNanos[phase.ordinal()]);
+    }
+
+    /**
+     * @return e.g. <code>parse=0.12ms, acquire=0.01ms, collect=3.40ms</code>
+     */
+    public String phasesToString() {
+        if (metrics == null)
+            return "";
+
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            if (!isTimed(phase))
+                continue;
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(phase.name().toLowerCase()).append('=')
+                    .append(String.format("%.2f", getNanos(phase) / (double) TimeUnit.MILLISECONDS.toNanos(1)))
+                    .append("ms");
+        }
+
+        return sb.toString();
+    }
+}
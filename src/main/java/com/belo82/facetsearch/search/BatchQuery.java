@@ -0,0 +1,113 @@
+package com.belo82.facetsearch.search;
+
+import org.apache.lucene.search.Sort;
+
+/**
+ * One search of a batch, see {@link com.belo82.facetsearch.Indexer#doBatchSearch(java.util.List)}. Every type
+ * mirrors a single-search method of the indexer and returns the same hits.
+ *
+ * @author Peter Belko
+ */
+public final class BatchQuery {
+
+    public enum Type {
+        /** exact address, see {@link com.belo82.facetsearch.Indexer#doFacetLabelSearch(String, Projection)} */
+        LABEL,
+        /** code prefix, see {@link com.belo82.facetsearch.Indexer#doPrefixSearch(String, Projection)} */
+        PREFIX,
+        /** founded between two dates, see {@link com.belo82.facetsearch.Indexer#doRangeSearch(String, String, Projection, Sort)} */
+        RANGE,
+        /** parsed query with facets, see {@link com.belo82.facetsearch.Indexer#doFacetedSearch(FacetedQuery)} */
+        FACETED
+    }
+
+    private final Type type;
+    private final String value;
+    private final String max;
+    private final Sort sort;
+    private final FacetedQuery facetedQuery;
+    private final Projection projection;
+
+    private BatchQuery(Type type, String value, String max, Sort sort, FacetedQuery facetedQuery,
+                       Projection projection) {
+        this.type = type;
+        this.value = value;
+        this.max = max;
+        this.sort = sort;
+        this.facetedQuery = facetedQuery;
+        this.projection = projection;
+    }
+
+    /**
+     * @param value facet label, e.g. "43 Parson's Green, SW14 3EC"
+     */
+    public static BatchQuery label(String value, Projection projection) {
+        return new BatchQuery(Type.LABEL, value, null, null, null, projection);
+    }
+
+    public static BatchQuery prefix(String value, Projection projection) {
+        return new BatchQuery(Type.PREFIX, value, null, null, null, projection);
+    }
+
+    /**
+     * @param min date in the <code>dd-MM-yyyy</code> format, inclusive
+     * @param max date in the <code>dd-MM-yyyy</code> format, inclusive
+     */
+    public static BatchQuery range(String min, String max, Projection projection) {
+        return range(min, max, projection, null);
+    }
+
+    /**
+     * @param sort e.g. {@link com.belo82.facetsearch.Indexer#sortByFounded(boolean)}, <code>null</code> for index
+     *             order
+     */
+    public static BatchQuery range(String min, String max, Projection projection, Sort sort) {
+        return new BatchQuery(Type.RANGE, min, max, sort, null, projection);
+    }
+
+    public static BatchQuery faceted(FacetedQuery facetedQuery) {
+        return new BatchQuery(Type.FACETED, facetedQuery.getQuery(), null, facetedQuery.getSort(), facetedQuery,
+                facetedQuery.getProjection());
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the label, the prefix, the lower bound of the range or the query, depending on the type
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return upper bound of a {@link Type#RANGE} search
+     */
+    public String getMax() {
+        return max;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    /**
+     * @return the faceted search, <code>null</code> unless the type is {@link Type#FACETED}
+     */
+    public FacetedQuery getFacetedQuery() {
+        return facetedQuery;
+    }
+
+    public Projection getProjection() {
+        return projection;
+    }
+
+    @Override
+    public String toString() {
+        if (type == Type.RANGE)
+            return "range:[" + value + " TO " + max + "]";
+
+        return type.name().toLowerCase() + ":" + value;
+    }
+}
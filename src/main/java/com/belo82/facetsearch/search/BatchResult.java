@@ -0,0 +1,63 @@
+package com.belo82.facetsearch.search;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Results of a batch of searches, in the order of the {@link BatchQuery}s. All of them were searched on the same
+ * searcher snapshot. A query which cannot be parsed fails alone, the other queries of the batch still return their
+ * results.
+ *
+ * @author Peter Belko
+ */
+public class BatchResult {
+    private final List<SearchResult> results;
+    private final List<ParseException> errors;
+
+    /**
+     * @param results one per query, <code>null</code> for a failed query
+     * @param errors  one per query, <code>null</code> for a successful query
+     */
+    public BatchResult(SearchResult[] results, ParseException[] errors) {
+        this.results = Collections.unmodifiableList(Arrays.asList(results));
+        this.errors = Collections.unmodifiableList(Arrays.asList(errors));
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * @return result of the query at the index, facets are empty unless it is a {@link BatchQuery.Type#FACETED}
+     *         query
+     * @throws IllegalStateException if the query failed, see {@link #getError(int)}
+     */
+    public SearchResult get(int index) {
+        if (errors.get(index) != null)
+            throw new IllegalStateException("query " + index + " failed: " + errors.get(index).getMessage(),
+                    errors.get(index));
+
+        return results.get(index);
+    }
+
+    public boolean isFailed(int index) {
+        return errors.get(index) != null;
+    }
+
+    /**
+     * @return why the query at the index could not be parsed, <code>null</code> if it did not fail
+     */
+    public ParseException getError(int index) {
+        return errors.get(index);
+    }
+
+    /**
+     * @return results in query order, <code>null</code> for failed queries
+     */
+    public List<SearchResult> getResults() {
+        return results;
+    }
+}
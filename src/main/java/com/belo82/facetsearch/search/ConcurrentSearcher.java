@@ -0,0 +1,241 @@
+package com.belo82.facetsearch.search;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.Weight;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * {@link IndexSearcher} which searches the segments of one query in parallel on a shared executor.<br/>
+ * <br/>
+ * Segments are grouped into a few slices of about the same number of documents. Collector based searches, e.g.
+ * facet counting, go through {@link #search(Query, CollectorFactory)} which searches every slice with its own
+ * collector, so collectors never have to be thread safe. Top hits searches, including the sorted and search-after
+ * ones, collect the top hits of every slice the same way and merge them with
+ * {@link TopDocs#merge(Sort, int, TopDocs[])}; ties are broken by the slice order, i.e. by document as in
+ * a sequential search.
+ * <p>
+ * A query runs in parallel only if it gets a permit of the shared {@link ConcurrentSearcherFactory}, otherwise it
+ * is searched sequentially on the caller thread. The caller thread always searches the first slice itself and pool
+ * threads never wait for other pool tasks, so a busy pool slows queries down but cannot deadlock them.
+ * </p>
+ *
+ * @author Peter Belko
+ */
+public class ConcurrentSearcher extends IndexSearcher {
+
+    /**
+     * Creates a new collector for every slice of a parallel search.
+     */
+    public interface CollectorFactory<C extends Collector> {
+        C newCollector() throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final ConcurrentSearcherFactory admission;
+    private final List<List<AtomicReaderContext>> slices;
+
+    ConcurrentSearcher(IndexReader reader, ExecutorService executor, ConcurrentSearcherFactory admission,
+                       int maxSlices) {
+        super(reader);
+        this.executor = executor;
+        this.admission = admission;
+        this.slices = balancedSlices(leafContexts, maxSlices);
+    }
+
+    /**
+     * Groups the segments into at most <code>maxSlices</code> slices of about the same number of documents,
+     * in document order.
+     */
+    static List<List<AtomicReaderContext>> balancedSlices(List<AtomicReaderContext> leaves, int maxSlices) {
+        int count = Math.max(1, Math.min(maxSlices, leaves.size()));
+        List<List<AtomicReaderContext>> slices = new ArrayList<>(count);
+        long total = 0;
+        for (AtomicReaderContext leaf : leaves)
+            total += leaf.reader().maxDoc();
+
+        List<AtomicReaderContext> slice = new ArrayList<>();
+        long seen = 0;
+        for (int i = 0; i < leaves.size(); i++) {
+            AtomicReaderContext leaf = leaves.get(i);
+            slice.add(leaf);
+            seen += leaf.reader().maxDoc();
+
+            int remainingLeaves = leaves.size() - i - 1;
+            int remainingSlices = count - slices.size() - 1;
+            boolean full = seen * count >= total * (slices.size() + 1);
+            if (remainingSlices > 0 && (full || remainingLeaves == remainingSlices)) {
+                slices.add(slice);
+                slice = new ArrayList<>();
+            }
+        }
+        if (!slice.isEmpty() || slices.isEmpty())
+            slices.add(slice);
+
+        return slices;
+    }
+
+    /**
+     * @return number of slices a collector based search is split to when it runs in parallel
+     */
+    public int getSliceCount() {
+        return slices.size();
+    }
+
+    /**
+     * Searches every slice with its own collector, in parallel if a permit is available.
+     *
+     * @return the collectors in document order of their slices, a single collector of all segments if the query
+     *         was searched sequentially
+     */
+    public <C extends Collector> List<C> search(Query query, CollectorFactory<C> factory) throws IOException {
+        return search(createNormalizedWeight(query), factory);
+    }
+
+    private <C extends Collector> List<C> search(final Weight weight, CollectorFactory<C> factory)
+            throws IOException {
+        if (slices.size() < 2 || !admission.tryAcquire()) {
+            C collector = factory.newCollector();
+            search(leafContexts, weight, collector);
+            return Collections.singletonList(collector);
+        }
+
+        try {
+            List<C> collectors = new ArrayList<>(slices.size());
+            for (int i = 0; i < slices.size(); i++)
+                collectors.add(factory.newCollector());
+
+            List<Future<?>> futures = new ArrayList<>(slices.size() - 1);
+            for (int i = 1; i < slices.size(); i++) {
+                final List<AtomicReaderContext> slice = slices.get(i);
+                final C collector = collectors.get(i);
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        search(slice, weight, collector);
+                        return null;
+                    }
+                }));
+            }
+
+            Throwable failure = null;
+            try {
+                search(slices.get(0), weight, collectors.get(0));
+            } catch (Throwable e) {
+                failure = e;
+            }
+            failure = await(futures, failure);
+
+            if (failure instanceof IOException)
+                throw (IOException) failure;
+            if (failure instanceof RuntimeException)
+                throw (RuntimeException) failure;
+            if (failure instanceof Error)
+                throw (Error) failure;
+            if (failure != null)
+                throw new IOException("slice search failed.", failure);
+            return collectors;
+        } finally {
+            admission.release();
+        }
+    }
+
+    /**
+     * Waits for all the slices, also when one of them fails, so no slice fills its collector or reads the snapshot
+     * after the search has returned. All slices share one deadline, so they usually time out together.
+     *
+     * @param failure failure of the caller slice, <code>null</code> if it succeeded
+     * @return the caller slice failure or else the first failure in slice order, with the later ones suppressed;
+     *         <code>null</code> if all slices succeeded
+     */
+    private static Throwable await(List<Future<?>> futures, Throwable failure) {
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null)
+                        failure = e.getCause();
+                    else
+                        failure.addSuppressed(e.getCause());
+                    break;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        return failure;
+    }
+
+    @Override
+    protected TopDocs search(final Weight weight, final ScoreDoc after, int nDocs) throws IOException {
+        final int limit = limit(nDocs);
+        List<TopScoreDocCollector> collectors = search(weight, new CollectorFactory<TopScoreDocCollector>() {
+            @Override
+            public TopScoreDocCollector newCollector() {
+                return TopScoreDocCollector.create(limit, after, !weight.scoresDocsOutOfOrder());
+            }
+        });
+
+        if (collectors.size() == 1)
+            return collectors.get(0).topDocs();
+        return TopDocs.merge(null, limit, topDocs(collectors));
+    }
+
+    @Override
+    protected TopFieldDocs search(final Weight weight, final FieldDoc after, int nDocs, final Sort sort,
+                                  final boolean fillFields, final boolean doDocScores, final boolean doMaxScore)
+            throws IOException {
+        final int limit = limit(nDocs);
+        final boolean merge = slices.size() > 1;
+        List<TopFieldCollector> collectors = search(weight, new CollectorFactory<TopFieldCollector>() {
+            @Override
+            public TopFieldCollector newCollector() throws IOException {
+                // merging compares the sort values, so they are always filled in a parallel search
+                return TopFieldCollector.create(sort, limit, after, fillFields || merge, doDocScores, doMaxScore,
+                        !weight.scoresDocsOutOfOrder());
+            }
+        });
+
+        if (collectors.size() == 1)
+            return (TopFieldDocs) collectors.get(0).topDocs();
+        return (TopFieldDocs) TopDocs.merge(sort, limit, topDocs(collectors));
+    }
+
+    private int limit(int nDocs) {
+        // same as the sequential search, the hit queue is never larger than the index
+        return Math.min(nDocs, Math.max(1, getIndexReader().maxDoc()));
+    }
+
+    private static TopDocs[] topDocs(List<? extends TopDocsCollector<?>> collectors) {
+        TopDocs[] topDocs = new TopDocs[collectors.size()];
+        for (int i = 0; i < topDocs.length; i++)
+            topDocs[i] = collectors.get(i).topDocs();
+
+        return topDocs;
+    }
+}
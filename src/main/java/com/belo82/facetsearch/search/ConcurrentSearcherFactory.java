@@ -0,0 +1,92 @@
+package com.belo82.facetsearch.search;
+
+import com.belo82.facetsearch.Indexer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates {@link ConcurrentSearcher}s which share one bounded search pool and one admission limit.<br/>
+ * <br/>
+ * At most <code>maxParallelQueries</code> queries are searched in parallel at a time, further queries run
+ * sequentially on their caller threads instead of queueing their segments behind the running ones. Under low load
+ * a query gets all the search threads, under high load every client keeps its own thread and the pool cannot be
+ * starved.
+ *
+ * @author Peter Belko
+ */
+public class ConcurrentSearcherFactory extends SearcherFactory implements Closeable {
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int threads;
+    private final AtomicLong parallel = new AtomicLong();
+    private final AtomicLong sequential = new AtomicLong();
+
+    /**
+     * @param threads            size of the search pool
+     * @param maxParallelQueries how many queries may be searched in parallel at the same time
+     */
+    public ConcurrentSearcherFactory(int threads, int maxParallelQueries) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be > 0, got: " + threads);
+        if (maxParallelQueries < 1)
+            throw new IllegalArgumentException("maxParallelQueries must be > 0, got: " + maxParallelQueries);
+
+        this.threads = threads;
+        this.permits = new Semaphore(maxParallelQueries);
+        this.executor = Executors.newFixedThreadPool(threads, Indexer.namedThreadFactory("indexer-search"));
+    }
+
+    @Override
+    public IndexSearcher newSearcher(IndexReader reader) {
+        // the caller thread searches one slice itself, so one slice more than the pool threads keeps all busy
+        return new ConcurrentSearcher(reader, executor, this, threads + 1);
+    }
+
+    boolean tryAcquire() {
+        if (permits.tryAcquire()) {
+            parallel.incrementAndGet();
+            return true;
+        }
+
+        sequential.incrementAndGet();
+        return false;
+    }
+
+    void release() {
+        permits.release();
+    }
+
+    /**
+     * @return number of queries which were searched in parallel
+     */
+    public long getParallelQueries() {
+        return parallel.get();
+    }
+
+    /**
+     * @return number of queries which were searched sequentially, because the admission limit was reached
+     */
+    public long getSequentialQueries() {
+        return sequential.get();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS))
+                executor.shutdownNow();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
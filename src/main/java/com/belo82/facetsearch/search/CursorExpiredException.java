@@ -0,0 +1,15 @@
+package com.belo82.facetsearch.search;
+
+/**
+ * Thrown when a page is requested with a cursor which is unknown, already exhausted or has expired.
+ * The search has to be started again from the first page.
+ *
+ * @author Peter Belko
+ */
+public class CursorExpiredException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public CursorExpiredException(String cursor) {
+        super("cursor " + cursor + " is unknown or expired.");
+    }
+}
@@ -0,0 +1,55 @@
+package com.belo82.facetsearch.search;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+
+import java.io.IOException;
+
+/**
+ * Stops collection once the {@link SearchDeadline} has passed or the search was cancelled.<br/>
+ * <br/>
+ * Works like Lucene's {@link org.apache.lucene.search.TimeLimitingCollector}, which cannot be cancelled. The
+ * deadline is checked at the start of every segment and every {@value #CHECK_INTERVAL} collected documents, so
+ * a search overruns its deadline by at most that many documents. The wrapped collector keeps the hits collected
+ * so far and can still be asked for them after {@link SearchTimeoutException} is thrown.
+ *
+ * @author Peter Belko
+ */
+public class DeadlineCollector extends Collector {
+    private static final int CHECK_INTERVAL = 256;
+
+    private final Collector collector;
+    private final SearchDeadline deadline;
+    private int unchecked;
+
+    public DeadlineCollector(Collector collector, SearchDeadline deadline) {
+        this.collector = collector;
+        this.deadline = deadline;
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+        collector.setScorer(scorer);
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        if (++unchecked == CHECK_INTERVAL) {
+            unchecked = 0;
+            deadline.check();
+        }
+        collector.collect(doc);
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) throws IOException {
+        deadline.check();
+        collector.setNextReader(context);
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return collector.acceptsDocsOutOfOrder();
+    }
+}
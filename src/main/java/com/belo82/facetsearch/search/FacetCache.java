@@ -0,0 +1,152 @@
+package com.belo82.facetsearch.search;
+
+import org.apache.lucene.facet.search.FacetResult;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache of facet counts.<br/>
+ * <br/>
+ * Entries are keyed on the normalized query, the drill-down paths, other facet requests and the generation of the searcher snapshot
+ * (index reader version and taxonomy size), so an entry can never be served for a different index state. All entries
+ * are dropped when a new snapshot is opened, see {@link #clear()}.
+ *
+ * @author Peter Belko
+ */
+public class FacetCache {
+
+    public static final class Key {
+        private final String query;
+        private final List<String> drillDown;
+        private final String facetRequests;
+        private final long indexVersion;
+        private final int taxonomySize;
+
+        /**
+         * @param query     normalized query, e.g. {@link org.apache.lucene.search.Query#toString()} of parsed query
+         * @param drillDown     sorted drill-down paths
+         * @param facetRequests facet requests other than those derived from the drill-down, e.g. range facets
+         */
+        public Key(String query, List<String> drillDown, String facetRequests, long indexVersion, int taxonomySize) {
+            this.query = query;
+            this.drillDown = drillDown;
+            this.facetRequests = facetRequests;
+            this.indexVersion = indexVersion;
+            this.taxonomySize = taxonomySize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+
+            Key key = (Key) o;
+            return indexVersion == key.indexVersion && taxonomySize == key.taxonomySize
+                    && query.equals(key.query) && drillDown.equals(key.drillDown)
+                    && facetRequests.equals(key.facetRequests);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = query.hashCode();
+            result = 31 * result + drillDown.hashCode();
+            result = 31 * result + facetRequests.hashCode();
+            result = 31 * result + (int) (indexVersion ^ (indexVersion >>> 32));
+            result = 31 * result + taxonomySize;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return query + " " + drillDown + " " + facetRequests + " @" + indexVersion + "/" + taxonomySize;
+        }
+    }
+
+    /**
+     * Taxonomy and range facet results of one search.
+     */
+    public static final class Entry {
+        public final List<FacetResult> facets;
+        public final List<RangeFacetResult> rangeFacets;
+
+        public Entry(List<FacetResult> facets, List<RangeFacetResult> rangeFacets) {
+            this.facets = Collections.unmodifiableList(facets);
+            this.rangeFacets = Collections.unmodifiableList(rangeFacets);
+        }
+    }
+
+    private final int maxSize;
+    private final Map<Key, Entry> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxSize maximum number of cached entries, <code>0</code> disables the cache
+     */
+    public FacetCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized Entry get(Key key) {
+        Entry result = entries.get(key);
+        if (result == null)
+            misses++;
+        else
+            hits++;
+
+        return result;
+    }
+
+    public synchronized void put(Key key, Entry facets) {
+        if (maxSize > 0)
+            entries.put(key, facets);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : hits / (double) lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "size=" + entries.size() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                + ", hitRate=" + getHitRate();
+    }
+}
@@ -0,0 +1,119 @@
+package com.belo82.facetsearch.search;
+
+import org.apache.lucene.facet.search.FacetRequest;
+import org.apache.lucene.facet.search.FacetResult;
+import org.apache.lucene.facet.search.FacetResultNode;
+import org.apache.lucene.facet.taxonomy.CategoryPath;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges the facet results of several shards, each with its own taxonomy, into one list of results.<br/>
+ * <br/>
+ * Taxonomy ordinals differ between the shards, so nodes are matched by their {@link CategoryPath} label and their
+ * counts are summed; merged nodes have ordinal <code>-1</code>. Children of a count facet are sorted by the merged
+ * count and cut to {@link FacetRequest#numResults}. Range facets are merged by summing the bucket counts, see
+ * {@link #mergeRanges(List)}. The merged counts are exact when every shard returned all children of a node, i.e. when a node has no
+ * more children than <code>numResults</code>, otherwise a child which missed the top of some shard is undercounted.
+ *
+ * @author Peter Belko
+ */
+public class FacetMerger {
+    private static final Comparator<FacetResultNode> BY_VALUE_DESC = new Comparator<FacetResultNode>() {
+        @Override
+        public int compare(FacetResultNode a, FacetResultNode b) {
+            int cmp = Double.compare(b.value, a.value);
+            return cmp != 0 ? cmp : a.label.compareTo(b.label);
+        }
+    };
+
+    private FacetMerger() {
+    }
+
+    /**
+     * @param shardResults facet results of every shard, all computed for the same facet requests in the same order
+     */
+    public static List<FacetResult> merge(List<List<FacetResult>> shardResults) {
+        if (shardResults.isEmpty())
+            return Collections.emptyList();
+        if (shardResults.size() == 1)
+            return shardResults.get(0);
+
+        int requests = shardResults.get(0).size();
+        List<FacetResult> merged = new ArrayList<>(requests);
+        for (int r = 0; r < requests; r++) {
+            FacetRequest request = shardResults.get(0).get(r).getFacetRequest();
+
+            List<FacetResultNode> roots = new ArrayList<>(shardResults.size());
+            int numValidDescendants = 0;
+            for (List<FacetResult> shard : shardResults) {
+                FacetResult result = shard.get(r);
+                roots.add(result.getFacetResultNode());
+                numValidDescendants = Math.max(numValidDescendants, result.getNumValidDescendants());
+            }
+
+            FacetResultNode root = mergeNodes(roots, request.numResults);
+            merged.add(new FacetResult(request, root, Math.max(numValidDescendants, root.subResults.size())));
+        }
+
+        return merged;
+    }
+
+    /**
+     * @param shardResults range facet results of every shard, all computed for the same requests in the same order
+     */
+    public static List<RangeFacetResult> mergeRanges(List<List<RangeFacetResult>> shardResults) {
+        if (shardResults.isEmpty())
+            return Collections.emptyList();
+        if (shardResults.size() == 1)
+            return shardResults.get(0);
+
+        int requests = shardResults.get(0).size();
+        List<RangeFacetResult> merged = new ArrayList<>(requests);
+        for (int r = 0; r < requests; r++) {
+            List<RangeFacetResult> same = new ArrayList<>(shardResults.size());
+            for (List<RangeFacetResult> shard : shardResults)
+                same.add(shard.get(r));
+            merged.add(RangeFacetResult.sum(same));
+        }
+
+        return merged;
+    }
+
+    private static FacetResultNode mergeNodes(List<FacetResultNode> nodes, int numResults) {
+        FacetResultNode merged = new FacetResultNode(-1, 0);
+        Map<CategoryPath, List<FacetResultNode>> children = new LinkedHashMap<>();
+        for (FacetResultNode node : nodes) {
+            if (merged.label == null)
+                merged.label = node.label;
+            merged.value += node.value;
+
+            for (FacetResultNode child : node.subResults) {
+                List<FacetResultNode> same = children.get(child.label);
+                if (same == null) {
+                    same = new ArrayList<>(nodes.size());
+                    children.put(child.label, same);
+                }
+                same.add(child);
+            }
+        }
+
+        if (children.isEmpty())
+            return merged;
+
+        List<FacetResultNode> subResults = new ArrayList<>(children.size());
+        for (List<FacetResultNode> same : children.values())
+            subResults.add(mergeNodes(same, numResults));
+
+        Collections.sort(subResults, BY_VALUE_DESC);
+        if (subResults.size() > numResults)
+            subResults = new ArrayList<>(subResults.subList(0, numResults));
+        merged.subResults = subResults;
+        return merged;
+    }
+}
@@ -0,0 +1,75 @@
+package com.belo82.facetsearch.search;
+
+import org.apache.lucene.facet.taxonomy.CategoryPath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values selected in multi-select facet navigation, see
+ * {@link com.belo82.facetsearch.Indexer#doDrillSidewaysSearch(String, Projection, FacetSelection)}. Values of the
+ * same dimension are alternatives (OR), different dimensions must all match (AND). Setters return
+ * <code>this</code> so they can be chained, e.g.
+ * <pre>
+ *     new FacetSelection().select("shop_category", "cafe", "bakery").select("area", "Fulham");
+ * </pre>
+ *
+ * @author Peter Belko
+ */
+public class FacetSelection {
+    private final Map<String, List<String>> selected = new LinkedHashMap<>();
+
+    /**
+     * Adds values to the selection of the dimension.
+     */
+    public FacetSelection select(String dimension, String... values) {
+        if (values.length == 0)
+            throw new IllegalArgumentException("at least one value of " + dimension + " must be selected");
+
+        List<String> dimensionValues = selected.get(dimension);
+        if (dimensionValues == null) {
+            dimensionValues = new ArrayList<>(values.length);
+            selected.put(dimension, dimensionValues);
+        }
+        dimensionValues.addAll(Arrays.asList(values));
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return selected.isEmpty();
+    }
+
+    public boolean isSelected(String dimension) {
+        return selected.containsKey(dimension);
+    }
+
+    /**
+     * @return dimensions in the order they were first selected
+     */
+    public List<String> getDimensions() {
+        return new ArrayList<>(selected.keySet());
+    }
+
+    /**
+     * @return one path per selected value of the dimension, empty if nothing is selected in it
+     */
+    public CategoryPath[] getPaths(String dimension) {
+        List<String> values = selected.get(dimension);
+        if (values == null)
+            return new CategoryPath[0];
+
+        CategoryPath[] paths = new CategoryPath[values.size()];
+        for (int i = 0; i < paths.length; i++)
+            paths[i] = new CategoryPath(dimension, values.get(i));
+
+        return paths;
+    }
+
+    @Override
+    public String toString() {
+        return selected.toString();
+    }
+}
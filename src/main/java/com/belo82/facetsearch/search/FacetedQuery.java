@@ -0,0 +1,75 @@
+package com.belo82.facetsearch.search;
+
+import org.apache.lucene.facet.taxonomy.CategoryPath;
+import org.apache.lucene.search.Sort;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes a faceted search, see {@link com.belo82.facetsearch.Indexer#doFacetedSearch(FacetedQuery)}. Setters
+ * return <code>this</code> so they can be chained.
+ *
+ * @author Peter Belko
+ */
+public class FacetedQuery {
+    private final String query;
+    private final List<CategoryPath> drillDown = new ArrayList<>();
+    private final List<RangeFacetRequest> rangeFacets = new ArrayList<>();
+    private final Projection projection;
+    private Sort sort;
+
+    /**
+     * @param query query in the {@link org.apache.lucene.queryparser.classic.QueryParser} syntax
+     */
+    public FacetedQuery(String query, Projection projection) {
+        this.query = query;
+        this.projection = projection;
+    }
+
+    /**
+     * Narrows the search to the given categories, sub-categories of every path are counted as well.
+     */
+    public FacetedQuery drillDown(CategoryPath... paths) {
+        drillDown.addAll(Arrays.asList(paths));
+        return this;
+    }
+
+    /**
+     * Counts hits in the buckets of the request in the same pass as the hits are collected.
+     */
+    public FacetedQuery rangeFacet(RangeFacetRequest request) {
+        rangeFacets.add(request);
+        return this;
+    }
+
+    /**
+     * @param sort sort of the hits, <code>null</code> (default) sorts by relevance
+     */
+    public FacetedQuery sort(Sort sort) {
+        this.sort = sort;
+        return this;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public List<CategoryPath> getDrillDown() {
+        return Collections.unmodifiableList(drillDown);
+    }
+
+    public List<RangeFacetRequest> getRangeFacets() {
+        return Collections.unmodifiableList(rangeFacets);
+    }
+
+    public Projection getProjection() {
+        return projection;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+}
@@ -0,0 +1,271 @@
+package com.belo82.facetsearch.search;
+
+import org.apache.lucene.facet.search.FacetResult;
+import org.apache.lucene.facet.search.FacetResultNode;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Streams search results as JSON with the Jackson streaming {@link JsonGenerator}, without building
+ * {@link org.apache.lucene.document.Document}s, {@link ResultRow}s or any other per-hit objects.<br/>
+ * <br/>
+ * Like {@link ResultLoader}, fields with numeric DocValues are read from DocValues, the rest is written by a
+ * {@link StoredFieldVisitor} straight from the stored fields as they are visited, so the fields of a hit appear in
+ * the order they were indexed. Fields listed in <code>multiValuedFields</code> are always written as arrays, the
+ * other fields as single values; the values of a multi-valued field must be stored one after another, as
+ * {@link com.belo82.facetsearch.Indexer} adds them, a hit with other fields stored in between fails with an
+ * {@link IllegalStateException}, as its array cannot be reopened. Fields the hit does not have are left out, a
+ * DocValues field which reads as <code>0</code> is taken from the stored fields like in {@link ResultLoader}. The
+ * output looks like:
+ * <pre>
+ * {"totalHits":2,
+ *  "hits":[{"doc":7,"score":1.0,"id":7,"name":"Tried &amp; True","owners":["Dylan James"]}, ...],
+ *  "facets":[{"label":"shop_category","value":11,"children":[{"label":"shop_category/cafe","value":4}, ...]}],
+ *  "rangeFacets":[{"field":"founded","total":11,"buckets":[{"label":"1990s","count":6}, ...]}]}
+ * </pre>
+ * The score is left out when the hits are sorted without scores.
+ *
+ * @author Peter Belko
+ */
+public class JsonResultWriter {
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final Set<String> docValuesFields;
+    private final Set<String> multiValuedFields;
+
+    /**
+     * @param docValuesFields   fields indexed also as numeric DocValues, and stored
+     * @param multiValuedFields fields which may have more than one value
+     */
+    public JsonResultWriter(Set<String> docValuesFields, Set<String> multiValuedFields) {
+        this.docValuesFields = Collections.unmodifiableSet(docValuesFields);
+        this.multiValuedFields = Collections.unmodifiableSet(multiValuedFields);
+    }
+
+    /**
+     * Writes the hits and the facets as one JSON object encoded in UTF-8. The stream is flushed, but not closed.
+     */
+    public void write(IndexSearcher searcher, TopDocs topDocs, Projection projection, List<FacetResult> facets,
+                      List<RangeFacetResult> rangeFacets, OutputStream out) throws IOException {
+        JsonGenerator generator = jsonFactory.createJsonGenerator(out, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        generator.writeStartObject();
+        generator.writeNumberField("totalHits", topDocs.totalHits);
+        generator.writeArrayFieldStart("hits");
+        writeHits(searcher, topDocs.scoreDocs, projection, generator);
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("facets");
+        for (FacetResult facet : facets)
+            writeNode(facet.getFacetResultNode(), generator);
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("rangeFacets");
+        for (RangeFacetResult rangeFacet : rangeFacets)
+            writeRanges(rangeFacet, generator);
+        generator.writeEndArray();
+        generator.writeEndObject();
+
+        generator.close();
+    }
+
+    private void writeHits(IndexSearcher searcher, ScoreDoc[] scoreDocs, Projection projection,
+                           JsonGenerator generator) throws IOException {
+        List<AtomicReaderContext> leaves = searcher.getIndexReader().leaves();
+        JsonFieldVisitor visitor = new JsonFieldVisitor(generator);
+
+        for (ScoreDoc scoreDoc : scoreDocs) {
+            AtomicReaderContext leaf = leaves.get(ReaderUtil.subIndex(scoreDoc.doc, leaves));
+            int segmentDoc = scoreDoc.doc - leaf.docBase;
+
+            generator.writeStartObject();
+            generator.writeNumberField("doc", scoreDoc.doc);
+            if (!Float.isNaN(scoreDoc.score))
+                generator.writeNumberField("score", scoreDoc.score);
+
+            visitor.reset();
+            for (String field : projection.getFields()) {
+                NumericDocValues docValues = docValuesFields.contains(field)
+                        ? leaf.reader().getNumericDocValues(field) : null;
+
+                long value = docValues == null ? 0 : docValues.get(segmentDoc);
+                if (value != 0) {
+                    generator.writeNumberField(field, value);
+                } else {
+                    visitor.require(field);
+                }
+            }
+            if (visitor.hasRequired()) {
+                leaf.reader().document(segmentDoc, visitor);
+                visitor.finish();
+            }
+
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeNode(FacetResultNode node, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        if (node.label != null)
+            generator.writeStringField("label", node.label.toString('/'));
+        // counts are whole numbers, other aggregates are written as they are
+        if (node.value == (long) node.value)
+            generator.writeNumberField("value", (long) node.value);
+        else
+            generator.writeNumberField("value", node.value);
+
+        if (!node.subResults.isEmpty()) {
+            generator.writeArrayFieldStart("children");
+            for (FacetResultNode child : node.subResults)
+                writeNode(child, generator);
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeRanges(RangeFacetResult result, JsonGenerator generator) throws IOException {
+        RangeFacetRequest request = result.getRequest();
+        generator.writeStartObject();
+        generator.writeStringField("field", request.field);
+        generator.writeNumberField("total", result.getTotal());
+        generator.writeArrayFieldStart("buckets");
+        for (int i = 0; i < request.ranges.size(); i++) {
+            generator.writeStartObject();
+            generator.writeStringField("label", request.ranges.get(i).label);
+            generator.writeNumberField("count", result.getCount(i));
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes requested stored fields of one hit after another, stops reading a hit after all of them have been
+     * visited. One instance is reused for all the hits of a result.
+     */
+    private class JsonFieldVisitor extends StoredFieldVisitor {
+        private final JsonGenerator generator;
+        private final List<String> required = new ArrayList<>(4);
+        private final List<String> completed = new ArrayList<>(4);
+        private int pending;
+        private String current;
+        private boolean written;
+        private boolean array;
+
+        JsonFieldVisitor(JsonGenerator generator) {
+            this.generator = generator;
+        }
+
+        void reset() {
+            required.clear();
+            completed.clear();
+            pending = 0;
+            current = null;
+        }
+
+        void require(String field) {
+            required.add(field);
+            pending++;
+        }
+
+        boolean hasRequired() {
+            return !required.isEmpty();
+        }
+
+        /**
+         * Closes the array of a multi-valued field which was the last one visited.
+         */
+        void finish() throws IOException {
+            if (array)
+                generator.writeEndArray();
+            array = false;
+        }
+
+        @Override
+        public Status needsField(FieldInfo fieldInfo) throws IOException {
+            // a multi-valued field is complete once another field follows it
+            if (current != null && !current.equals(fieldInfo.name)) {
+                finish();
+                pending--;
+                completed.add(current);
+                current = null;
+            }
+
+            if (required.contains(fieldInfo.name)) {
+                if (completed.contains(fieldInfo.name))
+                    throw new IllegalStateException("values of field " + fieldInfo.name
+                            + " are not stored one after another, it would be written twice");
+                if (current == null) {
+                    current = fieldInfo.name;
+                    written = false;
+                }
+                return Status.YES;
+            }
+
+            return pending == 0 ? Status.STOP : Status.NO;
+        }
+
+        /**
+         * @return whether the value should be written, i.e. it is the first value or the field is multi-valued
+         */
+        private boolean startValue(FieldInfo fieldInfo) throws IOException {
+            if (!written) {
+                written = true;
+                if (multiValuedFields.contains(fieldInfo.name)) {
+                    generator.writeArrayFieldStart(fieldInfo.name);
+                    array = true;
+                } else {
+                    generator.writeFieldName(fieldInfo.name);
+                }
+                return true;
+            }
+
+            return array;
+        }
+
+        @Override
+        public void stringField(FieldInfo fieldInfo, String value) throws IOException {
+            if (startValue(fieldInfo))
+                generator.writeString(value);
+        }
+
+        @Override
+        public void intField(FieldInfo fieldInfo, int value) throws IOException {
+            if (startValue(fieldInfo))
+                generator.writeNumber(value);
+        }
+
+        @Override
+        public void longField(FieldInfo fieldInfo, long value) throws IOException {
+            if (startValue(fieldInfo))
+                generator.writeNumber(value);
+        }
+
+        @Override
+        public void floatField(FieldInfo fieldInfo, float value) throws IOException {
+            if (startValue(fieldInfo))
+                generator.writeNumber(value);
+        }
+
+        @Override
+        public void doubleField(FieldInfo fieldInfo, double value) throws IOException {
+            if (startValue(fieldInfo))
+                generator.writeNumber(value);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.belo82.facetsearch.search;
+
+/**
+ * Single labeled bucket of a {@link RangeFacetRequest}.
+ *
+ * @author Peter Belko
+ */
+public final class LongRange {
+    public final String label;
+    public final long min;
+    public final boolean minInclusive;
+    public final long max;
+    public final boolean maxInclusive;
+
+    public LongRange(String label, long min, boolean minInclusive, long max, boolean maxInclusive) {
+        this.label = label;
+        this.min = min;
+        this.minInclusive = minInclusive;
+        this.max = max;
+        this.maxInclusive = maxInclusive;
+    }
+
+    public boolean accept(long value) {
+        return (minInclusive ? value >= min : value > min)
+                && (maxInclusive ? value <= max : value < max);
+    }
+
+    @Override
+    public String toString() {
+        return label + (minInclusive ? "[" : "{") + min + " TO " + max + (maxInclusive ? "]" : "}");
+    }
+}
@@ -0,0 +1,140 @@
+package com.belo82.facetsearch.search;
+
+import com.belo82.facetsearch.search.SearcherTaxonomyManager.SearcherAndTaxonomy;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.ScoreDoc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server side state of open paging cursors.<br/>
+ * <br/>
+ * Every cursor keeps a reference to the searcher snapshot which served its first page, so all the following pages
+ * come from the same point-in-time view of the index and {@link org.apache.lucene.search.IndexSearcher#searchAfter}
+ * continues exactly after the last returned hit. The snapshot reference is released when the last page is served,
+ * when the cursor is closed, or when it was not used for longer than the TTL. Expired cursors are swept on every
+ * paging request and, registered as a refresh listener, on every refresh attempt of the searcher manager, so a
+ * background refresh releases them even if no more pages are requested.
+ *
+ * @author Peter Belko
+ */
+public class PageCursors implements Closeable, ReferenceManager.RefreshListener {
+    private static final Logger logger = LoggerFactory.getLogger(PageCursors.class);
+
+    /**
+     * State of a single cursor, owned by one thread between {@link #take(String)} and {@link #put(Cursor)}.
+     */
+    public static class Cursor {
+        public final SearcherAndTaxonomy snapshot;
+        public final Query query;
+        public final Projection projection;
+        public final int pageSize;
+        /** last hit of the previous page */
+        public ScoreDoc after;
+        /** number of hits returned so far */
+        public int returned;
+        private String id;
+        private long lastAccessNanos;
+
+        public Cursor(SearcherAndTaxonomy snapshot, Query query, Projection projection, int pageSize) {
+            this.snapshot = snapshot;
+            this.query = query;
+            this.projection = projection;
+            this.pageSize = pageSize;
+        }
+    }
+
+    private final SearcherTaxonomyManager searcherManager;
+    private final long ttlNanos;
+    private final Map<String, Cursor> cursors = new ConcurrentHashMap<>();
+
+    public PageCursors(SearcherTaxonomyManager searcherManager, long ttlMillis) {
+        this.searcherManager = searcherManager;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * Registers the cursor so it can be continued later.
+     *
+     * @return opaque cursor id
+     */
+    public String put(Cursor cursor) {
+        expire();
+
+        if (cursor.id == null)
+            cursor.id = UUID.randomUUID().toString();
+        cursor.lastAccessNanos = System.nanoTime();
+        cursors.put(cursor.id, cursor);
+        return cursor.id;
+    }
+
+    /**
+     * Removes the cursor from the registry, the caller either puts it back or releases it with {@link #release(Cursor)}.
+     *
+     * @throws CursorExpiredException if there is no such cursor
+     */
+    public Cursor take(String id) {
+        expire();
+
+        Cursor cursor = id == null ? null : cursors.remove(id);
+        if (cursor == null)
+            throw new CursorExpiredException(id);
+
+        return cursor;
+    }
+
+    public void release(Cursor cursor) throws IOException {
+        searcherManager.release(cursor.snapshot);
+    }
+
+    public int size() {
+        return cursors.size();
+    }
+
+    @Override
+    public void beforeRefresh() {
+    }
+
+    @Override
+    public void afterRefresh(boolean didRefresh) {
+        expire();
+    }
+
+    /**
+     * Releases the snapshots of the cursors which were not used for longer than the TTL.
+     */
+    public void expire() {
+        long now = System.nanoTime();
+        for (Cursor cursor : cursors.values()) {
+            if (now - cursor.lastAccessNanos > ttlNanos && cursors.remove(cursor.id) != null) {
+                logger.debug("cursor {} expired", cursor.id);
+                releaseQuietly(cursor);
+            }
+        }
+    }
+
+    private void releaseQuietly(Cursor cursor) {
+        try {
+            release(cursor);
+        } catch (IOException e) {
+            logger.error("cannot release snapshot of cursor " + cursor.id, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (String id : cursors.keySet()) {
+            Cursor cursor = cursors.remove(id);
+            if (cursor != null)
+                releaseQuietly(cursor);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.belo82.facetsearch.search;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable list of fields which a search should return for every hit, see {@link ResultLoader}.<br/>
+ * <br/>
+ * Fields listed in <code>docValuesFields</code> are read from numeric DocValues when the segment has them, without
+ * touching the stored fields at all.
+ *
+ * @author Peter Belko
+ */
+public final class Projection {
+    private final List<String> fields;
+    private final Set<String> fieldSet;
+
+    private Projection(String... fields) {
+        if (fields.length == 0)
+            throw new IllegalArgumentException("projection needs at least one field");
+
+        this.fields = Collections.unmodifiableList(Arrays.asList(fields.clone()));
+        this.fieldSet = Collections.unmodifiableSet(new HashSet<>(this.fields));
+    }
+
+    public static Projection of(String... fields) {
+        return new Projection(fields);
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public int size() {
+        return fields.size();
+    }
+
+    public int indexOf(String field) {
+        return fields.indexOf(field);
+    }
+
+    public boolean contains(String field) {
+        return fieldSet.contains(field);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Projection && fields.equals(((Projection) o).fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return fields.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return fields.toString();
+    }
+}
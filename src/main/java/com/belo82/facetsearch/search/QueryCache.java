@@ -0,0 +1,166 @@
+package com.belo82.facetsearch.search;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Version;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LRU cache of parsed queries.<br/>
+ * <br/>
+ * Entries are keyed on the normalized query text, see {@link #normalize(String)}. All queries are parsed with the
+ * same default field and the same analyzer, so neither is part of the key. Parsed queries do not depend on the index
+ * state and are kept across searcher refreshes. They are shared by all searches and must not be modified, e.g. by
+ * {@link Query#setBoost(float)}.<br/>
+ * <br/>
+ * Queries are parsed outside of the cache lock with a per-thread {@link QueryParser}, as the parser is not thread
+ * safe. Queries which fail to parse are not cached.
+ *
+ * @author Peter Belko
+ */
+public class QueryCache {
+    private final int maxSize;
+    private final Map<String, Query> entries;
+    private final ThreadLocal<QueryParser> parsers;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long parseNanos;
+
+    /**
+     * @param maxSize      maximum number of cached queries, <code>0</code> disables the cache
+     * @param defaultField field of terms without a field name
+     * @param analyzer     analyzer of the query terms, it should analyze every field the same way as at index time
+     */
+    public QueryCache(final int maxSize, final String defaultField, final Analyzer analyzer) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<String, Query>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Query> eldest) {
+                if (size() > maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.parsers = new ThreadLocal<QueryParser>() {
+            @Override
+            protected QueryParser initialValue() {
+                return new QueryParser(Version.LUCENE_42, defaultField, analyzer);
+            }
+        };
+    }
+
+    /**
+     * @return cached query if the same query text has been parsed before, otherwise the newly parsed query
+     */
+    public Query parse(String query) throws ParseException {
+        String key = normalize(query);
+        synchronized (this) {
+            Query cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+
+        long start = System.nanoTime();
+        Query parsed;
+        try {
+            parsed = parsers.get().parse(key);
+        } finally {
+            long took = System.nanoTime() - start;
+            synchronized (this) {
+                parseNanos += took;
+            }
+        }
+
+        if (maxSize > 0) {
+            synchronized (this) {
+                entries.put(key, parsed);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Trims the query and collapses runs of whitespace into a single space, except for escaped whitespace which is
+     * part of a term and whitespace inside a quoted phrase or a <code>/regex/</code>, which is part of the query too.
+     */
+    static String normalize(String query) {
+        String trimmed = query.trim();
+        StringBuilder normalized = new StringBuilder(trimmed.length());
+        boolean escaped = false;
+        boolean space = false;
+        // closing character of the phrase or regex the query is in, 0 outside of them
+        char span = 0;
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (span == 0 && !escaped && Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space) {
+                normalized.append(' ');
+                space = false;
+            }
+            normalized.append(c);
+
+            if (!escaped && (c == '"' || c == '/')) {
+                if (span == 0)
+                    span = c;
+                else if (span == c)
+                    span = 0;
+            }
+            escaped = !escaped && c == '\\';
+        }
+
+        return normalized.toString();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : hits / (double) lookups;
+    }
+
+    /**
+     * @return total time spent parsing queries which were not found in the cache, including failed ones
+     */
+    public synchronized long getParseTime(TimeUnit unit) {
+        return unit.convert(parseNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "size=" + entries.size() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                + ", hitRate=" + getHitRate() + ", parseMillis=" + TimeUnit.NANOSECONDS.toMillis(parseNanos);
+    }
+}
@@ -0,0 +1,45 @@
+package com.belo82.facetsearch.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Counts hits in user defined buckets of a numeric DocValues field, e.g. shops founded by decade.<br/>
+ * <br/>
+ * It is not a taxonomy facet, it is counted by {@link RangeFacetsCollector} in the same collection pass as the hits
+ * and returned as a {@link RangeFacetResult}, separately from the taxonomy facet results, see
+ * {@link SearchResult#getRangeFacets()}.
+ *
+ * @author Peter Belko
+ */
+public class RangeFacetRequest {
+    public final String field;
+    public final List<LongRange> ranges;
+
+    public RangeFacetRequest(String field, LongRange... ranges) {
+        this(field, Arrays.asList(ranges));
+    }
+
+    public RangeFacetRequest(String field, List<LongRange> ranges) {
+        this.field = field;
+        this.ranges = Collections.unmodifiableList(new ArrayList<>(ranges));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RangeFacetRequest && field.equals(((RangeFacetRequest) o).field)
+                && ranges.toString().equals(((RangeFacetRequest) o).ranges.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * field.hashCode() + ranges.toString().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return field + ranges;
+    }
+}
@@ -0,0 +1,84 @@
+package com.belo82.facetsearch.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bucket counts of a {@link RangeFacetRequest}.
+ *
+ * @author Peter Belko
+ */
+public class RangeFacetResult {
+    private final RangeFacetRequest request;
+    private final int total;
+    private final int[] counts;
+
+    /**
+     * @param total  number of documents falling to at least one bucket
+     * @param counts counts of the buckets in the order of the request
+     */
+    public RangeFacetResult(RangeFacetRequest request, int total, int[] counts) {
+        if (counts.length != request.ranges.size())
+            throw new IllegalArgumentException("expected " + request.ranges.size() + " counts, got: " + counts.length);
+
+        this.request = request;
+        this.total = total;
+        this.counts = counts.clone();
+    }
+
+    public RangeFacetRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * @return number of documents falling to at least one bucket, a document in overlapping buckets is counted once
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @param bucket index of the range in {@link RangeFacetRequest#ranges}
+     */
+    public int getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    /**
+     * @return counts of the buckets in the order of the request
+     */
+    public List<Integer> getCounts() {
+        List<Integer> result = new ArrayList<>(counts.length);
+        for (int count : counts)
+            result.add(count);
+
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @param results results of the same request, e.g. of several shards
+     * @return result with the totals and the bucket counts summed
+     */
+    public static RangeFacetResult sum(List<RangeFacetResult> results) {
+        RangeFacetRequest request = results.get(0).request;
+        int total = 0;
+        int[] counts = new int[request.ranges.size()];
+        for (RangeFacetResult result : results) {
+            total += result.total;
+            for (int i = 0; i < counts.length; i++)
+                counts[i] += result.counts[i];
+        }
+
+        return new RangeFacetResult(request, total, counts);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(request.field).append(" (").append(total).append(")");
+        for (int i = 0; i < counts.length; i++)
+            sb.append(i == 0 ? ": " : ", ").append(request.ranges.get(i).label).append("=").append(counts[i]);
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,170 @@
+package com.belo82.facetsearch.search;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.NumericUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Counts {@link RangeFacetRequest} buckets of all collected documents in a single pass, reading the values from
+ * numeric DocValues. Documents without a value of the field are not counted.<br/>
+ * <br/>
+ * Numeric DocValues of Lucene 4.2 read as <code>0</code> for a document without a value, and
+ * {@link org.apache.lucene.search.FieldCache#getDocsWithField} reports all documents of a field with DocValues. So
+ * documents of segments without DocValues of the field are skipped, and in a segment with DocValues the documents
+ * which have the field are told from the postings of the field, if it is also indexed; of a numeric field only the
+ * full precision terms are read, not the lower precision ones of the trie. These bits are computed once
+ * per segment core and field and kept as long as the segment is open, without any memory when all the documents
+ * have the field.
+ *
+ * @author Peter Belko
+ */
+public class RangeFacetsCollector extends Collector {
+    /** documents with a value, per segment core and field; <code>null</code> bits when all documents have one */
+    private static final Map<Object, Map<String, Bits>> docsWithFieldCache =
+            Collections.synchronizedMap(new WeakHashMap<Object, Map<String, Bits>>());
+
+    private final List<RangeFacetRequest> requests;
+    private final int[][] counts;
+    private final int[] totals;
+    private final NumericDocValues[] docValues;
+    private final Bits[] docsWithField;
+
+    public RangeFacetsCollector(List<RangeFacetRequest> requests) {
+        this.requests = requests;
+        this.counts = new int[requests.size()][];
+        this.totals = new int[requests.size()];
+        this.docValues = new NumericDocValues[requests.size()];
+        this.docsWithField = new Bits[requests.size()];
+
+        for (int i = 0; i < requests.size(); i++)
+            counts[i] = new int[requests.get(i).ranges.size()];
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) {
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) throws IOException {
+        for (int i = 0; i < requests.size(); i++) {
+            String field = requests.get(i).field;
+            docValues[i] = context.reader().getNumericDocValues(field);
+
+            docsWithField[i] = docValues[i] == null ? null : docsWithField(context.reader(), field);
+        }
+    }
+
+    /**
+     * @return documents of the segment which have the field, <code>null</code> if all of them have it or if it
+     *         cannot be told because the field is not indexed
+     */
+    private static Bits docsWithField(AtomicReader reader, String field) throws IOException {
+        Object core = reader.getCoreCacheKey();
+        Map<String, Bits> fields;
+        synchronized (docsWithFieldCache) {
+            fields = docsWithFieldCache.get(core);
+            if (fields == null) {
+                fields = Collections.synchronizedMap(new HashMap<String, Bits>());
+                docsWithFieldCache.put(core, fields);
+            }
+        }
+
+        if (!fields.containsKey(field))
+            fields.put(field, readDocsWithField(reader, field));
+        return fields.get(field);
+    }
+
+    private static Bits readDocsWithField(AtomicReader reader, String field) throws IOException {
+        FieldInfo fieldInfo = reader.getFieldInfos().fieldInfo(field);
+        Terms terms = reader.terms(field);
+        if (fieldInfo == null || !fieldInfo.isIndexed() || terms == null)
+            return null;
+
+        FixedBitSet bits = new FixedBitSet(reader.maxDoc());
+        TermsEnum termsEnum = fullPrecisionTerms(terms);
+        DocsEnum docs = null;
+        while (termsEnum.next() != null) {
+            docs = termsEnum.docs(null, docs, DocsEnum.FLAG_NONE);
+            for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc())
+                bits.set(doc);
+        }
+
+        return bits.cardinality() == reader.maxDoc() ? null : bits;
+    }
+
+    /**
+     * @return only the full precision terms of a trie encoded numeric field, every document with a value has exactly
+     *         one of them; all the terms of any other field
+     */
+    private static TermsEnum fullPrecisionTerms(Terms terms) throws IOException {
+        // full precision terms sort first, their shift byte is the lowest
+        BytesRef first = terms.iterator(null).next();
+        if (first == null)
+            return terms.iterator(null);
+
+        if (first.length == NumericUtils.BUF_SIZE_LONG && first.bytes[first.offset] == NumericUtils.SHIFT_START_LONG)
+            return NumericUtils.filterPrefixCodedLongs(terms.iterator(null));
+        if (first.length == NumericUtils.BUF_SIZE_INT && first.bytes[first.offset] == NumericUtils.SHIFT_START_INT)
+            return NumericUtils.filterPrefixCodedInts(terms.iterator(null));
+
+        return terms.iterator(null);
+    }
+
+    @Override
+    public void collect(int doc) {
+        for (int i = 0; i < docValues.length; i++) {
+            if (docValues[i] == null || (docsWithField[i] != null && !docsWithField[i].get(doc)))
+                continue;
+
+            long value = docValues[i].get(doc);
+            List<LongRange> ranges = requests.get(i).ranges;
+            int[] requestCounts = counts[i];
+            boolean counted = false;
+
+            for (int r = 0; r < requestCounts.length; r++) {
+                if (ranges.get(r).accept(value)) {
+                    requestCounts[r]++;
+                    counted = true;
+                }
+            }
+
+            if (counted)
+                totals[i]++;
+        }
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return true;
+    }
+
+    /**
+     * @return one result per request, in the order of the requests
+     */
+    public List<RangeFacetResult> getResults() {
+        List<RangeFacetResult> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++)
+            results.add(new RangeFacetResult(requests.get(i), totals[i], counts[i]));
+
+        return results;
+    }
+}
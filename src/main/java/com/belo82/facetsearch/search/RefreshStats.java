@@ -0,0 +1,96 @@
+package com.belo82.facetsearch.search;
+
+import org.apache.lucene.search.ReferenceManager;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects refresh latency and snapshot age of a {@link SearcherTaxonomyManager}.<br/>
+ * <br/>
+ * Refreshes are serialized by the manager, so the listener callbacks never run concurrently. Getters may be called
+ * from any thread.
+ *
+ * @author Peter Belko
+ */
+public class RefreshStats implements ReferenceManager.RefreshListener {
+    private final SearcherTaxonomyManager manager;
+
+    private long refreshStartNanos;
+    private volatile long refreshCount;
+    private volatile long reopenCount;
+    private volatile long lastRefreshNanos;
+    private volatile long maxRefreshNanos;
+    private volatile long totalRefreshNanos;
+
+    public RefreshStats(SearcherTaxonomyManager manager) {
+        this.manager = manager;
+    }
+
+    @Override
+    public void beforeRefresh() {
+        refreshStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void afterRefresh(boolean didRefresh) {
+        long took = System.nanoTime() - refreshStartNanos;
+
+        lastRefreshNanos = took;
+        totalRefreshNanos += took;
+        maxRefreshNanos = Math.max(maxRefreshNanos, took);
+        refreshCount++;
+        if (didRefresh)
+            reopenCount++;
+    }
+
+    /**
+     * @return number of refresh attempts, including those which found the snapshot current
+     */
+    public long getRefreshCount() {
+        return refreshCount;
+    }
+
+    /**
+     * @return number of refreshes which actually opened a new snapshot
+     */
+    public long getReopenCount() {
+        return reopenCount;
+    }
+
+    public long getLastRefreshMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastRefreshNanos);
+    }
+
+    public long getMaxRefreshMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxRefreshNanos);
+    }
+
+    public double getAvgRefreshMillis() {
+        long count = refreshCount;
+        return count == 0 ? 0 : totalRefreshNanos / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return how long ago the currently served snapshot has been opened
+     */
+    public long getSnapshotAgeMillis() {
+        SearcherTaxonomyManager.SearcherAndTaxonomy snapshot = manager.acquire();
+        try {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - snapshot.openedAtNanos);
+        } finally {
+            try {
+                manager.release(snapshot);
+            } catch (IOException e) {
+                throw new RuntimeException("cannot release searcher snapshot.", e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "refreshes=" + getRefreshCount() + ", reopens=" + getReopenCount()
+                + ", lastRefreshMs=" + getLastRefreshMillis() + ", maxRefreshMs=" + getMaxRefreshMillis()
+                + ", avgRefreshMs=" + getAvgRefreshMillis() + ", snapshotAgeMs=" + getSnapshotAgeMillis();
+    }
+}
@@ -0,0 +1,203 @@
+package com.belo82.facetsearch.search;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loads only the projected fields of search hits.<br/>
+ * <br/>
+ * Fields which have numeric DocValues (see <code>docValuesFields</code>) are read column-wise from DocValues. The rest
+ * is read with a {@link StoredFieldVisitor} which skips not requested fields and stops reading the document as soon
+ * as all the requested fields were visited. Stored fields of a document are visited in the order they were added,
+ * so a projection of fields added early (like <code>id</code> or <code>name</code>) decompresses only a small part
+ * of the document.<br/>
+ * <br/>
+ * Numeric DocValues of Lucene 4.2 read as <code>0</code> for a document without a value, e.g. a document indexed
+ * before the field had DocValues and merged with newer segments since. Postings cannot tell such a document from one
+ * with a value, so a <code>0</code> is read from the stored field instead, which the DocValues fields must have
+ * as well; a document without the field then has no value.
+ *
+ * @author Peter Belko
+ */
+public class ResultLoader {
+    private final Set<String> docValuesFields;
+
+    /**
+     * @param docValuesFields fields indexed also as numeric DocValues, and stored
+     */
+    public ResultLoader(Set<String> docValuesFields) {
+        this.docValuesFields = Collections.unmodifiableSet(docValuesFields);
+    }
+
+    public List<ResultRow> load(IndexSearcher searcher, ScoreDoc[] scoreDocs, Projection projection)
+            throws IOException {
+        List<AtomicReaderContext> leaves = searcher.getIndexReader().leaves();
+        List<ResultRow> result = new ArrayList<>(scoreDocs.length);
+
+        for (ScoreDoc scoreDoc : scoreDocs)
+            result.add(load(leaves, scoreDoc.doc, scoreDoc.score, projection));
+
+        return result;
+    }
+
+    /**
+     * Loads the hits of several searches on the same searcher at once. The hits of all searches are loaded in index
+     * order, so the stored fields are read forward only, and a document hit by several searches is read once with
+     * the union of their projections.
+     *
+     * @param hits        hits of every search
+     * @param projections projection of every search
+     * @return rows of every search, in the order of its hits
+     */
+    public List<List<ResultRow>> loadAll(IndexSearcher searcher, List<ScoreDoc[]> hits, List<Projection> projections)
+            throws IOException {
+        List<AtomicReaderContext> leaves = searcher.getIndexReader().leaves();
+        List<ResultRow[]> rows = new ArrayList<>(hits.size());
+        List<int[]> order = new ArrayList<>();
+        for (int search = 0; search < hits.size(); search++) {
+            ScoreDoc[] scoreDocs = hits.get(search);
+            rows.add(new ResultRow[scoreDocs.length]);
+            for (int i = 0; i < scoreDocs.length; i++)
+                order.add(new int[]{scoreDocs[i].doc, search, i});
+        }
+        Collections.sort(order, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return a[0] < b[0] ? -1 : (a[0] == b[0] ? 0 : 1);
+            }
+        });
+
+        for (int from = 0; from < order.size(); ) {
+            int doc = order.get(from)[0];
+            int to = from + 1;
+            while (to < order.size() && order.get(to)[0] == doc)
+                to++;
+
+            if (to - from == 1) {
+                int[] hit = order.get(from);
+                rows.get(hit[1])[hit[2]] = load(leaves, doc, hits.get(hit[1])[hit[2]].score, projections.get(hit[1]));
+            } else {
+                Set<String> fields = new LinkedHashSet<>();
+                for (int i = from; i < to; i++)
+                    fields.addAll(projections.get(order.get(i)[1]).getFields());
+                ResultRow union = load(leaves, doc, 0, Projection.of(fields.toArray(new String[fields.size()])));
+
+                for (int i = from; i < to; i++) {
+                    int[] hit = order.get(i);
+                    rows.get(hit[1])[hit[2]] = union.project(projections.get(hit[1]), hits.get(hit[1])[hit[2]].score);
+                }
+            }
+            from = to;
+        }
+
+        List<List<ResultRow>> result = new ArrayList<>(rows.size());
+        for (ResultRow[] searchRows : rows)
+            result.add(Arrays.asList(searchRows));
+
+        return result;
+    }
+
+    private ResultRow load(List<AtomicReaderContext> leaves, int doc, float score, Projection projection)
+            throws IOException {
+        ResultRow row = new ResultRow(projection, doc, score);
+        AtomicReaderContext leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+        int segmentDoc = doc - leaf.docBase;
+
+        ProjectionVisitor visitor = null;
+        for (int i = 0; i < projection.size(); i++) {
+            String field = projection.getFields().get(i);
+            NumericDocValues docValues = docValuesFields.contains(field)
+                    ? leaf.reader().getNumericDocValues(field) : null;
+
+            long value = docValues == null ? 0 : docValues.get(segmentDoc);
+            if (value != 0) {
+                row.add(i, value);
+            } else {
+                if (visitor == null)
+                    visitor = new ProjectionVisitor(row, projection);
+                visitor.require(field);
+            }
+        }
+
+        if (visitor != null)
+            leaf.reader().document(segmentDoc, visitor);
+
+        return row;
+    }
+
+    /**
+     * Collects requested stored fields into the {@link ResultRow}, stops after all of them have been visited.
+     */
+    private static class ProjectionVisitor extends StoredFieldVisitor {
+        private final ResultRow row;
+        private final Projection projection;
+        private final List<String> required = new ArrayList<>(4);
+        private int pending;
+        private String current;
+
+        ProjectionVisitor(ResultRow row, Projection projection) {
+            this.row = row;
+            this.projection = projection;
+        }
+
+        void require(String field) {
+            required.add(field);
+            pending++;
+        }
+
+        @Override
+        public Status needsField(FieldInfo fieldInfo) throws IOException {
+            // a multi-valued field is complete once another field follows it
+            if (current != null && !current.equals(fieldInfo.name)) {
+                pending--;
+                current = null;
+            }
+
+            if (required.contains(fieldInfo.name)) {
+                current = fieldInfo.name;
+                return Status.YES;
+            }
+
+            return pending == 0 ? Status.STOP : Status.NO;
+        }
+
+        @Override
+        public void stringField(FieldInfo fieldInfo, String value) {
+            row.add(projection.indexOf(fieldInfo.name), value);
+        }
+
+        @Override
+        public void intField(FieldInfo fieldInfo, int value) {
+            row.add(projection.indexOf(fieldInfo.name), value);
+        }
+
+        @Override
+        public void longField(FieldInfo fieldInfo, long value) {
+            row.add(projection.indexOf(fieldInfo.name), value);
+        }
+
+        @Override
+        public void floatField(FieldInfo fieldInfo, float value) {
+            row.add(projection.indexOf(fieldInfo.name), value);
+        }
+
+        @Override
+        public void doubleField(FieldInfo fieldInfo, double value) {
+            row.add(projection.indexOf(fieldInfo.name), value);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.belo82.facetsearch.search;
+
+import java.util.List;
+
+/**
+ * One page of hits returned by the paging search methods of {@link com.belo82.facetsearch.Indexer}.
+ *
+ * @author Peter Belko
+ */
+public class ResultPage {
+    private final List<ResultRow> rows;
+    private final int totalHits;
+    private final String nextCursor;
+
+    public ResultPage(List<ResultRow> rows, int totalHits, String nextCursor) {
+        this.rows = rows;
+        this.totalHits = totalHits;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<ResultRow> getRows() {
+        return rows;
+    }
+
+    /**
+     * @return number of all hits of the query in the snapshot which serves the pages
+     */
+    public int getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * @return opaque cursor of the next page, <code>null</code> if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
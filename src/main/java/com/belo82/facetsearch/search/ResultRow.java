@@ -0,0 +1,124 @@
+package com.belo82.facetsearch.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Single hit holding only the fields of its {@link Projection}, a lightweight alternative to
+ * {@link org.apache.lucene.document.Document}.<br/>
+ * <br/>
+ * Values keep the type they were stored with, i.e. {@link String}, {@link Integer} or {@link Long}. Numbers read
+ * from DocValues are always {@link Long}, use {@link #getLong(String)} when the source does not matter.
+ *
+ * @author Peter Belko
+ */
+public class ResultRow {
+    private final Projection projection;
+    private final int doc;
+    private final float score;
+    // single value, or a List for multi-valued fields
+    private final Object[] values;
+
+    ResultRow(Projection projection, int doc, float score) {
+        this.projection = projection;
+        this.doc = doc;
+        this.score = score;
+        this.values = new Object[projection.size()];
+    }
+
+    void add(int index, Object value) {
+        Object current = values[index];
+        if (current == null) {
+            values[index] = value;
+        } else if (current instanceof MultiValue) {
+            ((MultiValue) current).add(value);
+        } else {
+            MultiValue multi = new MultiValue();
+            multi.add(current);
+            multi.add(value);
+            values[index] = multi;
+        }
+    }
+
+    /**
+     * @return row of the same document with the values of the fields of the projection, which must be a subset of
+     *         the projection of this row
+     */
+    ResultRow project(Projection projection, float score) {
+        ResultRow row = new ResultRow(projection, doc, score);
+        for (int i = 0; i < projection.size(); i++)
+            row.values[i] = values[this.projection.indexOf(projection.getFields().get(i))];
+
+        return row;
+    }
+
+    public int getDoc() {
+        return doc;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    public Projection getProjection() {
+        return projection;
+    }
+
+    /**
+     * @return first value of the field, <code>null</code> if the hit does not have it
+     * @throws IllegalArgumentException if the field is not part of the projection
+     */
+    public Object get(String field) {
+        Object value = values[checkedIndex(field)];
+        return value instanceof MultiValue ? ((MultiValue) value).get(0) : value;
+    }
+
+    public String getString(String field) {
+        Object value = get(field);
+        return value == null ? null : value.toString();
+    }
+
+    public Long getLong(String field) {
+        Object value = get(field);
+        return value == null ? null : ((Number) value).longValue();
+    }
+
+    /**
+     * @return all values of a multi-valued field, in the order they were indexed
+     */
+    public List<Object> getAll(String field) {
+        Object value = values[checkedIndex(field)];
+        if (value == null)
+            return Collections.emptyList();
+        if (value instanceof MultiValue)
+            return Collections.unmodifiableList((MultiValue) value);
+
+        return Collections.singletonList(value);
+    }
+
+    private int checkedIndex(String field) {
+        int index = projection.indexOf(field);
+        if (index < 0)
+            throw new IllegalArgumentException("field " + field + " is not part of the projection " + projection);
+
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("ResultRow{doc=").append(doc).append(", score=").append(score);
+        for (int i = 0; i < values.length; i++)
+            sb.append(", ").append(projection.getFields().get(i)).append('=').append(values[i]);
+
+        return sb.append('}').toString();
+    }
+
+    private static class MultiValue extends ArrayList<Object> {
+        private static final long serialVersionUID = 1L;
+
+        MultiValue() {
+            super(4);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.belo82.facetsearch.search;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time limit and cancellation flag of one search, checked by {@link DeadlineCollector} while hits are collected.
+ * A deadline is shared by all the slices of a parallel search, so expiry or cancellation stops all of them.
+ *
+ * @author Peter Belko
+ */
+public class SearchDeadline {
+    private final long timeoutMillis;
+    private final long deadlineNanos;
+    private volatile boolean cancelled;
+
+    /**
+     * @param timeoutMillis time from now the search may take
+     */
+    public SearchDeadline(long timeoutMillis) {
+        if (timeoutMillis < 1)
+            throw new IllegalArgumentException("timeoutMillis must be > 0, got: " + timeoutMillis);
+
+        this.timeoutMillis = timeoutMillis;
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Stops the search at its next check, it then fails with {@link CancellationException}.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isExpired() {
+        return System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * @throws CancellationException  if the search was cancelled
+     * @throws SearchTimeoutException if the deadline has passed
+     */
+    public void check() {
+        if (cancelled)
+            throw new CancellationException("search cancelled.");
+        if (isExpired())
+            throw new SearchTimeoutException(timeoutMillis);
+    }
+}
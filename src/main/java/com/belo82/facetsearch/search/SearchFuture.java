@@ -0,0 +1,33 @@
+package com.belo82.facetsearch.search;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Result of an asynchronous search. {@link #cancel(boolean)} stops a running search through its
+ * {@link SearchDeadline} instead of interrupting the thread: an interrupt during a read closes the file channels of
+ * {@link org.apache.lucene.store.NIOFSDirectory} and breaks the index for every other search.
+ *
+ * @author Peter Belko
+ */
+public class SearchFuture<V> extends FutureTask<V> {
+    private final SearchDeadline deadline;
+
+    public SearchFuture(Callable<V> search, SearchDeadline deadline) {
+        super(search);
+        this.deadline = deadline;
+    }
+
+    public SearchDeadline getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @param mayInterruptIfRunning ignored, a running search is never interrupted
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        deadline.cancel();
+        return super.cancel(false);
+    }
+}
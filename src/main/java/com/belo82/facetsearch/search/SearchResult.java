@@ -0,0 +1,82 @@
+package com.belo82.facetsearch.search;
+
+import org.apache.lucene.facet.search.FacetResult;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hits and facet counts of a faceted search.
+ *
+ * @author Peter Belko
+ */
+public class SearchResult {
+    private final List<ResultRow> rows;
+    private final int totalHits;
+    private final List<FacetResult> facets;
+    private final List<RangeFacetResult> rangeFacets;
+    private final boolean partial;
+    private final boolean totalHitsExact;
+
+    public SearchResult(List<ResultRow> rows, int totalHits, List<FacetResult> facets) {
+        this(rows, totalHits, facets, Collections.<RangeFacetResult>emptyList(), false);
+    }
+
+    public SearchResult(List<ResultRow> rows, int totalHits, List<FacetResult> facets,
+                        List<RangeFacetResult> rangeFacets, boolean partial) {
+        this(rows, totalHits, facets, rangeFacets, partial, true);
+    }
+
+    public SearchResult(List<ResultRow> rows, int totalHits, List<FacetResult> facets,
+                        List<RangeFacetResult> rangeFacets, boolean partial, boolean totalHitsExact) {
+        this.rows = rows;
+        this.totalHits = totalHits;
+        this.facets = facets;
+        this.rangeFacets = rangeFacets;
+        this.partial = partial;
+        this.totalHitsExact = totalHitsExact;
+    }
+
+    public List<ResultRow> getRows() {
+        return rows;
+    }
+
+    /**
+     * @return number of matching documents, only a lower bound unless {@link #isTotalHitsExact()}
+     */
+    public int getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * @return facet results, may be shared with other searches through {@link FacetCache} so they must not be
+     *         modified
+     */
+    public List<FacetResult> getFacets() {
+        return facets;
+    }
+
+    /**
+     * @return counts of the {@link RangeFacetRequest}s of the search, in the order of the requests; may be shared
+     *         through {@link FacetCache} as well
+     */
+    public List<RangeFacetResult> getRangeFacets() {
+        return rangeFacets;
+    }
+
+    /**
+     * @return <code>true</code> if the deadline passed before the search finished, hits, total hits and facet counts
+     *         may then cover only part of the matching documents and facets may be missing
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * @return <code>false</code> if a search sorted newest first stopped early in sorted segments, see
+     *         {@link SortedSegmentSearch}, {@link #getTotalHits()} is then only a lower bound while the hits are exact
+     */
+    public boolean isTotalHitsExact() {
+        return totalHitsExact;
+    }
+}
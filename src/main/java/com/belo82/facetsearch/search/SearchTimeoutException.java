@@ -0,0 +1,15 @@
+package com.belo82.facetsearch.search;
+
+/**
+ * Thrown from inside the collection of a search whose {@link SearchDeadline} has passed. The search catches it and
+ * returns what was collected so far as a partial result, see {@link SearchResult#isPartial()}.
+ *
+ * @author Peter Belko
+ */
+public class SearchTimeoutException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public SearchTimeoutException(long timeoutMillis) {
+        super("search did not finish within " + timeoutMillis + "ms.");
+    }
+}
@@ -0,0 +1,108 @@
+package com.belo82.facetsearch.search;
+
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyReader;
+import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.store.AlreadyClosedException;
+
+import java.io.IOException;
+
+/**
+ * Manages near-real-time reopen of an {@link IndexSearcher} together with the matching {@link TaxonomyReader}.<br/>
+ * <br/>
+ * Both readers are reference counted as a single {@link SearcherAndTaxonomy} snapshot, so a caller which acquired
+ * a snapshot always sees the taxonomy ordinals of all categories indexed in its searcher. Every acquired snapshot
+ * must be released with {@link #release(Object)}.
+ * <p>
+ * Lucene 4.2 does not ship this class yet (it comes with the facet module in later versions), so this is
+ * a small copy of the same idea on top of {@link ReferenceManager}.
+ * </p>
+ *
+ * @author Peter Belko
+ */
+public class SearcherTaxonomyManager extends ReferenceManager<SearcherTaxonomyManager.SearcherAndTaxonomy> {
+
+    /**
+     * Holds a matched pair of {@link IndexSearcher} and {@link DirectoryTaxonomyReader}.
+     */
+    public static class SearcherAndTaxonomy {
+        public final IndexSearcher searcher;
+        public final DirectoryTaxonomyReader taxonomyReader;
+        /** time (see {@link System#nanoTime()}) when this snapshot was opened */
+        public final long openedAtNanos;
+
+        public SearcherAndTaxonomy(IndexSearcher searcher, DirectoryTaxonomyReader taxonomyReader) {
+            this.searcher = searcher;
+            this.taxonomyReader = taxonomyReader;
+            this.openedAtNanos = System.nanoTime();
+        }
+
+        public DirectoryReader getIndexReader() {
+            return (DirectoryReader) searcher.getIndexReader();
+        }
+    }
+
+    private final SearcherFactory searcherFactory;
+
+    /**
+     * Creates near-real-time manager from the given writers.
+     */
+    public SearcherTaxonomyManager(IndexWriter writer, boolean applyAllDeletes, SearcherFactory searcherFactory,
+                                   DirectoryTaxonomyWriter taxoWriter) throws IOException {
+        if (searcherFactory == null)
+            searcherFactory = new SearcherFactory();
+
+        this.searcherFactory = searcherFactory;
+        DirectoryTaxonomyReader taxoReader = new DirectoryTaxonomyReader(taxoWriter);
+        current = new SearcherAndTaxonomy(
+                searcherFactory.newSearcher(DirectoryReader.open(writer, applyAllDeletes)), taxoReader);
+    }
+
+    @Override
+    protected void decRef(SearcherAndTaxonomy ref) throws IOException {
+        ref.searcher.getIndexReader().decRef();
+        // taxonomy reader is decRef'd after the index reader, the same order as in which they were opened
+        ref.taxonomyReader.decRef();
+    }
+
+    @Override
+    protected boolean tryIncRef(SearcherAndTaxonomy ref) {
+        if (ref.searcher.getIndexReader().tryIncRef()) {
+            try {
+                ref.taxonomyReader.incRef();
+                return true;
+            } catch (AlreadyClosedException e) {
+                try {
+                    ref.searcher.getIndexReader().decRef();
+                } catch (IOException ioe) {
+                    throw new RuntimeException("cannot release index reader.", ioe);
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected SearcherAndTaxonomy refreshIfNeeded(SearcherAndTaxonomy ref) throws IOException {
+        // index reader must be reopened first, taxonomy is append only so the newer taxonomy reader
+        // always contains all categories referenced from the new index reader
+        final IndexReader r = ref.searcher.getIndexReader();
+        final IndexReader newReader = DirectoryReader.openIfChanged((DirectoryReader) r);
+        if (newReader == null)
+            return null;
+
+        DirectoryTaxonomyReader taxoReader = TaxonomyReader.openIfChanged(ref.taxonomyReader);
+        if (taxoReader == null) {
+            ref.taxonomyReader.incRef();
+            taxoReader = ref.taxonomyReader;
+        }
+
+        return new SearcherAndTaxonomy(searcherFactory.newSearcher(newReader), taxoReader);
+    }
+}
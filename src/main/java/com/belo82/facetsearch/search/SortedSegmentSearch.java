@@ -0,0 +1,211 @@
+package com.belo82.facetsearch.search;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.Weight;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Top hits sorted by a numeric field in descending order, which stop collecting a segment as soon as it has given
+ * the top hits, if the documents of the segment are stored in that order.<br/>
+ * <br/>
+ * In a segment sorted by the field the first <code>n</code> matching documents in index order are its top
+ * <code>n</code> hits, ties included, as ties are broken by index order. The cost of such a segment depends on how
+ * soon <code>n</code> matches are found, not on how many documents match. Whether a segment is sorted is checked
+ * from the numeric DocValues of the field the first time the segment is searched and cached per segment core, so
+ * segments which lost the order, e.g. when they were merged with updated documents, are still searched correctly,
+ * just without stopping early. Lucene 4.2 cannot sort segments itself, the indexer keeps them sorted by adding the
+ * documents in order, see {@link com.belo82.facetsearch.IndexerConfig#setSortedByFounded(boolean)}.<br/>
+ * <br/>
+ * The total hits of the result only count the collected documents, so they are a lower bound when some segment has
+ * stopped early, see {@link SortedTopDocs#isTotalHitsExact()}.
+ *
+ * @author Peter Belko
+ */
+public class SortedSegmentSearch {
+    private final String field;
+    private final Sort sort;
+    private final Map<Object, Boolean> sortedCores = Collections.synchronizedMap(new WeakHashMap<Object, Boolean>());
+    private final AtomicLong terminatedSegments = new AtomicLong();
+    private final AtomicLong collectedSegments = new AtomicLong();
+
+    /**
+     * @param field field with numeric DocValues, which the segments are sorted by in descending order
+     */
+    public SortedSegmentSearch(String field) {
+        this.field = field;
+        this.sort = new Sort(new SortField(field, SortField.Type.LONG, true), SortField.FIELD_DOC);
+    }
+
+    /**
+     * @return the only sort this search can serve, descending by the field, ties in index order
+     */
+    public Sort getSort() {
+        return sort;
+    }
+
+    /**
+     * @param numHits at least <code>1</code>
+     */
+    public SortedTopDocs search(IndexSearcher searcher, Query query, int numHits) throws IOException {
+        if (numHits < 1)
+            throw new IllegalArgumentException("numHits must be >= 1, got: " + numHits);
+
+        boolean terminated = false;
+        TopFieldCollector collector = TopFieldCollector.create(sort, numHits, true, false, false, true);
+        Weight weight = searcher.createNormalizedWeight(query);
+
+        for (AtomicReaderContext leaf : searcher.getIndexReader().leaves()) {
+            collector.setNextReader(leaf);
+            // documents in index order, so the first hits of a sorted segment are its top hits
+            Scorer scorer = weight.scorer(leaf, true, true, leaf.reader().getLiveDocs());
+            if (scorer == null)
+                continue;
+
+            if (!isSorted(leaf.reader())) {
+                scorer.score(collector);
+                collectedSegments.incrementAndGet();
+                continue;
+            }
+
+            try {
+                scorer.score(new TerminatingCollector(collector, numHits));
+                collectedSegments.incrementAndGet();
+            } catch (SegmentTerminated e) {
+                terminatedSegments.incrementAndGet();
+                terminated = true;
+            }
+        }
+
+        TopDocs topDocs = collector.topDocs();
+        return new SortedTopDocs(topDocs.totalHits, topDocs.scoreDocs, sort.getSort(), topDocs.getMaxScore(),
+                !terminated);
+    }
+
+    /**
+     * @return whether the values of the field do not increase in index order
+     */
+    public boolean isSorted(AtomicReader reader) throws IOException {
+        Object core = reader.getCoreCacheKey();
+        Boolean sorted = sortedCores.get(core);
+        if (sorted == null) {
+            sorted = checkSorted(reader);
+            sortedCores.put(core, sorted);
+        }
+
+        return sorted;
+    }
+
+    private boolean checkSorted(AtomicReader reader) throws IOException {
+        NumericDocValues values = reader.getNumericDocValues(field);
+        if (values == null)
+            return false;
+
+        long previous = Long.MAX_VALUE;
+        for (int doc = 0; doc < reader.maxDoc(); doc++) {
+            long value = values.get(doc);
+            if (value > previous)
+                return false;
+            previous = value;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return number of segment searches which stopped early
+     */
+    public long getTerminatedSegments() {
+        return terminatedSegments.get();
+    }
+
+    /**
+     * @return number of segment searches which collected all the matching documents
+     */
+    public long getCollectedSegments() {
+        return collectedSegments.get();
+    }
+
+    /**
+     * Top hits which know whether their total hits count all the matching documents.
+     */
+    public static class SortedTopDocs extends TopFieldDocs {
+        private final boolean totalHitsExact;
+
+        SortedTopDocs(int totalHits, ScoreDoc[] scoreDocs, SortField[] fields, float maxScore,
+                      boolean totalHitsExact) {
+            super(totalHits, scoreDocs, fields, maxScore);
+            this.totalHitsExact = totalHitsExact;
+        }
+
+        /**
+         * @return <code>false</code> if some segment stopped early, the total hits are then only a lower bound
+         */
+        public boolean isTotalHitsExact() {
+            return totalHitsExact;
+        }
+    }
+
+    /**
+     * Signals that a segment has given all its top hits.
+     */
+    private static class SegmentTerminated extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SegmentTerminated() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Passes the first <code>numHits</code> documents of a segment to the delegate, then stops the segment.
+     */
+    private static class TerminatingCollector extends Collector {
+        private final Collector delegate;
+        private final int numHits;
+        private int collected;
+
+        TerminatingCollector(Collector delegate, int numHits) {
+            this.delegate = delegate;
+            this.numHits = numHits;
+        }
+
+        @Override
+        public void setScorer(Scorer scorer) throws IOException {
+            delegate.setScorer(scorer);
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            delegate.collect(doc);
+            if (++collected >= numHits)
+                throw new SegmentTerminated();
+        }
+
+        @Override
+        public void setNextReader(AtomicReaderContext context) throws IOException {
+            delegate.setNextReader(context);
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder() {
+            return false;
+        }
+    }
+}
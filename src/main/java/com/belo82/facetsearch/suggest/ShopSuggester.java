@@ -0,0 +1,284 @@
+package com.belo82.facetsearch.suggest;
+
+import com.belo82.facetsearch.search.SearcherTaxonomyManager;
+import com.belo82.facetsearch.search.SearcherTaxonomyManager.SearcherAndTaxonomy;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.search.spell.TermFreqIterator;
+import org.apache.lucene.search.suggest.Lookup;
+import org.apache.lucene.search.suggest.fst.WFSTCompletionLookup;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Type-ahead suggestions of shop codes and names.<br/>
+ * <br/>
+ * Suggestions are served from in-memory weighted FSTs ({@link WFSTCompletionLookup}), so a lookup only walks
+ * the prefix in the automaton and does not depend on how many terms match it, unlike a
+ * {@link org.apache.lucene.search.PrefixQuery}. Keys are lowercased, so the lookup is case insensitive and returns
+ * lowercased suggestions. Every suggestion is weighted by the founding date of the newest shop with that key.
+ * <p>
+ * The FSTs are built from a searcher snapshot. {@link #scheduleRebuild()} rebuilds them in the background, repeated
+ * requests are coalesced into one build, and the old FSTs are served until the new ones are ready.
+ * </p>
+ *
+ * @author Peter Belko
+ */
+public class ShopSuggester implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ShopSuggester.class);
+
+    public static class Suggestion {
+        public final String text;
+        public final long weight;
+
+        public Suggestion(String text, long weight) {
+            this.text = text;
+            this.weight = weight;
+        }
+
+        @Override
+        public String toString() {
+            return text + "/" + weight;
+        }
+    }
+
+    /**
+     * Immutable pair of lookups built from the same snapshot.
+     */
+    private static class Lookups {
+        final WFSTCompletionLookup codes;
+        final WFSTCompletionLookup names;
+
+        Lookups(WFSTCompletionLookup codes, WFSTCompletionLookup names) {
+            this.codes = codes;
+            this.names = names;
+        }
+    }
+
+    private final SearcherTaxonomyManager searcherManager;
+    private final String codeField;
+    private final String nameField;
+    private final String weightField;
+    private final SuggesterStats stats = new SuggesterStats();
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "shop-suggester");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private volatile Lookups lookups = new Lookups(null, null);
+
+    /**
+     * @param weightField numeric DocValues field used as the weight, e.g. founding date as <code>yyyyMMdd</code>
+     */
+    public ShopSuggester(SearcherTaxonomyManager searcherManager, String codeField, String nameField,
+                         String weightField) {
+        this.searcherManager = searcherManager;
+        this.codeField = codeField;
+        this.nameField = nameField;
+        this.weightField = weightField;
+    }
+
+    public List<Suggestion> suggestCodes(String prefix, int num) {
+        return lookup(lookups.codes, prefix, num);
+    }
+
+    public List<Suggestion> suggestNames(String prefix, int num) {
+        return lookup(lookups.names, prefix, num);
+    }
+
+    private static List<Suggestion> lookup(Lookup lookup, String prefix, int num) {
+        if (lookup == null || prefix.isEmpty())
+            return Collections.emptyList();
+
+        List<Lookup.LookupResult> results = lookup.lookup(prefix.toLowerCase(), false, num);
+        List<Suggestion> suggestions = new ArrayList<>(results.size());
+        for (Lookup.LookupResult result : results)
+            suggestions.add(new Suggestion(result.key.toString(), result.value));
+
+        return suggestions;
+    }
+
+    /**
+     * Rebuilds the suggester in the background from the latest snapshot, returns immediately.
+     */
+    public void scheduleRebuild() {
+        if (!rebuildPending.compareAndSet(false, true))
+            return;
+
+        builder.execute(new Runnable() {
+            @Override
+            public void run() {
+                rebuildPending.set(false);
+                try {
+                    rebuild();
+                } catch (Exception e) {
+                    // a build interrupted by close() races with the searcher manager being closed
+                    if (builder.isShutdown())
+                        logger.debug("suggester rebuild aborted by close.", e);
+                    else
+                        logger.error("cannot rebuild suggester.", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Rebuilds the suggester from the current snapshot, blocks until it is done.
+     */
+    public synchronized void rebuild() throws IOException {
+        long start = System.nanoTime();
+
+        Map<String, Long> codes = new HashMap<>();
+        Map<String, Long> names = new HashMap<>();
+        SearcherAndTaxonomy snapshot = searcherManager.acquire();
+        try {
+            collectKeys(snapshot.searcher.getIndexReader(), codes, names);
+        } finally {
+            searcherManager.release(snapshot);
+        }
+
+        Lookups newLookups = new Lookups(build(codes), build(names));
+        lookups = newLookups;
+
+        stats.built(System.nanoTime() - start, codes.size(), names.size(),
+                sizeInBytes(newLookups.codes) + sizeInBytes(newLookups.names));
+        logger.debug("suggester rebuilt: {}", stats);
+    }
+
+    private void collectKeys(IndexReader reader, final Map<String, Long> codes, final Map<String, Long> names)
+            throws IOException {
+        for (AtomicReaderContext leaf : reader.leaves()) {
+            AtomicReader leafReader = leaf.reader();
+            Bits liveDocs = leafReader.getLiveDocs();
+            NumericDocValues weights = leafReader.getNumericDocValues(weightField);
+
+            for (int doc = 0; doc < leafReader.maxDoc(); doc++) {
+                if (liveDocs != null && !liveDocs.get(doc))
+                    continue;
+
+                final long weight = weights == null ? 0 : weights.get(doc);
+                leafReader.document(doc, new StoredFieldVisitor() {
+                    private int seen;
+
+                    @Override
+                    public Status needsField(FieldInfo fieldInfo) {
+                        if (seen == 2)
+                            return Status.STOP;
+                        return fieldInfo.name.equals(codeField) || fieldInfo.name.equals(nameField)
+                                ? Status.YES : Status.NO;
+                    }
+
+                    @Override
+                    public void stringField(FieldInfo fieldInfo, String value) {
+                        seen++;
+                        putMax(fieldInfo.name.equals(codeField) ? codes : names, value.toLowerCase(), weight);
+                    }
+                });
+            }
+        }
+    }
+
+    private static void putMax(Map<String, Long> keys, String key, long weight) {
+        Long current = keys.get(key);
+        if (current == null || current < weight)
+            keys.put(key, weight);
+    }
+
+    private static WFSTCompletionLookup build(Map<String, Long> keys) throws IOException {
+        if (keys.isEmpty())
+            return null;
+
+        WFSTCompletionLookup lookup = new WFSTCompletionLookup(true);
+        lookup.build(new MapTermFreqIterator(keys));
+        return lookup;
+    }
+
+    private static long sizeInBytes(WFSTCompletionLookup lookup) throws IOException {
+        if (lookup == null)
+            return 0;
+
+        CountingOutputStream out = new CountingOutputStream();
+        lookup.store(out);
+        return out.count;
+    }
+
+    public SuggesterStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        builder.shutdownNow();
+    }
+
+    private static class MapTermFreqIterator implements TermFreqIterator {
+        private final Iterator<Map.Entry<String, Long>> entries;
+        private final BytesRef spare = new BytesRef();
+        private long weight;
+
+        MapTermFreqIterator(Map<String, Long> keys) {
+            this.entries = keys.entrySet().iterator();
+        }
+
+        @Override
+        public long weight() {
+            return weight;
+        }
+
+        @Override
+        public BytesRef next() {
+            if (!entries.hasNext())
+                return null;
+
+            Map.Entry<String, Long> entry = entries.next();
+            weight = entry.getValue();
+            spare.copyChars(entry.getKey());
+            return spare;
+        }
+
+        @Override
+        public Comparator<BytesRef> getComparator() {
+            return null;
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.belo82.facetsearch.suggest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Build time and memory statistics of {@link ShopSuggester}.
+ *
+ * @author Peter Belko
+ */
+public class SuggesterStats {
+    private long builds;
+    private long lastBuildNanos;
+    private int codes;
+    private int names;
+    private long sizeInBytes;
+
+    synchronized void built(long buildNanos, int codes, int names, long sizeInBytes) {
+        this.builds++;
+        this.lastBuildNanos = buildNanos;
+        this.codes = codes;
+        this.names = names;
+        this.sizeInBytes = sizeInBytes;
+    }
+
+    public synchronized long getBuilds() {
+        return builds;
+    }
+
+    public synchronized long getLastBuildMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastBuildNanos);
+    }
+
+    /**
+     * @return number of distinct codes in the suggester
+     */
+    public synchronized int getCodes() {
+        return codes;
+    }
+
+    /**
+     * @return number of distinct names in the suggester
+     */
+    public synchronized int getNames() {
+        return names;
+    }
+
+    /**
+     * @return size of both FSTs, measured as their serialized size
+     */
+    public synchronized long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "builds=" + builds + ", lastBuildMs=" + getLastBuildMillis() + ", codes=" + codes + ", names=" + names
+                + ", sizeKb=" + sizeInBytes / 1024;
+    }
+}
@@ -0,0 +1,132 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.metrics.QueryTimer;
+import com.belo82.facetsearch.search.FacetedQuery;
+import com.belo82.facetsearch.search.Projection;
+import com.belo82.facetsearch.search.RangeFacetRequest;
+import com.belo82.facetsearch.search.SearchDeadline;
+import com.belo82.facetsearch.search.SearchFuture;
+import com.belo82.facetsearch.search.SearchResult;
+import com.belo82.facetsearch.search.SearcherTaxonomyManager.SearcherAndTaxonomy;
+import org.apache.lucene.facet.search.FacetResultNode;
+import org.apache.lucene.facet.taxonomy.CategoryPath;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+public class AsyncSearchShouldTest {
+    private static final Projection IDS = Projection.of(Indexer.ID);
+
+    private final List<Runnable> queued = new ArrayList<>();
+    private Indexer indexer;
+    private Indexer queueing;
+
+    @Before
+    public void init() throws IOException, ParseException {
+        indexer = new Indexer();
+        indexer.createIndex(Main.readData());
+
+        // searches of this indexer run only when the test says so
+        queueing = new Indexer(new IndexerConfig().setAsyncExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queued.add(command);
+            }
+        }));
+        queueing.createIndex(Main.readData());
+    }
+
+    @After
+    public void close() throws IOException {
+        indexer.close();
+        queueing.close();
+    }
+
+    @Test
+    public void returnSameResultAsBlockingSearch() throws Exception {
+        FacetedQuery query = new FacetedQuery("*:*", IDS).drillDown(Indexer.DEFAULT_DRILL_DOWN);
+
+        SearchResult expected = indexer.doFacetedSearch(query);
+        SearchResult actual = indexer.doFacetedSearchAsync(query, 10000).get();
+
+        Assert.assertFalse(actual.isPartial());
+        Assert.assertEquals(expected.getTotalHits(), actual.getTotalHits());
+        Assert.assertEquals(categoryCount(expected), categoryCount(actual));
+        Assert.assertEquals(4, indexer.doPrefixSearchAsync("6", IDS, 10000).get().getRows().size());
+    }
+
+    @Test
+    public void returnPartialResultAfterDeadline() throws Exception {
+        SearchFuture<SearchResult> future = queueing.doFacetedSearchAsync(new FacetedQuery("*:*", IDS), 1);
+        Thread.sleep(5);
+        queued.get(0).run();
+
+        SearchResult partial = future.get();
+        Assert.assertTrue(partial.isPartial());
+        Assert.assertEquals(0, partial.getTotalHits());
+
+        // partial facet counts are not cached
+        SearchResult complete = queueing.doFacetedSearch(new FacetedQuery("*:*", IDS));
+        Assert.assertFalse(complete.isPartial());
+        Assert.assertEquals(11, complete.getTotalHits());
+        Assert.assertEquals(11, categoryCount(complete));
+    }
+
+    @Test
+    public void notRunCancelledSearch() throws Exception {
+        SearchFuture<SearchResult> future = queueing.doPrefixSearchAsync("6", IDS, 10000);
+        Assert.assertTrue(future.cancel(true));
+        queued.get(0).run();
+
+        Assert.assertTrue(future.isCancelled());
+        Assert.assertTrue(future.getDeadline().isCancelled());
+    }
+
+    @Test(expected = CancellationException.class)
+    public void stopRunningSearchWhenCancelled() throws IOException {
+        SearchDeadline deadline = new SearchDeadline(10000);
+        deadline.cancel();
+
+        SearcherAndTaxonomy snapshot = indexer.acquire();
+        try {
+            indexer.facetedSearch(snapshot, new MatchAllDocsQuery(), Collections.<CategoryPath>emptyList(),
+                    Collections.<RangeFacetRequest>emptyList(), null, deadline, QueryTimer.NOOP);
+        } finally {
+            indexer.release(snapshot);
+        }
+    }
+
+    @Test
+    public void failFutureOnInvalidQuery() throws InterruptedException {
+        try {
+            indexer.doFacetedSearchAsync(new FacetedQuery("name:(", IDS), 10000).get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof ParseException);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNonPositiveTimeout() {
+        indexer.doPrefixSearchAsync("6", IDS, 0);
+    }
+
+    private static int categoryCount(SearchResult result) {
+        int count = 0;
+        for (FacetResultNode node : result.getFacets().get(0).getFacetResultNode().subResults)
+            count += (int) node.value;
+
+        return count;
+    }
+}
@@ -0,0 +1,72 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.suggest.ShopSuggester;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+public class AutocompleteShouldTest {
+    private Indexer indexer;
+
+    @Before
+    public void init() throws IOException, ParseException {
+        indexer = new Indexer(new IndexerConfig().setAutocomplete(true));
+        indexer.createIndex(Main.readData());
+        indexer.getSuggester().rebuild();
+    }
+
+    @After
+    public void close() throws IOException {
+        indexer.close();
+    }
+
+    @Test
+    public void suggestCodesCaseInsensitiveNewestFirst() {
+        List<ShopSuggester.Suggestion> suggestions = indexer.suggestCodes("6W", 10);
+
+        Assert.assertEquals(2, suggestions.size());
+        Assert.assertEquals("6wab5/8c/2013", suggestions.get(0).text);
+        Assert.assertEquals(20130212, suggestions.get(0).weight);
+        Assert.assertEquals("6wab5/8tx/1234", suggestions.get(1).text);
+    }
+
+    @Test
+    public void suggestEveryNameOnlyOnce() {
+        List<ShopSuggester.Suggestion> suggestions = indexer.suggestNames("crim", 10);
+
+        Assert.assertEquals(1, suggestions.size());
+        Assert.assertEquals("crimson house", suggestions.get(0).text);
+        Assert.assertEquals(20050709, suggestions.get(0).weight);
+    }
+
+    @Test
+    public void limitNumberOfSuggestions() {
+        Assert.assertEquals(3, indexer.suggestCodes("6", 3).size());
+    }
+
+    @Test
+    public void reflectDeletesAfterRebuild() throws IOException {
+        indexer.delete(1);
+        indexer.getSuggester().rebuild();
+
+        Assert.assertTrue(indexer.suggestCodes("6c", 10).isEmpty());
+        // 11 shops share 10 distinct codes, one of them was deleted
+        Assert.assertEquals(9, indexer.getSuggester().getStats().getCodes());
+        Assert.assertTrue(indexer.getSuggester().getStats().getSizeInBytes() > 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void requireAutocompleteToBeEnabled() throws IOException {
+        Indexer plain = new Indexer();
+        try {
+            plain.suggestCodes("6", 10);
+        } finally {
+            plain.close();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.search.BatchQuery;
+import com.belo82.facetsearch.search.BatchResult;
+import com.belo82.facetsearch.search.FacetedQuery;
+import com.belo82.facetsearch.search.Projection;
+import com.belo82.facetsearch.search.ResultRow;
+import com.belo82.facetsearch.search.SearchResult;
+import org.apache.lucene.facet.search.FacetResultNode;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class BatchSearchShouldTest {
+    private static final Projection IDS = Projection.of(Indexer.ID);
+    private static final String PUTNEY = "279, Upper Richmond Road, Putney, London, SW15 6SP";
+
+    private static final List<BatchQuery> QUERIES = Arrays.asList(
+            BatchQuery.label(PUTNEY, IDS),
+            BatchQuery.prefix("6", IDS),
+            BatchQuery.range("01-01-1990", "31-12-2013", IDS, Indexer.sortByFounded(true)),
+            BatchQuery.faceted(new FacetedQuery("*:*", IDS).drillDown(Indexer.DEFAULT_DRILL_DOWN)));
+
+    private Indexer indexer;
+
+    @Before
+    public void init() throws IOException, ParseException {
+        indexer = new Indexer(new IndexerConfig().setBatchParallelism(3));
+        indexer.createIndex(Main.readData());
+    }
+
+    @After
+    public void close() throws IOException {
+        indexer.close();
+    }
+
+    @Test
+    public void returnSameResultsAsSingleSearches() throws IOException, ParseException {
+        BatchResult batch = indexer.doBatchSearch(QUERIES);
+
+        Assert.assertEquals(4, batch.size());
+        Assert.assertEquals(ids(indexer.doFacetLabelSearch(PUTNEY, IDS)), ids(batch.get(0).getRows()));
+        Assert.assertEquals(ids(indexer.doPrefixSearch("6", IDS)), ids(batch.get(1).getRows()));
+        Assert.assertEquals(ids(indexer.doRangeSearch("01-01-1990", "31-12-2013", IDS, Indexer.sortByFounded(true))),
+                ids(batch.get(2).getRows()));
+
+        SearchResult faceted = indexer.doFacetedSearch(QUERIES.get(3).getFacetedQuery());
+        Assert.assertEquals(ids(faceted.getRows()), ids(batch.get(3).getRows()));
+        Assert.assertEquals(faceted.getTotalHits(), batch.get(3).getTotalHits());
+        Assert.assertEquals(categoryCount(faceted), categoryCount(batch.get(3)));
+        Assert.assertTrue(batch.get(0).getFacets().isEmpty());
+    }
+
+    @Test
+    public void failOnlyQueryWhichCannotBeParsed() throws IOException {
+        BatchResult batch = indexer.doBatchSearch(Arrays.asList(
+                BatchQuery.faceted(new FacetedQuery("name:(", IDS)),
+                BatchQuery.prefix("6", IDS)));
+
+        Assert.assertTrue(batch.isFailed(0));
+        Assert.assertNotNull(batch.getError(0));
+        Assert.assertNull(batch.getResults().get(0));
+        Assert.assertFalse(batch.isFailed(1));
+        Assert.assertEquals(4, batch.get(1).getRows().size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectResultOfFailedQuery() throws IOException {
+        indexer.doBatchSearch(Arrays.asList(BatchQuery.faceted(new FacetedQuery("name:(", IDS)))).get(0);
+    }
+
+    @Test
+    public void searchAllQueriesOnOneSnapshot() throws IOException, ParseException {
+        final Indexer[] changing = new Indexer[1];
+        // every helper deletes the shop 7 after the snapshot of the batch has been acquired
+        changing[0] = new Indexer(new IndexerConfig().setBatchParallelism(4).setAsyncExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                try {
+                    changing[0].delete(7);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                command.run();
+            }
+        }));
+        try {
+            changing[0].createIndex(Main.readData());
+
+            BatchResult batch = changing[0].doBatchSearch(QUERIES);
+
+            Assert.assertEquals(Arrays.asList(7L, 8L), ids(batch.get(0).getRows()));
+            Assert.assertEquals(4, batch.get(3).getTotalHits());
+            // the deletes are visible to the searches which come after the batch
+            Assert.assertEquals(Arrays.asList(8L), ids(changing[0].doFacetLabelSearch(PUTNEY, IDS)));
+            Assert.assertEquals(3, changing[0].doFacetedSearch(QUERIES.get(3).getFacetedQuery()).getTotalHits());
+        } finally {
+            changing[0].close();
+        }
+    }
+
+    @Test
+    public void loadDocumentHitBySeveralQueriesWithEveryProjection() throws IOException {
+        BatchResult batch = indexer.doBatchSearch(Arrays.asList(
+                BatchQuery.label(PUTNEY, Projection.of(Indexer.ID, Indexer.NAME)),
+                BatchQuery.prefix("42", Projection.of(Indexer.ADDRESS, Indexer.FOUNDED)),
+                BatchQuery.label(PUTNEY, Projection.of(Indexer.NAME))));
+
+        ResultRow mini = null;
+        for (ResultRow row : batch.get(0).getRows()) {
+            if (row.getLong(Indexer.ID) == 8)
+                mini = row;
+        }
+        Assert.assertNotNull(mini);
+        Assert.assertEquals("Mini Bar", mini.getString(Indexer.NAME));
+
+        ResultRow prefixed = batch.get(1).getRows().get(0);
+        Assert.assertEquals(Projection.of(Indexer.ADDRESS, Indexer.FOUNDED), prefixed.getProjection());
+        Assert.assertEquals(PUTNEY, prefixed.getString(Indexer.ADDRESS));
+        Assert.assertNotNull(prefixed.getLong(Indexer.FOUNDED));
+        Assert.assertEquals(mini.getDoc(), prefixed.getDoc());
+        Assert.assertEquals(2, batch.get(2).getRows().size());
+    }
+
+    @Test
+    public void mergeShardsOfEveryQuery() throws IOException, ParseException {
+        try (ShardedIndexer sharded = new ShardedIndexer(new IndexerConfig().setShards(3))) {
+            sharded.createIndex(Main.readData());
+
+            BatchResult expected = indexer.doBatchSearch(QUERIES);
+            BatchResult actual = sharded.doBatchSearch(QUERIES);
+
+            for (int i = 0; i < QUERIES.size(); i++) {
+                Assert.assertEquals(expected.get(i).getTotalHits(), actual.get(i).getTotalHits());
+                Assert.assertEquals(sorted(ids(expected.get(i).getRows())), sorted(ids(actual.get(i).getRows())));
+            }
+            Assert.assertEquals(categoryCount(expected.get(3)), categoryCount(actual.get(3)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNegativeParallelism() {
+        new IndexerConfig().setBatchParallelism(-1);
+    }
+
+    private static List<Long> ids(List<ResultRow> rows) {
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (ResultRow row : rows)
+            ids.add(row.getLong(Indexer.ID));
+
+        return ids;
+    }
+
+    private static List<Long> sorted(List<Long> ids) {
+        List<Long> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private static int categoryCount(SearchResult result) {
+        int count = 0;
+        for (FacetResultNode node : result.getFacets().get(0).getFacetResultNode().subResults)
+            count += (int) node.value;
+
+        return count;
+    }
+}
@@ -0,0 +1,125 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.search.FacetSelection;
+import com.belo82.facetsearch.search.Projection;
+import com.belo82.facetsearch.search.ResultRow;
+import com.belo82.facetsearch.search.SearchResult;
+import org.apache.lucene.facet.search.FacetResult;
+import org.apache.lucene.facet.search.FacetResultNode;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class DrillSidewaysShouldTest {
+    private static final Projection IDS = Projection.of(Indexer.ID);
+
+    private Indexer indexer;
+
+    @Before
+    public void init() throws IOException, ParseException {
+        indexer = new Indexer();
+        indexer.createIndex(Main.readData());
+    }
+
+    @After
+    public void close() throws IOException {
+        indexer.close();
+    }
+
+    @Test
+    public void countEverySelectedDimensionSideways() throws IOException, ParseException {
+        SearchResult result = indexer.doDrillSidewaysSearch("*:*", IDS, new FacetSelection()
+                .select(Indexer.FACET_SHOP_CATEGORY, "cafe", "bookshop")
+                .select(Indexer.AREA, "Putney", "Fulham"));
+
+        Assert.assertEquals(ids(6, 7, 10), ids(result));
+        // categories of shops in Putney or Fulham
+        Assert.assertEquals(counts("supermarket", 2, "bookshop", 2, "cafe", 1), counts(result.getFacets().get(0)));
+        // areas of cafes and bookshops
+        Assert.assertEquals(counts("Chelsea", 1, "Battersea", 1, "Putney", 2, "Surrey Quays", 1, "Canada Water", 2,
+                "Fulham", 1), counts(result.getFacets().get(1)));
+    }
+
+    @Test
+    public void countUnselectedDimensionOnHits() throws IOException, ParseException {
+        SearchResult result = indexer.doDrillSidewaysSearch("*:*", IDS,
+                new FacetSelection().select(Indexer.AREA, "Chelsea"));
+
+        Assert.assertEquals(ids(3, 4), ids(result));
+        Assert.assertEquals(counts("supermarket", 1, "bookshop", 1), counts(result.getFacets().get(0)));
+        Assert.assertEquals(counts("Fulham", 3, "Chelsea", 2, "Battersea", 1, "Putney", 2, "Surrey Quays", 1,
+                "Canada Water", 2), counts(result.getFacets().get(1)));
+    }
+
+    @Test
+    public void countAllDimensionsWithoutSelection() throws IOException, ParseException {
+        SearchResult result = indexer.doDrillSidewaysSearch("name:crimson", IDS, new FacetSelection());
+
+        Assert.assertEquals(ids(9, 10), ids(result));
+        Assert.assertEquals(counts("cafe", 1, "bookshop", 1), counts(result.getFacets().get(0)));
+        Assert.assertEquals(counts("Canada Water", 1, "Fulham", 1), counts(result.getFacets().get(1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectUnknownDimension() throws IOException, ParseException {
+        indexer.doDrillSidewaysSearch("*:*", IDS, new FacetSelection().select(Indexer.OWNERS, "Dylan James"));
+    }
+
+    @Test
+    public void mergeSidewaysCountsOfShards() throws IOException, ParseException {
+        FacetSelection selection = new FacetSelection()
+                .select(Indexer.FACET_SHOP_CATEGORY, "cafe", "bookshop")
+                .select(Indexer.AREA, "Putney", "Fulham");
+
+        try (ShardedIndexer sharded = new ShardedIndexer(new IndexerConfig().setShards(3))) {
+            sharded.createIndex(Main.readData());
+
+            SearchResult expected = indexer.doDrillSidewaysSearch("*:*", IDS, selection);
+            SearchResult actual = sharded.doDrillSidewaysSearch("*:*", IDS, selection);
+
+            Assert.assertEquals(ids(expected), ids(actual));
+            for (int i = 0; i < Indexer.NAVIGATION_DIMENSIONS.size(); i++)
+                Assert.assertEquals(counts(expected.getFacets().get(i)), counts(actual.getFacets().get(i)));
+        }
+    }
+
+    private static Set<Long> ids(long... ids) {
+        Set<Long> set = new HashSet<>();
+        for (long id : ids)
+            set.add(id);
+
+        return set;
+    }
+
+    private static Set<Long> ids(SearchResult result) {
+        Set<Long> ids = new HashSet<>();
+        for (ResultRow row : result.getRows())
+            ids.add(row.getLong(Indexer.ID));
+
+        return ids;
+    }
+
+    private static Map<String, Integer> counts(Object... labelsAndCounts) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < labelsAndCounts.length; i += 2)
+            counts.put((String) labelsAndCounts[i], (Integer) labelsAndCounts[i + 1]);
+
+        return counts;
+    }
+
+    private static Map<String, Integer> counts(FacetResult result) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (FacetResultNode node : result.getFacetResultNode().subResults)
+            counts.put(node.label.components[node.label.length - 1], (int) node.value);
+
+        return counts;
+    }
+}
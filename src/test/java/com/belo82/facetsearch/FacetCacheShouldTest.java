@@ -0,0 +1,87 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.search.FacetCache;
+import com.belo82.facetsearch.search.Projection;
+import com.belo82.facetsearch.search.SearchResult;
+import org.apache.lucene.facet.search.FacetResult;
+import org.apache.lucene.facet.search.FacetResultNode;
+import org.apache.lucene.facet.taxonomy.CategoryPath;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class FacetCacheShouldTest {
+    private static final Projection ID = Projection.of(Indexer.ID);
+    private static final CategoryPath CAFE = new CategoryPath(Indexer.FACET_SHOP_CATEGORY, "cafe");
+
+    private Indexer indexer;
+
+    @Before
+    public void init() throws IOException, ParseException {
+        indexer = new Indexer(new IndexerConfig().setFacetCacheSize(2));
+        indexer.createIndex(Main.readData());
+    }
+
+    @After
+    public void close() throws IOException {
+        indexer.close();
+    }
+
+    @Test
+    public void serveRepeatedQueryFromTheCache() throws IOException, ParseException {
+        FacetCache cache = indexer.getFacetCache();
+        long hits = cache.getHits();
+
+        SearchResult first = indexer.doFacetedSearch("name: crimson", ID, CAFE);
+        SearchResult second = indexer.doFacetedSearch("name:Crimson", ID, CAFE);
+
+        Assert.assertEquals(hits + 1, cache.getHits());
+        Assert.assertSame(first.getFacets(), second.getFacets());
+        Assert.assertEquals(1, second.getRows().size());
+    }
+
+    @Test
+    public void precomputeMatchAllFacetsOnRefresh() throws IOException, ParseException {
+        long misses = indexer.getFacetCache().getMisses();
+
+        SearchResult result = indexer.doFacetedSearch("*:*", ID);
+
+        Assert.assertEquals(misses, indexer.getFacetCache().getMisses());
+        Assert.assertEquals(11, result.getTotalHits());
+        Assert.assertEquals(11, (int) topLevelCount(result.getFacets().get(0)));
+    }
+
+    @Test
+    public void invalidateOnRefresh() throws IOException, ParseException {
+        SearchResult before = indexer.doFacetedSearch("name: crimson", ID, CAFE);
+        Assert.assertEquals(1, (int) topLevelCount(before.getFacets().get(1)));
+
+        indexer.delete(9);
+        SearchResult after = indexer.doFacetedSearch("name: crimson", ID, CAFE);
+
+        Assert.assertEquals(0, after.getTotalHits());
+        Assert.assertEquals(0, (int) topLevelCount(after.getFacets().get(1)));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedEntries() throws IOException, ParseException {
+        indexer.doFacetedSearch("name: crimson", ID);
+        indexer.doFacetedSearch("name: budgens", ID);
+        indexer.doFacetedSearch("name: oxfam", ID);
+
+        Assert.assertEquals(2, indexer.getFacetCache().size());
+        Assert.assertTrue(indexer.getFacetCache().getEvictions() > 0);
+    }
+
+    private static double topLevelCount(FacetResult facetResult) {
+        double count = 0;
+        for (FacetResultNode node : facetResult.getFacetResultNode().subResults)
+            count += node.value;
+
+        return count;
+    }
+}
@@ -0,0 +1,132 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.ingest.ChangeSet;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.ObjectNode;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+public class IncrementalUpdateShouldTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Indexer indexer;
+    private ArrayNode data;
+
+    @Before
+    public void init() throws IOException, ParseException {
+        data = Main.readData();
+        indexer = new Indexer();
+        indexer.createIndex(data);
+    }
+
+    @After
+    public void close() throws IOException {
+        indexer.close();
+    }
+
+    @Test
+    public void replaceExistingDocumentOnUpsert() throws IOException, ParseException {
+        ObjectNode budgens = (ObjectNode) data.get(0);
+        budgens.put(Indexer.CODE, "7X/111/2010");
+
+        indexer.upsert(budgens);
+
+        Assert.assertEquals(11, indexer.numDocs());
+        Assert.assertEquals(0, indexer.doPrefixSearch("6C").size());
+        Assert.assertEquals(1, indexer.doPrefixSearch("7X").size());
+    }
+
+    @Test
+    public void notDuplicateDocumentsWhenTheSameDataIsUpsertedAgain() throws IOException {
+        ChangeSet changeSet = new ChangeSet();
+        for (int i = 0; i < data.size(); i++)
+            changeSet.upsert((ObjectNode) data.get(i));
+
+        indexer.apply(changeSet);
+
+        Assert.assertEquals(11, indexer.numDocs());
+    }
+
+    @Test
+    public void applyChangesInOrder() throws IOException, ParseException {
+        ObjectNode newShop = JsonNodeFactory.instance.objectNode();
+        newShop.putAll((ObjectNode) data.get(0));
+        newShop.put(Indexer.ID, 100);
+
+        indexer.apply(new ChangeSet()
+                .delete(1)
+                .upsert(newShop)
+                .upsert((ObjectNode) data.get(1))
+                .delete(2));
+
+        Assert.assertEquals(10, indexer.numDocs());
+        Assert.assertEquals(1, indexer.doPrefixSearch("6C").size());
+        Assert.assertEquals(0, indexer.doPrefixSearch("1230934821").size());
+    }
+
+    @Test
+    public void keepTaxonomyWhenNewCategoryIsAdded() throws IOException, ParseException {
+        ObjectNode bakery = (ObjectNode) data.get(8);
+        bakery.put(Indexer.FACET_SHOP_CATEGORY, "bakery");
+
+        indexer.upsert(bakery);
+
+        Assert.assertEquals(0, indexer.doSearch("name: crimson").size());
+        Assert.assertEquals(1, indexer.doSearch("name: welcome").size());
+    }
+
+    @Test
+    public void makeChangesVisibleBeforeTheyAreCommitted() throws IOException, ParseException {
+        File path = folder.newFolder("shops");
+        Indexer persistent = new Indexer(new IndexerConfig().setStorage(StorageMode.NIOFS, path)
+                .setCommitAfterChanges(2));
+        try {
+            persistent.createIndex(data);
+
+            persistent.upsert(copyWithId(100));
+            Assert.assertEquals(12, persistent.numDocs());
+            Assert.assertEquals(11, committedDocs(path));
+
+            persistent.upsert(copyWithId(101));
+            Assert.assertEquals(13, committedDocs(path));
+
+            persistent.delete(100);
+            persistent.commit();
+            Assert.assertEquals(12, committedDocs(path));
+        } finally {
+            persistent.close();
+        }
+    }
+
+    private ObjectNode copyWithId(int id) {
+        ObjectNode shop = JsonNodeFactory.instance.objectNode();
+        shop.putAll((ObjectNode) data.get(0));
+        shop.put(Indexer.ID, id);
+        return shop;
+    }
+
+    private static int committedDocs(File path) throws IOException {
+        try (Directory dir = FSDirectory.open(new File(path, "index"));
+             DirectoryReader reader = DirectoryReader.open(dir)) {
+            return reader.numDocs();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNegativeCommitAfterChanges() {
+        new IndexerConfig().setCommitAfterChanges(-1);
+    }
+}
@@ -0,0 +1,108 @@
+package com.belo82.facetsearch;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.belo82.facetsearch.metrics.OperationStats;
+import com.belo82.facetsearch.metrics.Phase;
+import com.belo82.facetsearch.metrics.QueryTimer;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+
+public class InstrumentationShouldTest {
+
+    @Test
+    public void recordPhasesOfFacetedSearch() throws Exception {
+        try (Indexer indexer = new Indexer(new IndexerConfig().setInstrumentation(true))) {
+            indexer.createIndex(Main.readData());
+            indexer.doSearch("name: crimson");
+
+            OperationStats stats = indexer.getMetrics().getStats("doSearch");
+            Assert.assertEquals(1, stats.getCount());
+            Assert.assertEquals(0, stats.getErrors());
+
+            Map<String, Long> phases = stats.getPhaseP99Micros();
+            for (Phase phase : new Phase[]{Phase.PARSE, Phase.ACQUIRE, Phase.COLLECT, Phase.FACETS, Phase.FETCH})
+                Assert.assertTrue(phase.name(), phases.containsKey(phase.name().toLowerCase()));
+            Assert.assertFalse(phases.containsKey("write"));
+
+            OperationStats ingest = indexer.getMetrics().getStats("createIndex");
+            Assert.assertEquals(1, ingest.getCount());
+            Assert.assertTrue(ingest.getPhaseMeanMicros().keySet().containsAll(
+                    Arrays.asList("build", "write", "commit", "refresh")));
+        }
+    }
+
+    @Test
+    public void countFailedCalls() throws Exception {
+        try (Indexer indexer = new Indexer(new IndexerConfig().setInstrumentation(true))) {
+            indexer.createIndex(Main.readData());
+            try {
+                indexer.doSearch("name:(");
+                Assert.fail("query must not parse");
+            } catch (ParseException e) {
+                // expected
+            }
+
+            Assert.assertEquals(1, indexer.getMetrics().getStats("doSearch").getErrors());
+        }
+    }
+
+    @Test
+    public void exposeStatsOverJmx() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.belo82.facetsearch:type=Indexer,name=jmx-test,operation=doPrefixSearch");
+
+        try (Indexer indexer = new Indexer(new IndexerConfig().setInstrumentation(true).setMetricsName("jmx-test"))) {
+            indexer.createIndex(Main.readData());
+            indexer.doPrefixSearch("6");
+            indexer.doPrefixSearch("1");
+
+            Assert.assertTrue(server.isRegistered(name));
+            Assert.assertEquals(2L, server.getAttribute(name, "Count"));
+        }
+
+        Assert.assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void logSlowCallsWithPhaseBreakdown() throws Exception {
+        Logger slowLog = (Logger) LoggerFactory.getLogger("com.belo82.facetsearch.slowlog");
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        slowLog.addAppender(appender);
+
+        try (Indexer indexer = new Indexer(new IndexerConfig().setSlowQueryMillis(1))) {
+            indexer.createIndex(Main.readData());
+
+            Assert.assertFalse(appender.list.isEmpty());
+            String message = appender.list.get(0).getFormattedMessage();
+            Assert.assertTrue(message, message.startsWith("createIndex took"));
+            Assert.assertTrue(message, message.contains("hits=11") && message.contains("commit="));
+
+            // the slow query log alone does not collect stats
+            Assert.assertNull(indexer.getMetrics().getStats("createIndex"));
+        } finally {
+            slowLog.detachAppender(appender);
+        }
+    }
+
+    @Test
+    public void notMeasureAnythingWhenOff() throws Exception {
+        try (Indexer indexer = new Indexer()) {
+            indexer.createIndex(Main.readData());
+            indexer.doSearch("name: crimson");
+
+            Assert.assertSame(QueryTimer.NOOP, indexer.getMetrics().start("doSearch", "name: crimson"));
+            Assert.assertTrue(indexer.getMetrics().getOperations().isEmpty());
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.search.FacetedQuery;
+import com.belo82.facetsearch.search.JsonResultWriter;
+import com.belo82.facetsearch.search.LongRange;
+import com.belo82.facetsearch.search.Projection;
+import com.belo82.facetsearch.search.RangeFacetRequest;
+import com.belo82.facetsearch.search.RangeFacetResult;
+import com.belo82.facetsearch.search.ResultRow;
+import com.belo82.facetsearch.search.SearchResult;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.facet.search.FacetResult;
+import org.apache.lucene.facet.search.FacetResultNode;
+import org.apache.lucene.facet.taxonomy.CategoryPath;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+public class JsonResultWriterShouldTest {
+    private static final Projection PROJECTION = Projection.of(Indexer.ID, Indexer.NAME, Indexer.OWNERS,
+            Indexer.FOUNDED);
+
+    private Indexer indexer;
+
+    @Before
+    public void init() throws IOException, ParseException {
+        indexer = new Indexer();
+        indexer.createIndex(Main.readData());
+    }
+
+    @After
+    public void close() throws IOException {
+        indexer.close();
+    }
+
+    @Test
+    public void writeSameHitsAsFacetedSearch() throws IOException, ParseException {
+        FacetedQuery query = new FacetedQuery("*:*", PROJECTION)
+                .drillDown(new CategoryPath(Indexer.FACET_SHOP_CATEGORY, "supermarket"));
+
+        SearchResult expected = indexer.doFacetedSearch(query);
+        JsonNode actual = write(query);
+
+        Assert.assertEquals(expected.getTotalHits(), actual.get("totalHits").getIntValue());
+        JsonNode hits = actual.get("hits");
+        Assert.assertEquals(expected.getRows().size(), hits.size());
+        for (int i = 0; i < hits.size(); i++) {
+            ResultRow row = expected.getRows().get(i);
+            JsonNode hit = hits.get(i);
+
+            Assert.assertEquals(row.getDoc(), hit.get("doc").getIntValue());
+            Assert.assertEquals((long) row.getLong(Indexer.ID), hit.get(Indexer.ID).getLongValue());
+            Assert.assertEquals(row.getString(Indexer.NAME), hit.get(Indexer.NAME).getTextValue());
+            Assert.assertEquals((long) row.getLong(Indexer.FOUNDED), hit.get(Indexer.FOUNDED).getLongValue());
+            Assert.assertTrue(hit.get(Indexer.OWNERS).isArray());
+            Assert.assertEquals(row.getAll(Indexer.OWNERS).size(), hit.get(Indexer.OWNERS).size());
+            for (int j = 0; j < hit.get(Indexer.OWNERS).size(); j++)
+                Assert.assertEquals(row.getAll(Indexer.OWNERS).get(j), hit.get(Indexer.OWNERS).get(j).getTextValue());
+        }
+    }
+
+    @Test
+    public void writeFacetTrees() throws IOException, ParseException {
+        FacetedQuery query = new FacetedQuery("*:*", Projection.of(Indexer.ID))
+                .drillDown(Indexer.DEFAULT_DRILL_DOWN)
+                .rangeFacet(new RangeFacetRequest(Indexer.FOUNDED,
+                        new LongRange("before 2000", 0, true, 20000101, false),
+                        new LongRange("since 2000", 20000101, true, 30000101, false)));
+
+        SearchResult expected = indexer.doFacetedSearch(query);
+        JsonNode actual = write(query);
+        JsonNode facets = actual.get("facets");
+
+        Assert.assertEquals(expected.getFacets().size(), facets.size());
+        for (int i = 0; i < facets.size(); i++)
+            assertNode(expected.getFacets().get(i).getFacetResultNode(), facets.get(i));
+
+        JsonNode cafes = facets.get(0).get("children").get(0);
+        Assert.assertEquals("shop_category/cafe", cafes.get("label").getTextValue());
+        Assert.assertEquals(4, cafes.get("value").getIntValue());
+        // sub-categories of the drill-down path
+        Assert.assertEquals("shop_category/cafe", facets.get(1).get("label").getTextValue());
+        Assert.assertTrue(facets.get(1).get("children").size() > 0);
+
+        RangeFacetResult founded = expected.getRangeFacets().get(0);
+        JsonNode ranges = actual.get("rangeFacets").get(0);
+        Assert.assertEquals(Indexer.FOUNDED, ranges.get("field").getTextValue());
+        Assert.assertEquals(founded.getTotal(), ranges.get("total").getIntValue());
+        Assert.assertEquals("since 2000", ranges.get("buckets").get(1).get("label").getTextValue());
+        Assert.assertEquals(founded.getCount(1), ranges.get("buckets").get(1).get("count").getIntValue());
+    }
+
+    @Test
+    public void writeMultiValuedFieldsAsArraysAndOthersAsValues() throws IOException, ParseException {
+        JsonNode hits = write(new FacetedQuery("owners:\"peter taylor\"", Projection.of(Indexer.OWNERS, Indexer.NAME)))
+                .get("hits");
+
+        Assert.assertEquals(2, hits.size());
+        for (JsonNode hit : hits) {
+            Assert.assertTrue(hit.get(Indexer.OWNERS).isArray());
+            Assert.assertTrue(hit.get(Indexer.NAME).isTextual());
+            Assert.assertTrue(hit.has("score"));
+            Assert.assertEquals(Arrays.asList("doc", "score", Indexer.NAME, Indexer.OWNERS), fieldNames(hit));
+        }
+    }
+
+    @Test
+    public void leaveOutScoresOfSortedHits() throws IOException, ParseException {
+        JsonNode hits = write(new FacetedQuery("*:*", Projection.of(Indexer.ID)).sort(Indexer.sortByFounded(true)))
+                .get("hits");
+
+        Assert.assertEquals(11, hits.size());
+        Assert.assertFalse(hits.get(0).has("score"));
+        Assert.assertEquals(6, hits.get(0).get(Indexer.ID).getIntValue());
+    }
+
+    @Test
+    public void leaveOutDocValuesFieldsTheHitDoesNotHave() throws IOException {
+        Document founded = new Document();
+        founded.add(new StringField(Indexer.NAME, "founded", Field.Store.YES));
+        founded.add(new LongField(Indexer.FOUNDED, 20000101, Field.Store.YES));
+        founded.add(new NumericDocValuesField(Indexer.FOUNDED, 20000101));
+        // reads as 0 from the DocValues of the segment
+        Document unknown = new Document();
+        unknown.add(new StringField(Indexer.NAME, "unknown", Field.Store.YES));
+
+        JsonNode hits = writeAll(Projection.of(Indexer.NAME, Indexer.FOUNDED), founded, unknown).get("hits");
+
+        Assert.assertEquals(20000101, hits.get(0).get(Indexer.FOUNDED).getLongValue());
+        Assert.assertEquals("unknown", hits.get(1).get(Indexer.NAME).getTextValue());
+        Assert.assertFalse(hits.get(1).has(Indexer.FOUNDED));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectMultiValuedFieldStoredApart() throws IOException {
+        Document apart = new Document();
+        apart.add(new StoredField(Indexer.OWNERS, "Dylan James"));
+        apart.add(new StoredField(Indexer.NAME, "Budgens"));
+        apart.add(new StoredField(Indexer.OWNERS, "Kristin Sullivan"));
+
+        writeAll(Projection.of(Indexer.OWNERS, Indexer.NAME), apart);
+    }
+
+    /**
+     * Writes all the documents of a new index, with {@link Indexer#FOUNDED} as DocValues field.
+     */
+    private static JsonNode writeAll(Projection projection, Document... docs) throws IOException {
+        try (Directory dir = new RAMDirectory()) {
+            try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Version.LUCENE_42,
+                    new KeywordAnalyzer()))) {
+                for (Document doc : docs)
+                    writer.addDocument(doc);
+            }
+
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                IndexSearcher searcher = new IndexSearcher(reader);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                new JsonResultWriter(Collections.singleton(Indexer.FOUNDED),
+                        new HashSet<>(Arrays.asList(Indexer.OWNERS)))
+                        .write(searcher, searcher.search(new MatchAllDocsQuery(), 10), projection,
+                                Collections.<FacetResult>emptyList(), Collections.<RangeFacetResult>emptyList(), out);
+                return new ObjectMapper().readTree(out.toByteArray());
+            }
+        }
+    }
+
+    private JsonNode write(FacetedQuery query) throws IOException, ParseException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        indexer.writeFacetedSearch(query, out);
+        return new ObjectMapper().readTree(out.toByteArray());
+    }
+
+    private static void assertNode(FacetResultNode expected, JsonNode actual) {
+        Assert.assertEquals(expected.label.toString('/'), actual.get("label").getTextValue());
+        Assert.assertEquals((long) expected.value, actual.get("value").getLongValue());
+        Assert.assertEquals(expected.subResults.size(), actual.has("children") ? actual.get("children").size() : 0);
+        for (int i = 0; i < expected.subResults.size(); i++)
+            assertNode(expected.subResults.get(i), actual.get("children").get(i));
+    }
+
+    private static List<String> fieldNames(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        for (Iterator<String> it = node.getFieldNames(); it.hasNext(); )
+            names.add(it.next());
+
+        return names;
+    }
+}
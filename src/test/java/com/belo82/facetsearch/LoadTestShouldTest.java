@@ -0,0 +1,75 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.load.LoadTest;
+import com.belo82.facetsearch.load.LoadTestConfig;
+import com.belo82.facetsearch.load.QueryType;
+import com.belo82.facetsearch.metrics.LatencyHistogram;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.node.ObjectNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class LoadTestShouldTest {
+
+    @Test
+    public void reportPercentilesWithinOnePercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100000; i++)
+            histogram.record(i);
+
+        Assert.assertEquals(100000, histogram.getCount());
+        assertWithinOnePercent(50000, histogram.getValueAtPercentile(50));
+        assertWithinOnePercent(99000, histogram.getValueAtPercentile(99));
+        assertWithinOnePercent(99900, histogram.getValueAtPercentile(99.9));
+        assertWithinOnePercent(100000, histogram.getMax());
+        assertWithinOnePercent(50000, (long) histogram.getMean());
+        Assert.assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+    private static void assertWithinOnePercent(long expected, long actual) {
+        Assert.assertTrue("expected ~" + expected + ", got " + actual, Math.abs(expected - actual) <= expected / 64);
+    }
+
+    @Test
+    public void parseCommandLineOptions() {
+        LoadTestConfig config = LoadTestConfig.parse(new String[]{
+                "--clients=8", "--qps=500", "--duration=60", "--index-rate=200", "--mix=prefix:3,search:1"});
+
+        Assert.assertEquals(8, config.getClients());
+        Assert.assertEquals(500, config.getTargetQps());
+        Assert.assertEquals(60000, config.getDurationMillis());
+        Assert.assertEquals(200, config.getIndexingRate());
+        Assert.assertEquals(2, config.getMix().size());
+        Assert.assertEquals(3, (int) config.getMix().get(QueryType.PREFIX));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectUnknownOption() {
+        LoadTestConfig.parse(new String[]{"--threads=8"});
+    }
+
+    @Test
+    public void reportLatenciesOfEveryQueryType() throws IOException, InterruptedException {
+        LoadTestConfig config = new LoadTestConfig()
+                .setShops(2000)
+                .setClients(2)
+                .setTargetQps(200)
+                .setWarmupMillis(200)
+                .setDurationMillis(1000)
+                .setIndexingRate(100);
+
+        ObjectNode report = new LoadTest(config).run();
+
+        Assert.assertEquals(0, report.get("errors").getLongValue());
+        Assert.assertTrue(report.get("queries").getLongValue() > 0);
+        for (QueryType type : QueryType.values()) {
+            JsonNode latency = report.get("queryTypes").get(type.name().toLowerCase()).get("latencyMicros");
+            Assert.assertTrue(type.name(), latency.get("count").getLongValue() > 0);
+            Assert.assertTrue(latency.get("p999").getLongValue() >= latency.get("p50").getLongValue());
+        }
+        Assert.assertTrue(report.get("backgroundIndexing").get("shops").getLongValue() > 0);
+        Assert.assertNotNull(report.get("gc").get("pauseMicros"));
+    }
+}
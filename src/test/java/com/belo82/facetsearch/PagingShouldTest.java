@@ -0,0 +1,114 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.search.CursorExpiredException;
+import com.belo82.facetsearch.search.Projection;
+import com.belo82.facetsearch.search.ResultPage;
+import com.belo82.facetsearch.search.ResultRow;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+public class PagingShouldTest {
+    private static final Projection ID = Projection.of(Indexer.ID);
+
+    private Indexer indexer;
+
+    @Before
+    public void init() throws IOException, ParseException {
+        indexer = new Indexer();
+        indexer.createIndex(Main.readData());
+    }
+
+    @After
+    public void close() throws IOException {
+        indexer.close();
+    }
+
+    @Test
+    public void returnEveryHitExactlyOnce() throws IOException {
+        Set<Long> ids = new HashSet<>();
+        int pages = 0;
+
+        ResultPage page = indexer.pageRangeSearch("01-01-1900", null, 3, ID);
+        while (true) {
+            pages++;
+            Assert.assertEquals(11, page.getTotalHits());
+            for (ResultRow row : page.getRows())
+                Assert.assertTrue(ids.add(row.getLong(Indexer.ID)));
+
+            if (!page.hasNext())
+                break;
+            page = indexer.nextPage(page.getNextCursor());
+        }
+
+        Assert.assertEquals(11, ids.size());
+        Assert.assertEquals(4, pages);
+    }
+
+    @Test
+    public void serveAllPagesFromTheSnapshotOfTheFirstPage() throws IOException {
+        ResultPage first = indexer.pagePrefixSearch("6", 1, ID);
+        Assert.assertEquals(4, first.getTotalHits());
+
+        indexer.delete(3);
+        indexer.delete(10);
+
+        ResultPage second = indexer.nextPage(first.getNextCursor());
+        Assert.assertEquals(4, second.getTotalHits());
+        Assert.assertEquals(1, second.getRows().size());
+        Assert.assertEquals(2, indexer.pagePrefixSearch("6", 1, ID).getTotalHits());
+    }
+
+    @Test
+    public void notReturnCursorOnLastPage() throws IOException {
+        Assert.assertFalse(indexer.pagePrefixSearch("6C", 10, ID).hasNext());
+        Assert.assertFalse(indexer.pagePrefixSearch("6", 4, ID).hasNext());
+    }
+
+    @Test(expected = CursorExpiredException.class)
+    public void rejectClosedCursor() throws IOException {
+        String cursor = indexer.pagePrefixSearch("6", 1, ID).getNextCursor();
+        indexer.closeCursor(cursor);
+
+        indexer.nextPage(cursor);
+    }
+
+    @Test(expected = CursorExpiredException.class)
+    public void expireUnusedCursor() throws IOException, ParseException, InterruptedException {
+        Indexer shortLived = new Indexer(new IndexerConfig().setCursorTtlMillis(1));
+        try {
+            shortLived.createIndex(Main.readData());
+            String cursor = shortLived.pagePrefixSearch("6", 1, ID).getNextCursor();
+            Thread.sleep(20);
+
+            shortLived.nextPage(cursor);
+        } finally {
+            shortLived.close();
+        }
+    }
+
+    @Test
+    public void releaseAbandonedCursorOnBackgroundRefresh() throws IOException, ParseException, InterruptedException {
+        Indexer shortLived = new Indexer(new IndexerConfig().setCursorTtlMillis(1).setRefreshIntervalMillis(10));
+        try {
+            shortLived.createIndex(Main.readData());
+            Assert.assertNotNull(shortLived.pagePrefixSearch("6", 1, ID).getNextCursor());
+            Assert.assertEquals(1, shortLived.getPageCursors().size());
+
+            // no more paging requests, only the refresher runs
+            long deadline = System.currentTimeMillis() + 5000;
+            while (shortLived.getPageCursors().size() > 0 && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+
+            Assert.assertEquals(0, shortLived.getPageCursors().size());
+        } finally {
+            shortLived.close();
+        }
+    }
+}
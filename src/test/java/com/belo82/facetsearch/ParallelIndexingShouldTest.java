@@ -0,0 +1,57 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.ingest.IngestStats;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.ObjectNode;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class ParallelIndexingShouldTest {
+    private static final int COPIES = 50;
+
+    private Indexer indexer;
+
+    @Before
+    public void init() {
+        indexer = new Indexer(new IndexerConfig()
+                .setIndexingThreads(4)
+                .setIngestBatchSize(10)
+                .setMergeThreads(2));
+    }
+
+    @After
+    public void close() throws IOException {
+        indexer.close();
+    }
+
+    @Test
+    public void indexAllDocumentsAndParseDatesCorrectly() throws IOException, ParseException {
+        IngestStats stats = indexer.createIndex(copiesOfData(COPIES));
+
+        Assert.assertEquals(11 * COPIES, stats.getDocuments());
+        Assert.assertEquals(COPIES, indexer.doRangeSearch("09-07-2005", "09-07-2005").size());
+        Assert.assertEquals(COPIES, indexer.doPrefixSearch("6C").size());
+    }
+
+    private static ArrayNode copiesOfData(int copies) throws IOException {
+        ArrayNode data = Main.readData();
+        ArrayNode result = JsonNodeFactory.instance.arrayNode();
+        int id = 0;
+
+        for (int i = 0; i < copies; i++) {
+            for (JsonNode shop : data) {
+                ObjectNode copy = result.addObject();
+                copy.putAll((ObjectNode) shop);
+                copy.put(Indexer.ID, ++id);
+            }
+        }
+        return result;
+    }
+}
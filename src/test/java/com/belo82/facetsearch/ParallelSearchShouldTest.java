@@ -0,0 +1,237 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.ingest.ShopGenerator;
+import com.belo82.facetsearch.metrics.QueryTimer;
+import com.belo82.facetsearch.search.ConcurrentSearcher;
+import com.belo82.facetsearch.search.ConcurrentSearcherFactory;
+import com.belo82.facetsearch.search.LongRange;
+import com.belo82.facetsearch.search.RangeFacetRequest;
+import com.belo82.facetsearch.search.SearchDeadline;
+import com.belo82.facetsearch.search.SearchTimeoutException;
+import com.belo82.facetsearch.search.SearcherTaxonomyManager.SearcherAndTaxonomy;
+import org.apache.lucene.facet.search.FacetResult;
+import org.apache.lucene.facet.search.FacetResultNode;
+import org.apache.lucene.facet.taxonomy.CategoryPath;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelSearchShouldTest {
+    private static final RangeFacetRequest BY_FOUNDED = new RangeFacetRequest(Indexer.FOUNDED,
+            new LongRange("before 2000", 0, true, 20000101, false),
+            new LongRange("since 2000", 20000101, true, 30000101, false));
+
+    private Indexer indexer;
+    private SearcherAndTaxonomy snapshot;
+
+    @Before
+    public void init() throws IOException {
+        // small RAM buffer, so the index has many segments
+        indexer = new Indexer(new IndexerConfig().setSearchThreads(3).setMaxParallelQueries(1)
+                .setRamBufferSizeMB(0.1).setFacetCacheSize(0));
+        indexer.createIndex(new ShopGenerator(5000));
+        snapshot = indexer.acquire();
+    }
+
+    @After
+    public void close() throws IOException {
+        indexer.release(snapshot);
+        indexer.close();
+    }
+
+    @Test
+    public void searchSegmentsInParallel() {
+        Assert.assertTrue(snapshot.searcher instanceof ConcurrentSearcher);
+        Assert.assertTrue(snapshot.getIndexReader().leaves().size() > 1);
+        Assert.assertTrue(((ConcurrentSearcher) snapshot.searcher).getSliceCount() > 1);
+    }
+
+    @Test
+    public void findSameTopHitsAsSequentialSearch() throws IOException, ParseException {
+        IndexSearcher sequential = new IndexSearcher(snapshot.getIndexReader());
+        Query query = indexer.parseQuery("area:fulham OR name:golden");
+        long parallelBefore = indexer.getSearcherFactory().getParallelQueries();
+
+        Assert.assertEquals(docs(sequential.search(query, 100)), docs(snapshot.searcher.search(query, 100)));
+        Sort sort = Indexer.sortByFounded(true);
+        Assert.assertEquals(docs(sequential.search(query, 100, sort)), docs(snapshot.searcher.search(query, 100, sort)));
+        Assert.assertEquals(parallelBefore + 2, indexer.getSearcherFactory().getParallelQueries());
+    }
+
+    @Test
+    public void countSameFacetsAsSequentialSearch() throws IOException, ParseException {
+        SearcherAndTaxonomy sequential = new SearcherAndTaxonomy(new IndexSearcher(snapshot.getIndexReader()),
+                snapshot.taxonomyReader);
+        List<CategoryPath> drillDown = Collections.singletonList(Indexer.DEFAULT_DRILL_DOWN);
+        List<RangeFacetRequest> rangeFacets = Collections.singletonList(BY_FOUNDED);
+
+        for (Sort sort : new Sort[]{null, Indexer.sortByFounded(false)}) {
+            for (Query query : new Query[]{new MatchAllDocsQuery(), indexer.parseQuery("name:golden")}) {
+                Indexer.FacetedTopDocs expected = indexer.facetedSearch(sequential, query, drillDown, rangeFacets,
+                        sort, QueryTimer.NOOP);
+                Indexer.FacetedTopDocs actual = indexer.facetedSearch(snapshot, query, drillDown, rangeFacets,
+                        sort, QueryTimer.NOOP);
+
+                Assert.assertEquals(expected.topDocs.totalHits, actual.topDocs.totalHits);
+                Assert.assertEquals(docs(expected.topDocs), docs(actual.topDocs));
+                Assert.assertEquals(counts(expected.facets), counts(actual.facets));
+                Assert.assertEquals(expected.rangeFacets.get(0).getCounts(), actual.rangeFacets.get(0).getCounts());
+            }
+        }
+    }
+
+    @Test
+    public void searchSequentiallyOverAdmissionLimit() throws IOException {
+        final ConcurrentSearcher searcher = (ConcurrentSearcher) snapshot.searcher;
+        ConcurrentSearcherFactory factory = indexer.getSearcherFactory();
+        long sequentialBefore = factory.getSequentialQueries();
+        final int[] nestedHits = new int[1];
+
+        // the outer search holds the only permit while the nested one runs
+        List<TotalHitCountCollector> collectors = searcher.search(new MatchAllDocsQuery(),
+                new ConcurrentSearcher.CollectorFactory<TotalHitCountCollector>() {
+                    @Override
+                    public TotalHitCountCollector newCollector() throws IOException {
+                        if (nestedHits[0] == 0)
+                            nestedHits[0] = searcher.search(new MatchAllDocsQuery(), 10).totalHits;
+                        return new TotalHitCountCollector();
+                    }
+                });
+
+        int total = 0;
+        for (TotalHitCountCollector collector : collectors)
+            total += collector.getTotalHits();
+
+        Assert.assertEquals(searcher.getSliceCount(), collectors.size());
+        Assert.assertEquals(5000, total);
+        Assert.assertEquals(5000, nestedHits[0]);
+        Assert.assertEquals(sequentialBefore + 1, factory.getSequentialQueries());
+    }
+
+    @Test
+    public void waitForAllSlicesOfPartialSearch() throws IOException {
+        final Thread caller = Thread.currentThread();
+        final AtomicInteger poolChecks = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        // the caller slice and the first pool slice time out at once, the other pool slices only later
+        SearchDeadline deadline = new SearchDeadline(10000) {
+            @Override
+            public boolean isExpired() {
+                return true;
+            }
+
+            @Override
+            public void check() {
+                if (Thread.currentThread() != caller && poolChecks.incrementAndGet() > 1) {
+                    running.incrementAndGet();
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                }
+                throw new SearchTimeoutException(getTimeoutMillis());
+            }
+        };
+
+        Indexer.FacetedTopDocs partial = indexer.facetedSearch(snapshot, new MatchAllDocsQuery(),
+                Collections.singletonList(Indexer.DEFAULT_DRILL_DOWN), Collections.singletonList(BY_FOUNDED), null,
+                deadline, QueryTimer.NOOP);
+
+        Assert.assertTrue(partial.partial);
+        Assert.assertTrue(poolChecks.get() > 1);
+        Assert.assertEquals(0, running.get());
+        Assert.assertEquals(0, partial.topDocs.totalHits);
+    }
+
+    @Test
+    public void keepCallerSliceFailureAndSuppressTheOthers() throws IOException {
+        final Thread caller = Thread.currentThread();
+        ConcurrentSearcher searcher = (ConcurrentSearcher) snapshot.searcher;
+
+        try {
+            searcher.search(new MatchAllDocsQuery(), new ConcurrentSearcher.CollectorFactory<Collector>() {
+                @Override
+                public Collector newCollector() {
+                    return new Collector() {
+                        @Override
+                        public void setScorer(Scorer scorer) {
+                        }
+
+                        @Override
+                        public void collect(int doc) {
+                        }
+
+                        @Override
+                        public void setNextReader(AtomicReaderContext context) throws IOException {
+                            if (Thread.currentThread() == caller)
+                                throw new IllegalStateException("caller slice failed");
+                            throw new IOException("pool slice failed");
+                        }
+
+                        @Override
+                        public boolean acceptsDocsOutOfOrder() {
+                            return true;
+                        }
+                    };
+                }
+            });
+            Assert.fail("failure of the caller slice expected");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("caller slice failed", e.getMessage());
+            Assert.assertEquals(searcher.getSliceCount() - 1, e.getSuppressed().length);
+            Assert.assertEquals("pool slice failed", e.getSuppressed()[0].getMessage());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectSearcherFactoryWhenDisabled() throws IOException {
+        try (Indexer sequential = new Indexer()) {
+            sequential.getSearcherFactory();
+        }
+    }
+
+    private static List<Integer> docs(TopDocs topDocs) {
+        List<Integer> docs = new ArrayList<>(topDocs.scoreDocs.length);
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs)
+            docs.add(scoreDoc.doc);
+
+        return docs;
+    }
+
+    private static List<Map<String, Integer>> counts(List<FacetResult> results) {
+        List<Map<String, Integer>> counts = new ArrayList<>(results.size());
+        for (FacetResult result : results) {
+            Map<String, Integer> nodes = new LinkedHashMap<>();
+            FacetResultNode root = result.getFacetResultNode();
+            nodes.put(root.label.toString('/'), (int) root.value);
+            for (FacetResultNode node : root.subResults)
+                nodes.put(node.label.toString('/'), (int) node.value);
+            counts.add(nodes);
+        }
+
+        return counts;
+    }
+}
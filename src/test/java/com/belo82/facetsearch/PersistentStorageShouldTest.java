@@ -0,0 +1,49 @@
+package com.belo82.facetsearch;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+public class PersistentStorageShouldTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reopenIndexAndTaxonomyWithoutReindexing() throws IOException, ParseException {
+        File path = folder.newFolder("shops");
+
+        Indexer indexer = new Indexer(new IndexerConfig().setStorage(StorageMode.MMAP, path));
+        indexer.createIndex(Main.readData());
+        indexer.close();
+
+        Indexer reopened = new Indexer(new IndexerConfig().setStorage(StorageMode.MMAP, path));
+        try {
+            Assert.assertEquals(11, reopened.numDocs());
+            Assert.assertEquals(1, reopened.doPrefixSearch("6C").size());
+            Assert.assertEquals(1, reopened.doSearch("name: crimson").size());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void supportNioFsDirectory() throws IOException, ParseException {
+        Indexer indexer = new Indexer(new IndexerConfig().setStorage(StorageMode.NIOFS, folder.newFolder("nio")));
+        try {
+            indexer.createIndex(Main.readData());
+            Assert.assertEquals(11, indexer.doRangeSearch("01-01-1900", null).size());
+        } finally {
+            indexer.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requirePathForPersistentStorage() {
+        new IndexerConfig().setStorage(StorageMode.MMAP, null);
+    }
+}
@@ -0,0 +1,120 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.search.Projection;
+import com.belo82.facetsearch.search.ResultLoader;
+import com.belo82.facetsearch.search.ResultRow;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ProjectionShouldTest {
+    private Indexer indexer;
+
+    @Before
+    public void init() throws IOException, ParseException {
+        indexer = new Indexer();
+        indexer.createIndex(Main.readData());
+    }
+
+    @After
+    public void close() throws IOException {
+        indexer.close();
+    }
+
+    @Test
+    public void returnOnlyProjectedFields() throws IOException, ParseException {
+        List<ResultRow> rows = indexer.doPrefixSearch("6C", Projection.of(Indexer.ID, Indexer.NAME));
+
+        Assert.assertEquals(1, rows.size());
+        Assert.assertEquals(Long.valueOf(1), rows.get(0).getLong(Indexer.ID));
+        Assert.assertEquals("Budgens", rows.get(0).getString(Indexer.NAME));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectFieldWhichIsNotProjected() throws IOException, ParseException {
+        indexer.doPrefixSearch("6C", Projection.of(Indexer.ID)).get(0).get(Indexer.NAME);
+    }
+
+    @Test
+    public void returnAllValuesOfMultiValuedField() throws IOException, ParseException {
+        List<ResultRow> rows = indexer.doPrefixSearch("6C", Projection.of(Indexer.OWNERS, Indexer.CODE));
+
+        Assert.assertEquals(Arrays.<Object>asList("Dylan James", "Kristin Sullivan"), rows.get(0).getAll(Indexer.OWNERS));
+        Assert.assertEquals("6c/111/2010", rows.get(0).getString(Indexer.CODE));
+    }
+
+    @Test
+    public void returnTheSameHitsAsDocumentSearch() throws IOException, ParseException {
+        List<ResultRow> rows = indexer.doSearch("name: crimson", Projection.of(Indexer.FOUNDED));
+
+        Assert.assertEquals(1, rows.size());
+        Assert.assertEquals(Long.valueOf(19980616), rows.get(0).getLong(Indexer.FOUNDED));
+        Assert.assertEquals(indexer.doRangeSearch(null, null).size(),
+                indexer.doRangeSearch(null, null, Projection.of(Indexer.ID)).size());
+    }
+
+    @Test
+    public void readStoredValueOfDocumentIndexedWithoutDocValues() throws IOException {
+        try (Directory dir = new RAMDirectory()) {
+            try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Version.LUCENE_42,
+                    new KeywordAnalyzer()))) {
+                Document old = new Document();
+                old.add(new StringField(Indexer.NAME, "old", Field.Store.YES));
+                old.add(new LongField(Indexer.FOUNDED, 19900101, Field.Store.YES));
+                writer.addDocument(old);
+                writer.commit();
+
+                Document current = new Document();
+                current.add(new StringField(Indexer.NAME, "current", Field.Store.YES));
+                current.add(new LongField(Indexer.FOUNDED, 20000101, Field.Store.YES));
+                current.add(new NumericDocValuesField(Indexer.FOUNDED, 20000101));
+                writer.addDocument(current);
+                Document unknown = new Document();
+                unknown.add(new StringField(Indexer.NAME, "unknown", Field.Store.YES));
+                writer.addDocument(unknown);
+                // the old document reads as 0 from the DocValues of the merged segment
+                writer.forceMerge(1);
+            }
+
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                Assert.assertEquals(1, reader.leaves().size());
+                IndexSearcher searcher = new IndexSearcher(reader);
+                List<ResultRow> rows = new ResultLoader(Collections.singleton(Indexer.FOUNDED)).load(searcher,
+                        searcher.search(new MatchAllDocsQuery(), 10).scoreDocs,
+                        Projection.of(Indexer.NAME, Indexer.FOUNDED));
+                // the merge may reorder the documents
+                Map<String, Long> founded = new HashMap<>();
+                for (ResultRow row : rows)
+                    founded.put(row.getString(Indexer.NAME), row.getLong(Indexer.FOUNDED));
+
+                Assert.assertEquals(3, founded.size());
+                Assert.assertEquals(Long.valueOf(19900101), founded.get("old"));
+                Assert.assertEquals(Long.valueOf(20000101), founded.get("current"));
+                Assert.assertNull(founded.get("unknown"));
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.search.FacetSelection;
+import com.belo82.facetsearch.search.Projection;
+import com.belo82.facetsearch.search.QueryCache;
+import com.belo82.facetsearch.search.ResultRow;
+import com.belo82.facetsearch.search.SearchResult;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class QueryCacheShouldTest {
+    private static final Projection IDS = Projection.of(Indexer.ID);
+
+    private Indexer indexer;
+
+    @Before
+    public void init() throws IOException, ParseException {
+        indexer = new Indexer(new IndexerConfig().setQueryCacheSize(2));
+        indexer.createIndex(Main.readData());
+    }
+
+    @After
+    public void close() throws IOException {
+        indexer.close();
+    }
+
+    @Test
+    public void parseRepeatedQueryOnce() throws ParseException {
+        QueryCache cache = indexer.getQueryCache();
+        long hits = cache.getHits();
+        long misses = cache.getMisses();
+
+        Assert.assertSame(indexer.parseQuery("name:crimson AND area:rossendale"),
+                indexer.parseQuery("  name:crimson   AND\tarea:rossendale "));
+        Assert.assertEquals(hits + 1, cache.getHits());
+        Assert.assertEquals(misses + 1, cache.getMisses());
+    }
+
+    @Test
+    public void keepWhitespaceOfPhrasesAndRegexps() throws ParseException {
+        // address is not tokenized, the whitespace of the phrase is part of its term
+        Assert.assertEquals("address:Parsons  Green", indexer.parseQuery("address:\"Parsons  Green\"").toString());
+        Assert.assertNotSame(indexer.parseQuery("address:\"Parsons Green\""),
+                indexer.parseQuery("address:\"Parsons  Green\""));
+        Assert.assertEquals("address:/parsons  gr.*/", indexer.parseQuery("address:/parsons  gr.*/").toString());
+        // whitespace outside of the phrase is still collapsed
+        Assert.assertSame(indexer.parseQuery("address:\"Parsons  Green\" OR name:budgens"),
+                indexer.parseQuery(" address:\"Parsons  Green\"   OR name:budgens"));
+    }
+
+    @Test
+    public void analyzeQueryTermsAsIndexed() throws IOException, ParseException {
+        // not analyzed code is indexed lower-cased as a single term
+        Assert.assertEquals(ids(3, 6), ids(search("code:\"6Wab5/8c/2013\"")));
+        Assert.assertEquals(ids(7, 8),
+                ids(search("address:\"279, Upper Richmond Road, Putney, London, SW15 6SP\"")));
+        Assert.assertEquals(ids(9, 10), ids(search("name:CRIMSON")));
+    }
+
+    @Test
+    public void notCacheInvalidQuery() {
+        QueryCache cache = indexer.getQueryCache();
+        int size = cache.size();
+
+        try {
+            indexer.parseQuery("name:(");
+            Assert.fail();
+        } catch (ParseException e) {
+            Assert.assertEquals(size, cache.size());
+            Assert.assertTrue(cache.getParseTime(TimeUnit.NANOSECONDS) > 0);
+        }
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedQuery() throws ParseException {
+        QueryCache cache = indexer.getQueryCache();
+        cache.clear();
+        long evictions = cache.getEvictions();
+
+        indexer.parseQuery("name:budgens");
+        indexer.parseQuery("name:oxfam");
+        indexer.parseQuery("name:budgens");
+        indexer.parseQuery("name:cornerstone");
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(evictions + 1, cache.getEvictions());
+        long misses = cache.getMisses();
+        indexer.parseQuery("name:budgens");
+        Assert.assertEquals(misses, cache.getMisses());
+    }
+
+    @Test
+    public void parseEveryQueryWhenDisabled() throws IOException, ParseException {
+        try (Indexer uncached = new Indexer(new IndexerConfig().setQueryCacheSize(0))) {
+            Assert.assertNotSame(uncached.parseQuery("name:crimson"), uncached.parseQuery("name:crimson"));
+            Assert.assertEquals(0, uncached.getQueryCache().size());
+            Assert.assertEquals(2, uncached.getQueryCache().getMisses());
+        }
+    }
+
+    private SearchResult search(String query) throws IOException, ParseException {
+        return indexer.doDrillSidewaysSearch(query, IDS, new FacetSelection());
+    }
+
+    private static Set<Long> ids(long... ids) {
+        Set<Long> set = new HashSet<>();
+        for (long id : ids)
+            set.add(id);
+
+        return set;
+    }
+
+    private static Set<Long> ids(SearchResult result) {
+        Set<Long> ids = new HashSet<>();
+        for (ResultRow row : result.getRows())
+            ids.add(row.getLong(Indexer.ID));
+
+        return ids;
+    }
+}
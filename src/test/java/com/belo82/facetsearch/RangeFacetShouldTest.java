@@ -0,0 +1,126 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.search.FacetedQuery;
+import com.belo82.facetsearch.search.LongRange;
+import com.belo82.facetsearch.search.Projection;
+import com.belo82.facetsearch.search.RangeFacetRequest;
+import com.belo82.facetsearch.search.RangeFacetResult;
+import com.belo82.facetsearch.search.RangeFacetsCollector;
+import com.belo82.facetsearch.search.ResultRow;
+import com.belo82.facetsearch.search.SearchResult;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class RangeFacetShouldTest {
+    private static final RangeFacetRequest BY_DECADE = new RangeFacetRequest(Indexer.FOUNDED,
+            new LongRange("1960s", 19600101, true, 19700101, false),
+            new LongRange("1980s", 19800101, true, 19900101, false),
+            new LongRange("1990s", 19900101, true, 20000101, false),
+            new LongRange("2000s", 20000101, true, 20100101, false),
+            new LongRange("2010s", 20100101, true, 20200101, false));
+
+    private Indexer indexer;
+
+    @Before
+    public void init() throws IOException, ParseException {
+        indexer = new Indexer();
+        indexer.createIndex(Main.readData());
+    }
+
+    @After
+    public void close() throws IOException {
+        indexer.close();
+    }
+
+    @Test
+    public void countAllBucketsInOnePass() throws IOException, ParseException {
+        SearchResult result = indexer.doFacetedSearch(new FacetedQuery("*:*", Projection.of(Indexer.ID))
+                .rangeFacet(BY_DECADE));
+
+        RangeFacetResult decades = result.getRangeFacets().get(0);
+
+        Assert.assertEquals(1, result.getRangeFacets().size());
+        Assert.assertEquals(1, result.getFacets().size());
+        Assert.assertSame(BY_DECADE, decades.getRequest());
+        Assert.assertEquals(11, decades.getTotal());
+        Assert.assertEquals(Arrays.asList(1, 1, 6, 2, 1), decades.getCounts());
+    }
+
+    @Test
+    public void countOnlyMatchingDocuments() throws IOException, ParseException {
+        SearchResult result = indexer.doFacetedSearch(new FacetedQuery("name: crimson", Projection.of(Indexer.ID))
+                .rangeFacet(BY_DECADE));
+
+        RangeFacetResult decades = result.getRangeFacets().get(0);
+        Assert.assertEquals(2, decades.getTotal());
+        Assert.assertEquals(1, decades.getCount(2));
+        Assert.assertEquals(1, decades.getCount(3));
+    }
+
+    @Test
+    public void skipDocumentsWithoutValue() throws IOException {
+        RangeFacetRequest fromZero = new RangeFacetRequest(Indexer.FOUNDED,
+                new LongRange("any", 0, true, Long.MAX_VALUE, true));
+        RangeFacetRequest noDocValues = new RangeFacetRequest(Indexer.NAME,
+                new LongRange("any", Long.MIN_VALUE, true, Long.MAX_VALUE, true));
+
+        try (Directory dir = new RAMDirectory()) {
+            try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Version.LUCENE_42,
+                    new KeywordAnalyzer()))) {
+                Document founded = new Document();
+                founded.add(new LongField(Indexer.FOUNDED, 20000101, Field.Store.NO));
+                founded.add(new NumericDocValuesField(Indexer.FOUNDED, 20000101));
+                writer.addDocument(founded);
+                // reads as 0 from the DocValues of the segment
+                Document unknown = new Document();
+                unknown.add(new StringField(Indexer.NAME, "unknown", Field.Store.NO));
+                writer.addDocument(unknown);
+            }
+
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                RangeFacetsCollector collector = new RangeFacetsCollector(Arrays.asList(fromZero, noDocValues));
+                new IndexSearcher(reader).search(new MatchAllDocsQuery(), collector);
+
+                Assert.assertEquals(1, collector.getResults().get(0).getTotal());
+                Assert.assertEquals(0, collector.getResults().get(1).getTotal());
+            }
+        }
+    }
+
+    @Test
+    public void sortByFoundingDateWithoutFieldCache() throws IOException {
+        FieldCache.DEFAULT.purgeAllCaches();
+
+        List<ResultRow> rows = indexer.doRangeSearch("01-01-1900", null, Projection.of(Indexer.FOUNDED),
+                Indexer.sortByFounded(true));
+
+        Assert.assertEquals(11, rows.size());
+        Assert.assertEquals(Long.valueOf(20130212), rows.get(0).getLong(Indexer.FOUNDED));
+        Assert.assertEquals(Long.valueOf(19670131), rows.get(10).getLong(Indexer.FOUNDED));
+        for (int i = 1; i < rows.size(); i++)
+            Assert.assertTrue(rows.get(i - 1).getLong(Indexer.FOUNDED) >= rows.get(i).getLong(Indexer.FOUNDED));
+        Assert.assertEquals(0, FieldCache.DEFAULT.getCacheEntries().length);
+    }
+}
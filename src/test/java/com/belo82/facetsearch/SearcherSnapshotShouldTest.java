@@ -0,0 +1,59 @@
+package com.belo82.facetsearch;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class SearcherSnapshotShouldTest {
+    private Indexer indexer;
+
+    @Before
+    public void init() throws IOException, ParseException {
+        indexer = new Indexer(new IndexerConfig().setRefreshAfterWrite(false));
+        indexer.createIndex(Main.readData());
+    }
+
+    @After
+    public void close() throws IOException {
+        indexer.close();
+    }
+
+    @Test
+    public void notSeeChangesUntilRefreshed() throws IOException, ParseException {
+        Assert.assertEquals(0, indexer.doRangeSearch("01-01-1900", null).size());
+
+        indexer.refresh();
+        Assert.assertEquals(11, indexer.doRangeSearch("01-01-1900", null).size());
+    }
+
+    @Test
+    public void reuseTheSnapshotWhenNothingChanged() throws IOException, ParseException {
+        indexer.refresh();
+        long reopens = indexer.getRefreshStats().getReopenCount();
+
+        indexer.refresh();
+        indexer.doSearch("area: fulham");
+        Assert.assertEquals(reopens, indexer.getRefreshStats().getReopenCount());
+        Assert.assertEquals(2, indexer.getRefreshStats().getRefreshCount());
+    }
+
+    @Test
+    public void refreshInTheBackgroundWhenIntervalIsSet() throws IOException, ParseException, InterruptedException {
+        Indexer scheduled = new Indexer(new IndexerConfig().setRefreshAfterWrite(false).setRefreshIntervalMillis(10));
+        try {
+            scheduled.createIndex(Main.readData());
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (scheduled.doPrefixSearch("6C").isEmpty() && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+
+            Assert.assertEquals(1, scheduled.doPrefixSearch("6C").size());
+        } finally {
+            scheduled.close();
+        }
+    }
+}
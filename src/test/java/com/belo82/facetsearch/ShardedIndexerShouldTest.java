@@ -0,0 +1,156 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.ingest.ShopGenerator;
+import com.belo82.facetsearch.search.FacetedQuery;
+import com.belo82.facetsearch.search.LongRange;
+import com.belo82.facetsearch.search.Projection;
+import com.belo82.facetsearch.search.RangeFacetRequest;
+import com.belo82.facetsearch.search.ResultRow;
+import com.belo82.facetsearch.search.SearchResult;
+import org.apache.lucene.facet.search.FacetResult;
+import org.apache.lucene.facet.search.FacetResultNode;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ShardedIndexerShouldTest {
+    private static final Projection IDS = Projection.of(Indexer.ID);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ShardedIndexer sharded;
+
+    @Before
+    public void init() throws IOException {
+        sharded = new ShardedIndexer(new IndexerConfig().setShards(3));
+        sharded.createIndex(Main.readData());
+    }
+
+    @After
+    public void close() throws IOException {
+        sharded.close();
+    }
+
+    @Test
+    public void partitionShopsAcrossShards() throws IOException {
+        Assert.assertEquals(11, sharded.numDocs());
+        for (int i = 0; i < sharded.getShardCount(); i++)
+            Assert.assertTrue("shard " + i + " is empty", sharded.getShard(i).numDocs() > 0);
+    }
+
+    @Test
+    public void mergeHitsOfAllShards() throws IOException {
+        Assert.assertEquals(new HashSet<>(Arrays.asList(1L, 3L, 6L, 10L)),
+                new HashSet<>(ids(sharded.doPrefixSearch("6", IDS))));
+    }
+
+    @Test
+    public void mergeSortedHitsInSortOrder() throws IOException, ParseException {
+        try (Indexer single = new Indexer()) {
+            single.createIndex(Main.readData());
+
+            Assert.assertEquals(
+                    ids(single.doRangeSearch("01-01-1900", "31-12-2020", IDS, Indexer.sortByFounded(true))),
+                    ids(sharded.doRangeSearch("01-01-1900", "31-12-2020", IDS, Indexer.sortByFounded(true))));
+        }
+    }
+
+    @Test
+    public void routeUpdatesToOwningShard() throws IOException {
+        sharded.delete(1);
+
+        Assert.assertEquals(10, sharded.numDocs());
+        Assert.assertEquals(3, sharded.doPrefixSearch("6", IDS).size());
+    }
+
+    @Test
+    public void mergeFacetCountsLikeSingleIndex() throws IOException, ParseException {
+        RangeFacetRequest byDecade = new RangeFacetRequest(Indexer.FOUNDED,
+                new LongRange("before 2000", 0, true, 20000101, false),
+                new LongRange("since 2000", 20000101, true, 30000101, false));
+        FacetedQuery query = new FacetedQuery("*:*", IDS).drillDown(Indexer.DEFAULT_DRILL_DOWN).rangeFacet(byDecade);
+
+        try (Indexer single = new Indexer();
+             ShardedIndexer generated = new ShardedIndexer(new IndexerConfig().setShards(4))) {
+            single.createIndex(new ShopGenerator(5000));
+            generated.createIndex(new ShopGenerator(5000));
+
+            SearchResult expected = single.doFacetedSearch(query);
+            SearchResult actual = generated.doFacetedSearch(query);
+
+            Assert.assertEquals(expected.getTotalHits(), actual.getTotalHits());
+            Assert.assertEquals(expected.getFacets().size(), actual.getFacets().size());
+            for (int i = 0; i < expected.getFacets().size(); i++)
+                Assert.assertEquals(counts(expected.getFacets().get(i)), counts(actual.getFacets().get(i)));
+            Assert.assertEquals(expected.getRangeFacets().get(0).getTotal(), actual.getRangeFacets().get(0).getTotal());
+            Assert.assertEquals(expected.getRangeFacets().get(0).getCounts(), actual.getRangeFacets().get(0).getCounts());
+        }
+    }
+
+    @Test
+    public void keepSearchingShardsAfterAnotherShardFailed() throws IOException {
+        try (final ShardedIndexer nio = new ShardedIndexer(new IndexerConfig().setShards(2)
+                .setStorage(StorageMode.NIOFS, folder.newFolder("nio")))) {
+            nio.createIndex(Main.readData());
+            final CountDownLatch searching = new CountDownLatch(1);
+
+            try {
+                nio.onAllShards(new ShardedIndexer.ShardTask<Integer>() {
+                    @Override
+                    public Integer run(int shard) throws Exception {
+                        if (shard == 0) {
+                            searching.await(5, TimeUnit.SECONDS);
+                            throw new IOException("shard 0 failed");
+                        }
+
+                        // keeps reading the index files after shard 0 has failed
+                        searching.countDown();
+                        int hits = 0;
+                        for (long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200); System.nanoTime() < end; )
+                            hits += nio.getShard(shard).doPrefixSearch("6", IDS).size();
+                        return hits;
+                    }
+                });
+                Assert.fail("failure of shard 0 expected");
+            } catch (IOException e) {
+                Assert.assertEquals("shard 0 failed", e.getMessage());
+            }
+
+            Assert.assertEquals(new HashSet<>(Arrays.asList(1L, 3L, 6L, 10L)),
+                    new HashSet<>(ids(nio.doPrefixSearch("6", IDS))));
+        }
+    }
+
+    private static Map<String, Integer> counts(FacetResult result) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        FacetResultNode root = result.getFacetResultNode();
+        counts.put(root.label.toString('/'), (int) root.value);
+        for (FacetResultNode node : root.subResults)
+            counts.put(node.label.toString('/'), (int) node.value);
+
+        return counts;
+    }
+
+    private static List<Long> ids(List<ResultRow> rows) {
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (ResultRow row : rows)
+            ids.add(row.getLong(Indexer.ID));
+
+        return ids;
+    }
+}
@@ -0,0 +1,68 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.ingest.ShopGenerator;
+import com.belo82.facetsearch.ingest.ShopStreamReader;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.codehaus.jackson.JsonNode;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ShopGeneratorShouldTest {
+
+    @Test
+    public void generateSameShopsForSameSeed() {
+        ShopGenerator first = new ShopGenerator(100, 7);
+        ShopGenerator second = new ShopGenerator(100, 7);
+
+        while (first.hasNext())
+            Assert.assertEquals(first.next(), second.next());
+        Assert.assertFalse(second.hasNext());
+        Assert.assertNotEquals(new ShopGenerator(1, 7).next(), new ShopGenerator(1, 8).next());
+    }
+
+    @Test
+    public void skewCategoriesTowardsMostCommon() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (ShopGenerator generator = new ShopGenerator(10000); generator.hasNext();) {
+            String category = generator.next().get(Indexer.FACET_SHOP_CATEGORY).getTextValue();
+            counts.put(category, counts.containsKey(category) ? counts.get(category) + 1 : 1);
+        }
+
+        String first = ShopGenerator.getCategories().get(0);
+        String last = ShopGenerator.getCategories().get(ShopGenerator.getCategories().size() - 1);
+        Assert.assertTrue(counts.get(first) > 5 * counts.get(last));
+    }
+
+    @Test
+    public void writeJsonReadableByStreamReader() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ShopGenerator(50).writeJson(out);
+
+        ShopGenerator expected = new ShopGenerator(50);
+        try (ShopStreamReader reader = new ShopStreamReader(new ByteArrayInputStream(out.toByteArray()))) {
+            int count = 0;
+            while (reader.hasNext()) {
+                JsonNode shop = reader.next();
+                Assert.assertEquals(expected.next(), shop);
+                count++;
+            }
+            Assert.assertEquals(50, count);
+        }
+    }
+
+    @Test
+    public void beIndexable() throws IOException, ParseException {
+        try (Indexer indexer = new Indexer()) {
+            Assert.assertEquals(1000, indexer.createIndex(new ShopGenerator(1000)).getDocuments());
+            Assert.assertEquals(1000, indexer.numDocs());
+            Assert.assertFalse(indexer.doPrefixSearch("6").isEmpty());
+            Assert.assertFalse(indexer.doRangeSearch("01-01-2000", "31-12-2013").isEmpty());
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.ingest.ChangeSet;
+import com.belo82.facetsearch.ingest.ShopGenerator;
+import com.belo82.facetsearch.search.BatchQuery;
+import com.belo82.facetsearch.search.Projection;
+import com.belo82.facetsearch.search.ResultRow;
+import com.belo82.facetsearch.search.SearchResult;
+import com.belo82.facetsearch.search.SearcherTaxonomyManager.SearcherAndTaxonomy;
+import com.belo82.facetsearch.search.SortedSegmentSearch;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Sort;
+import org.codehaus.jackson.node.ObjectNode;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SortedIndexShouldTest {
+    private static final Projection FOUNDED = Projection.of(Indexer.FOUNDED);
+    private static final Sort NEWEST_FIRST = Indexer.sortByFounded(true);
+
+    private Indexer sorted;
+    private Indexer unsorted;
+
+    @Before
+    public void init() throws IOException {
+        // small RAM buffer, so the index has many segments
+        sorted = new Indexer(new IndexerConfig().setSortedByFounded(true).setRamBufferSizeMB(0.1));
+        sorted.createIndex(new ShopGenerator(2000));
+        unsorted = new Indexer(new IndexerConfig().setRamBufferSizeMB(0.1));
+        unsorted.createIndex(new ShopGenerator(2000));
+    }
+
+    @After
+    public void close() throws IOException {
+        sorted.close();
+        unsorted.close();
+    }
+
+    @Test
+    public void keepEverySegmentSorted() throws IOException {
+        SearcherAndTaxonomy snapshot = sorted.acquire();
+        try {
+            List<AtomicReaderContext> leaves = snapshot.getIndexReader().leaves();
+            Assert.assertTrue(leaves.size() > 1);
+            for (AtomicReaderContext leaf : leaves)
+                Assert.assertTrue(sorted.getSortedSegmentSearch().isSorted(leaf.reader()));
+        } finally {
+            sorted.release(snapshot);
+        }
+    }
+
+    @Test
+    public void stopEarlyInSortedSegments() throws IOException, ParseException {
+        SortedSegmentSearch search = sorted.getSortedSegmentSearch();
+        long terminated = search.getTerminatedSegments();
+
+        Assert.assertEquals(founded(unsorted.doRangeSearch("01-01-1900", "31-12-2100", FOUNDED, NEWEST_FIRST)),
+                founded(sorted.doRangeSearch("01-01-1900", "31-12-2100", FOUNDED, NEWEST_FIRST)));
+        Assert.assertTrue(search.getTerminatedSegments() > terminated);
+
+        Assert.assertEquals(founded(unsorted.doSearch("*:*", FOUNDED, NEWEST_FIRST)),
+                founded(sorted.doSearch("*:*", FOUNDED, NEWEST_FIRST)));
+        Assert.assertEquals(founded(unsorted.doSearch("area:fulham", FOUNDED, NEWEST_FIRST)),
+                founded(sorted.doSearch("area:fulham", FOUNDED, NEWEST_FIRST)));
+    }
+
+    @Test
+    public void searchUnsortedSegmentsFully() throws IOException {
+        ChangeSet changes = new ChangeSet();
+        for (int id = 1; id <= 300; id++) {
+            ObjectNode shop = new ShopGenerator(1).next();
+            shop.put(Indexer.ID, id);
+            // alternating dates, so the segment of the updates is not sorted
+            shop.put(Indexer.FOUNDED, id % 2 == 0 ? "01-01-2030" : "01-01-1900");
+            changes.upsert(shop);
+        }
+        sorted.apply(changes);
+        unsorted.apply(changes);
+        long collected = sorted.getSortedSegmentSearch().getCollectedSegments();
+
+        List<Long> expected = founded(unsorted.doRangeSearch("01-01-1900", "31-12-2100", FOUNDED, NEWEST_FIRST));
+        Assert.assertEquals(expected, founded(sorted.doRangeSearch("01-01-1900", "31-12-2100", FOUNDED, NEWEST_FIRST)));
+        Assert.assertEquals(20300101L, (long) expected.get(0));
+        Assert.assertTrue(sorted.getSortedSegmentSearch().getCollectedSegments() > collected);
+    }
+
+    @Test
+    public void searchOtherSortsAsUsual() throws IOException {
+        Assert.assertEquals(founded(unsorted.doRangeSearch("01-01-1990", "31-12-2000", FOUNDED, Indexer.sortByFounded(false))),
+                founded(sorted.doRangeSearch("01-01-1990", "31-12-2000", FOUNDED, Indexer.sortByFounded(false))));
+        Assert.assertNull(unsorted.getSortedSegmentSearch());
+    }
+
+    @Test
+    public void reportTotalHitsAsLowerBoundWhenStoppedEarly() throws IOException {
+        SearchResult early = sorted.doBatchSearch(Arrays.asList(
+                BatchQuery.range("01-01-1900", "31-12-2100", FOUNDED, NEWEST_FIRST))).get(0);
+        Assert.assertFalse(early.isTotalHitsExact());
+        Assert.assertTrue(early.getTotalHits() < 2000);
+
+        SearchResult full = unsorted.doBatchSearch(Arrays.asList(
+                BatchQuery.range("01-01-1900", "31-12-2100", FOUNDED, NEWEST_FIRST))).get(0);
+        Assert.assertTrue(full.isTotalHitsExact());
+        Assert.assertEquals(2000, full.getTotalHits());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNoHits() throws IOException {
+        SearcherAndTaxonomy snapshot = sorted.acquire();
+        try {
+            sorted.getSortedSegmentSearch().search(snapshot.searcher, new MatchAllDocsQuery(), 0);
+        } finally {
+            sorted.release(snapshot);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectStreamedInput() throws IOException {
+        sorted.createIndex(new ByteArrayInputStream("[]".getBytes("UTF-8")));
+    }
+
+    private static List<Long> founded(List<ResultRow> rows) {
+        List<Long> founded = new ArrayList<>(rows.size());
+        for (ResultRow row : rows)
+            founded.add(row.getLong(Indexer.FOUNDED));
+
+        return founded;
+    }
+}
@@ -0,0 +1,64 @@
+package com.belo82.facetsearch;
+
+import com.belo82.facetsearch.ingest.IngestStats;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class StreamingIngestShouldTest {
+    // the second shop is cut off in the middle
+    private static final String TRUNCATED = "[{\"id\": 1, \"name\": \"Budgens\", \"owners\": [\"Dylan James\"], "
+            + "\"shop_category\": \"supermarket\", \"area\": \"Fulham\", \"address\": \"57-59, Parsons Green Lane\", "
+            + "\"code\": \"asdfa\", \"founded\": \"01-01-2000\"}, {\"id\": 2, \"name\": \"Mini";
+
+    private Indexer indexer;
+
+    @Before
+    public void init() {
+        indexer = new Indexer(new IndexerConfig().setIngestBatchSize(3));
+    }
+
+    @After
+    public void close() throws IOException {
+        indexer.close();
+    }
+
+    @Test
+    public void indexTheSameDocumentsAsTreeBasedIngestion() throws IOException, ParseException {
+        InputStream in = Main.class.getClassLoader().getResourceAsStream("com/belo82/facetsearch/data.json");
+        IngestStats stats = indexer.createIndex(in);
+
+        Assert.assertEquals(11, stats.getDocuments());
+        Assert.assertEquals(4, stats.getBatches());
+        Assert.assertEquals(11, indexer.doRangeSearch("01-01-1900", null).size());
+        Assert.assertEquals(1, indexer.doPrefixSearch("6C").size());
+    }
+
+    @Test
+    public void acceptEmptyArray() throws IOException {
+        Assert.assertEquals(0, indexer.createIndex(new ByteArrayInputStream("[]".getBytes("UTF-8"))).getDocuments());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectInputWhichIsNotAnArray() throws IOException {
+        indexer.createIndex(new ByteArrayInputStream("{\"id\": 1}".getBytes("UTF-8")));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectTruncatedInput() throws IOException {
+        indexer.createIndex(new ByteArrayInputStream(TRUNCATED.getBytes("UTF-8")));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectTruncatedInputOfShards() throws IOException {
+        try (ShardedIndexer sharded = new ShardedIndexer(new IndexerConfig().setShards(2))) {
+            sharded.createIndex(new ByteArrayInputStream(TRUNCATED.getBytes("UTF-8")));
+        }
+    }
+}